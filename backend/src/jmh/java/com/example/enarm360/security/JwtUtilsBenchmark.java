@@ -0,0 +1,80 @@
+package com.example.enarm360.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.io.Encoders;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo por petición de leer el access token.
+ *
+ * antes: lo que hacía AuthTokenFilter con el JwtUtils original, validateJwtToken y luego
+ * getUsernameFromJwtToken, cada uno decodificando el secreto, armando la llave y el parser
+ * y verificando la firma (el principal salía después de la BD, que aquí no se mide).
+ * despues: una sola verificación con la llave y el parser de init, y el principal armado
+ * desde los claims.
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="JwtUtilsBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtUtilsBenchmark {
+
+    private String secreto;
+    private JwtUtils jwtUtils;
+    private String token;
+
+    @Setup
+    public void preparar() {
+        byte[] bytes = new byte[64];
+        new SecureRandom().nextBytes(bytes);
+        secreto = Encoders.BASE64.encode(bytes);
+
+        jwtUtils = new JwtUtils();
+        ReflectionTestUtils.setField(jwtUtils, "jwtSecret", secreto);
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", 3_600_000);
+        ReflectionTestUtils.setField(jwtUtils, "refreshExpirationMs", 86_400_000);
+        jwtUtils.init();
+
+        UserDetailsImpl usuario = new UserDetailsImpl(42L, "estudiante", null, null, null, null, true, 3L,
+                List.of(new SimpleGrantedAuthority("ROLE_ESTUDIANTE"),
+                        new SimpleGrantedAuthority("EXAMENES_RESPONDER"),
+                        new SimpleGrantedAuthority("DASHBOARD_VER")));
+        token = jwtUtils.generateAccessToken(usuario);
+    }
+
+    @Benchmark
+    public String antes() {
+        Jwts.parser().verifyWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(secreto))).build()
+                .parseSignedClaims(token);
+        return Jwts.parser().verifyWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(secreto))).build()
+                .parseSignedClaims(token).getPayload().getSubject();
+    }
+
+    @Benchmark
+    public UserDetailsImpl despues() {
+        Claims claims = jwtUtils.parseVerifiedClaims(token);
+        return jwtUtils.getPrincipalFromClaims(claims);
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.dtos.auth.RefreshTokenRequest;
+import com.example.enarm360.entities.SesionAuth;
+import com.example.enarm360.entities.Usuario;
+import com.example.enarm360.repositories.SesionAuthRepository;
+import com.example.enarm360.repositories.UsuarioRepository;
+import com.example.enarm360.security.FiltroRevocacion;
+import com.example.enarm360.security.JwtUtils;
+import com.example.enarm360.security.PermisosVersionStore;
+import com.example.enarm360.security.TokenHash;
+import com.example.enarm360.security.UsuarioActual;
+import com.zaxxer.hikari.HikariDataSource;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput de POST /api/auth/refresh con muchos clientes a la vez: cada hilo es un
+ * cliente con su propia familia que rota su refresh token en cada llamada (lectura por
+ * hash con el usuario, UPDATE condicional de rotación, firma de dos JWT).
+ *
+ * unCliente da la base sin contención; concurrente, 32 clientes contra el mismo pool de
+ * conexiones (-Dbench.pool, 10 como Hikari por defecto). Por defecto usa H2 en memoria;
+ * para medir contra PostgreSQL pasar -Dbench.jdbc.url/user/password en jmh.args (la BD
+ * debe tener el esquema; se crean usuarios y sesiones de prueba).
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="AuthServiceRefreshBenchmark"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 4)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthServiceRefreshBenchmark {
+
+    private static final String SECRETO =
+            "mrPHICxiZHPRliUi+m6WkmeVnoB9iQXv9ctSp32REDnvsHCsjVnB+L7dIobo7YEJK20oMwqIj2N9+wPdMpPFow==";
+
+    @State(Scope.Benchmark)
+    public static class Contexto {
+        ConfigurableApplicationContext spring;
+        AuthService authService;
+        JwtUtils jwtUtils;
+        TransactionTemplate tx;
+        final AtomicInteger clientes = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void arrancar() {
+            spring = new SpringApplicationBuilder(Configuracion.class)
+                    .web(WebApplicationType.NONE)
+                    .run("--spring.jpa.hibernate.ddl-auto=" + System.getProperty("bench.ddl", "create-drop"),
+                         "--spring.jpa.show-sql=false",
+                         "--spring.main.banner-mode=off",
+                         "--logging.level.root=WARN",
+                         "--app.jwt.secret=" + SECRETO);
+            authService = spring.getBean(AuthService.class);
+            jwtUtils = spring.getBean(JwtUtils.class);
+            tx = new TransactionTemplate(spring.getBean(PlatformTransactionManager.class));
+        }
+
+        @TearDown(Level.Trial)
+        public void detener() {
+            spring.close();
+        }
+    }
+
+    /**
+     * Un cliente: usuario y familia propios, como los deja login.
+     */
+    @State(Scope.Thread)
+    public static class Cliente {
+        String token;
+
+        @Setup(Level.Trial)
+        public void login(Contexto c) {
+            int n = c.clientes.incrementAndGet();
+            String sufijo = n + "-" + UUID.randomUUID().toString().substring(0, 8);
+            LocalDateTime expira = LocalDateTime.now().plusDays(1);
+            String familia = UUID.randomUUID().toString();
+            token = c.tx.execute(status -> {
+                UsuarioRepository usuarios = c.spring.getBean(UsuarioRepository.class);
+                LocalDateTime ahora = LocalDateTime.now();
+                Usuario u = usuarios.save(Usuario.builder()
+                        .username("bench" + sufijo)
+                        .email("bench" + sufijo + "@prueba.local")
+                        .contrasenaHash("x")
+                        .nombre("Bench")
+                        .activo(true)
+                        .permisosVersion(0L)
+                        .creadoEn(ahora)
+                        .actualizadoEn(ahora)
+                        .build());
+                String refresh = c.jwtUtils.generateRefreshToken(u.getUsername(), familia,
+                        Date.from(expira.atZone(ZoneId.systemDefault()).toInstant()));
+                c.spring.getBean(SesionAuthRepository.class).save(SesionAuth.builder()
+                        .usuario(u)
+                        .tokenHash(TokenHash.hex(TokenHash.sha256(refresh)))
+                        .familia(familia)
+                        .emitidoEn(LocalDateTime.now())
+                        .expiraEn(expira)
+                        .build());
+                return refresh;
+            });
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String unCliente(Contexto c, Cliente cliente) {
+        return rotar(c, cliente);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public String concurrente(Contexto c, Cliente cliente) {
+        return rotar(c, cliente);
+    }
+
+    private static String rotar(Contexto c, Cliente cliente) {
+        cliente.token = c.authService.refreshToken(new RefreshTokenRequest(cliente.token)).getRefreshToken();
+        return cliente.token;
+    }
+
+    @Configuration
+    @ImportAutoConfiguration({HibernateJpaAutoConfiguration.class, TransactionAutoConfiguration.class})
+    @EntityScan(basePackageClasses = SesionAuth.class)
+    @EnableJpaRepositories(basePackageClasses = SesionAuthRepository.class)
+    @Import({AuthService.class, JwtUtils.class, FiltroRevocacion.class})
+    static class Configuracion {
+
+        @Bean
+        DataSource dataSource() {
+            HikariDataSource ds = new HikariDataSource();
+            ds.setJdbcUrl(System.getProperty("bench.jdbc.url", "jdbc:h2:mem:refresh;DB_CLOSE_DELAY=-1"));
+            ds.setUsername(System.getProperty("bench.jdbc.user", "sa"));
+            ds.setPassword(System.getProperty("bench.jdbc.password", ""));
+            ds.setMaximumPoolSize(Integer.getInteger("bench.pool", 10));
+            return ds;
+        }
+
+        // Colaboradores de login/logout que refresh no usa
+        @Bean
+        AuthenticationManager authenticationManager() {
+            return Mockito.mock(AuthenticationManager.class);
+        }
+
+        @Bean
+        PermisosVersionStore permisosVersionStore() {
+            return Mockito.mock(PermisosVersionStore.class);
+        }
+
+        @Bean
+        UsuarioActual usuarioActual() {
+            return Mockito.mock(UsuarioActual.class);
+        }
+
+        @Bean
+        IntentoCanalService intentoCanalService() {
+            return Mockito.mock(IntentoCanalService.class);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.repositories.ReactivoRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Muestreo de un examen con ReactivoSamplingIndex contra el ORDER BY RANDOM() que usaba
+ * ExamenService.generarExamen, a 10k, 100k y 1M reactivos repartidos en 20 especialidades.
+ * También el costo de los cambios incrementales (bajas, altas y reclasificaciones).
+ *
+ * La BD es H2 en memoria por defecto; para medir contra PostgreSQL:
+ * -Dbench.jdbc.url=jdbc:postgresql://... -Dbench.jdbc.user=... -Dbench.jdbc.password=...
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="ReactivoSamplingIndexBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReactivoSamplingIndexBenchmark {
+
+    private static final int ESPECIALIDADES = 20;
+    private static final int K = 50;
+
+    @Param({"10000", "100000", "1000000"})
+    int reactivos;
+
+    private ReactivoSamplingIndex indice;
+    private Connection conexion;
+    private PreparedStatement aleatorio;
+    private PreparedStatement porId;
+
+    @Setup(Level.Trial)
+    public void preparar() throws SQLException {
+        indice = new ReactivoSamplingIndex(repositorio(reactivos), sinTransaccion());
+        indice.recargar();
+
+        conexion = DriverManager.getConnection(
+                System.getProperty("bench.jdbc.url", "jdbc:h2:mem:muestreo;DB_CLOSE_DELAY=-1"),
+                System.getProperty("bench.jdbc.user", "sa"),
+                System.getProperty("bench.jdbc.password", ""));
+        try (Statement st = conexion.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS bench_reactivos");
+            st.execute("CREATE TABLE bench_reactivos (id BIGINT PRIMARY KEY, especialidad_id BIGINT NOT NULL, "
+                    + "dificultad_id BIGINT, clave_id BIGINT, pregunta VARCHAR(500))");
+            st.execute("CREATE INDEX idx_bench_reactivos_especialidad ON bench_reactivos (especialidad_id)");
+        }
+        conexion.setAutoCommit(false);
+        try (PreparedStatement ins = conexion.prepareStatement("INSERT INTO bench_reactivos VALUES (?, ?, ?, ?, ?)")) {
+            for (long id = 1; id <= reactivos; id++) {
+                ins.setLong(1, id);
+                ins.setLong(2, especialidad(id));
+                ins.setLong(3, dificultad(id));
+                ins.setLong(4, clave(id));
+                ins.setString(5, "Pregunta de prueba número " + id + " con un texto de longitud parecida a un caso clínico corto");
+                ins.addBatch();
+                if (id % 10_000 == 0) ins.executeBatch();
+            }
+            ins.executeBatch();
+        }
+        conexion.commit();
+        conexion.setAutoCommit(true);
+
+        aleatorio = conexion.prepareStatement(
+                "SELECT * FROM bench_reactivos WHERE especialidad_id = ? ORDER BY RANDOM() LIMIT ?");
+        porId = conexion.prepareStatement("SELECT * FROM bench_reactivos WHERE id = ANY (?)");
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() throws SQLException {
+        try (Statement st = conexion.createStatement()) {
+            st.execute("DROP TABLE bench_reactivos");
+        }
+        conexion.close();
+    }
+
+    /**
+     * Antes: la BD ordena al azar toda la especialidad en cada examen.
+     */
+    @Benchmark
+    public int orderByRandom() throws SQLException {
+        aleatorio.setLong(1, 1L);
+        aleatorio.setInt(2, K);
+        return contar(aleatorio);
+    }
+
+    /**
+     * Después, solo el muestreo en memoria.
+     */
+    @Benchmark
+    public long[] indice() {
+        return indice.muestrear(ReactivoSamplingIndex.Celda.of(1L), K, ThreadLocalRandom.current());
+    }
+
+    /**
+     * Después, muestreo más la carga de las filas elegidas por llave primaria.
+     */
+    @Benchmark
+    public int indiceYFilas() throws SQLException {
+        long[] ids = indice.muestrear(ReactivoSamplingIndex.Celda.of(1L), K, ThreadLocalRandom.current());
+        Array arreglo = conexion.createArrayOf("BIGINT", Arrays.stream(ids).boxed().toArray());
+        porId.setArray(1, arreglo);
+        try {
+            return contar(porId);
+        } finally {
+            arreglo.free();
+        }
+    }
+
+    /**
+     * Baja y alta de un reactivo al azar (borrado y restaurado, o cambio de otro nodo).
+     */
+    @Benchmark
+    public void quitarYRegistrar() {
+        long id = ThreadLocalRandom.current().nextLong(1, reactivos + 1L);
+        indice.quitar(id);
+        indice.registrar(id, especialidad(id), dificultad(id), clave(id));
+    }
+
+    /**
+     * Reclasificación de un reactivo al azar a otra dificultad y de regreso.
+     */
+    @Benchmark
+    public void actualizar() {
+        long id = ThreadLocalRandom.current().nextLong(1, reactivos + 1L);
+        indice.actualizar(id, especialidad(id), dificultad(id) % 3 + 1, clave(id));
+        indice.actualizar(id, especialidad(id), dificultad(id), clave(id));
+    }
+
+    /**
+     * Recarga completa del índice (fuera del camino de generación; corre al iniciar).
+     */
+    @Benchmark
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void recargar() {
+        indice.recargar();
+    }
+
+    private static int contar(PreparedStatement ps) throws SQLException {
+        int n = 0;
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) n++;
+        }
+        return n;
+    }
+
+    private static long especialidad(long id) {
+        return id % ESPECIALIDADES + 1;
+    }
+
+    private static long dificultad(long id) {
+        return id % 3 + 1;
+    }
+
+    private static long clave(long id) {
+        return id % 5 + 1;
+    }
+
+    /**
+     * Solo streamClasificaciones, que es lo único que usa recargar.
+     */
+    private static ReactivoRepository repositorio(int reactivos) {
+        return (ReactivoRepository) Proxy.newProxyInstance(
+                ReactivoRepository.class.getClassLoader(),
+                new Class<?>[]{ReactivoRepository.class},
+                (proxy, metodo, args) -> {
+                    if (metodo.getName().equals("streamClasificaciones")) {
+                        Stream<Object[]> filas = LongStream.rangeClosed(1, reactivos)
+                                .mapToObj(id -> new Object[]{id, especialidad(id), dificultad(id), clave(id)});
+                        return filas;
+                    }
+                    switch (metodo.getName()) {
+                        case "hashCode": return System.identityHashCode(proxy);
+                        case "equals": return proxy == args[0];
+                        case "toString": return "ReactivoRepository(benchmark)";
+                        default: break;
+                    }
+                    throw new UnsupportedOperationException(metodo.getName());
+                });
+    }
+
+    private static PlatformTransactionManager sinTransaccion() {
+        return new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                return new SimpleTransactionStatus();
+            }
+
+            @Override
+            public void commit(TransactionStatus status) { }
+
+            @Override
+            public void rollback(TransactionStatus status) { }
+        };
+    }
+}
@@ -28,4 +28,18 @@ public class ExamenMapper {
                 .preguntas(preguntas)
                 .build();
     }
+
+    // Variante para cuando las preguntas ya vienen proyectadas (sin tocar la colección LAZY)
+    public static ExamenDTO toDTO(Examen examen, List<ExamenPreguntaDTO> preguntas) {
+        if (examen == null) return null;
+
+        return ExamenDTO.builder()
+                .id(examen.getId())
+                .nombre(examen.getNombre())
+                .descripcion(examen.getDescripcion())
+                .creadoEn(examen.getCreadoEn())
+                .tiempoLimiteMin(examen.getTiempoLimiteMin())
+                .preguntas(preguntas)
+                .build();
+    }
 }
@@ -0,0 +1,58 @@
+package com.example.enarm360.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.Map;
+
+/**
+ * Las tablas de exámenes e intentos usaban IDENTITY; al pasar a secuencias con pool,
+ * ddl-auto=update crea las secuencias desde 1 y chocarían con los IDs existentes.
+ * Al arrancar se adelanta cada secuencia hasta el MAX(id) de su tabla (solo PostgreSQL).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ExamSequenceAligner {
+
+    private static final Map<String, String> SECUENCIAS = Map.of(
+            "examen_seq", "examen",
+            "examen_pregunta_seq", "examen_pregunta",
+            "intento_examen_seq", "intento_examen",
+            "intento_pregunta_seq", "intento_pregunta"
+    );
+
+    // Dependencia explícita: el esquema (y las secuencias) ya existen cuando corre esto
+    private final EntityManagerFactory entityManagerFactory;
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void alinear() {
+        try (Connection c = dataSource.getConnection()) {
+            if (!"PostgreSQL".equalsIgnoreCase(c.getMetaData().getDatabaseProductName())) return;
+        } catch (Exception e) {
+            log.warn("No se pudo detectar la base de datos para alinear secuencias: {}", e.getMessage());
+            return;
+        }
+
+        SECUENCIAS.forEach((secuencia, tabla) -> {
+            try {
+                Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + tabla, Long.class);
+                Long actual = jdbcTemplate.queryForObject("SELECT last_value FROM " + secuencia, Long.class);
+                if (maxId != null && actual != null && maxId >= actual) {
+                    jdbcTemplate.queryForObject("SELECT setval(?, ?, true)", Long.class, secuencia, maxId);
+                    log.info("Secuencia {} adelantada a {}", secuencia, maxId);
+                }
+            } catch (Exception e) {
+                log.warn("No se pudo alinear la secuencia {}: {}", secuencia, e.getMessage());
+            }
+        });
+    }
+}
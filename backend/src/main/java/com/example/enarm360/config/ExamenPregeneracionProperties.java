@@ -0,0 +1,51 @@
+package com.example.enarm360.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.examenes.pregeneracion")
+public class ExamenPregeneracionProperties {
+
+    /**
+     * Enable the background pool of pre-generated exams
+     */
+    private boolean enabled = true;
+
+    /**
+     * How many of the most requested configurations keep a pool
+     */
+    private int maxConfiguraciones = 5;
+
+    /**
+     * Pre-generated exams kept per configuration
+     */
+    private int tamanoPorConfiguracion = 20;
+
+    /**
+     * Maximum exams generated per refill run
+     */
+    private int maxPorCiclo = 20;
+
+    /**
+     * Refill interval in milliseconds
+     */
+    private long intervaloMs = 30000;
+
+    /**
+     * Skip the refill when more than this many generation requests arrived since the last run
+     */
+    private int cargaMaxima = 50;
+
+    /**
+     * Node name stored on this node's pooled exams, so startup cleanup only deletes its own
+     */
+    private String nodo = "";
+
+    /**
+     * Hours a pre-generated exam may stay in the pool; other nodes' unassigned exams older than twice this are deleted at startup
+     */
+    private int vidaMaximaHoras = 6;
+}
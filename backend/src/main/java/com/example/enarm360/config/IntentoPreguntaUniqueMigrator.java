@@ -0,0 +1,73 @@
+package com.example.enarm360.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+
+/**
+ * Antes cada clic en un reactivo insertaba una fila nueva, así que intento_pregunta puede
+ * tener varias filas del mismo (intento, reactivo) y ddl-auto=update no logra crear el
+ * índice único. Al arrancar (solo PostgreSQL, solo si la restricción aún no existe):
+ * si no hay duplicados se crea la restricción; si los hay, no se borra nada: se reportan
+ * y la restricción se crea en el siguiente arranque después de la limpieza manual con
+ * db/manual/intento_pregunta_duplicados.sql. Mientras tanto las filas nuevas no se duplican
+ * porque IntentoRespuestaWriter escribe con el candado del intento, y ante un par duplicado
+ * actualiza la fila de id mayor, la misma que queda tras la limpieza.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IntentoPreguntaUniqueMigrator {
+
+    private static final String RESTRICCION = "uk_intento_pregunta_intento_reactivo";
+    // Índice parcial que creaban versiones anteriores; no protegía contra duplicar filas viejas
+    private static final String INDICE_NUEVAS = "uk_intento_pregunta_nuevas";
+
+    // Dependencia explícita: el esquema ya existe cuando corre esto
+    private final EntityManagerFactory entityManagerFactory;
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void migrar() {
+        try (Connection c = dataSource.getConnection()) {
+            if (!"PostgreSQL".equalsIgnoreCase(c.getMetaData().getDatabaseProductName())) return;
+        } catch (Exception e) {
+            log.warn("No se pudo detectar la base de datos para la restricción única de respuestas: {}", e.getMessage());
+            return;
+        }
+
+        try {
+            Integer existe = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM pg_constraint WHERE conname = ?", Integer.class, RESTRICCION);
+            if (existe != null && existe > 0) return;
+
+            // [pares duplicados, filas que sobran]
+            Long[] duplicados = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*), COALESCE(SUM(n - 1), 0) FROM (SELECT COUNT(*) AS n FROM intento_pregunta " +
+                    "WHERE reactivo_id IS NOT NULL GROUP BY intento_examen_id, reactivo_id HAVING COUNT(*) > 1) d",
+                    (rs, i) -> new Long[] { rs.getLong(1), rs.getLong(2) });
+
+            if (duplicados == null || duplicados[0] == 0) {
+                jdbcTemplate.execute("ALTER TABLE intento_pregunta ADD CONSTRAINT " + RESTRICCION +
+                        " UNIQUE (intento_examen_id, reactivo_id)");
+                jdbcTemplate.execute("DROP INDEX IF EXISTS " + INDICE_NUEVAS);
+                log.info("Restricción {} creada", RESTRICCION);
+                return;
+            }
+
+            jdbcTemplate.execute("DROP INDEX IF EXISTS " + INDICE_NUEVAS);
+            log.warn("intento_pregunta tiene {} pares (intento, reactivo) duplicados ({} filas de más); no se borran " +
+                    "al arrancar y la restricción {} queda pendiente. Revisar y aplicar " +
+                    "db/manual/intento_pregunta_duplicados.sql", duplicados[0], duplicados[1], RESTRICCION);
+        } catch (Exception e) {
+            log.warn("No se pudo crear la restricción {}: {}", RESTRICCION, e.getMessage());
+        }
+    }
+}
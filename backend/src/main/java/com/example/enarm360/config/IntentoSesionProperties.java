@@ -0,0 +1,78 @@
+package com.example.enarm360.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.intentos")
+public class IntentoSesionProperties {
+
+    public enum Durabilidad {
+        /** Each answer is written to intento_pregunta before responding */
+        SYNC,
+        /** Answers are acknowledged from memory and flushed in batches */
+        WRITE_BEHIND
+    }
+
+    /**
+     * Durability of answer submission
+     */
+    private Durabilidad durabilidad = Durabilidad.SYNC;
+
+    /**
+     * Flush interval for pending answers in milliseconds (write-behind mode)
+     */
+    private long flushIntervaloMs = 2000;
+
+    /**
+     * Minutes without activity before an attempt session is dropped from memory
+     */
+    private int inactividadMin = 30;
+
+    /**
+     * Seconds after a timed attempt's deadline before it is auto-finalized
+     */
+    private int graciaSeg = 30;
+
+    /**
+     * Tick length of the attempt expiration timing wheel in milliseconds
+     */
+    private long temporizadorTickMs = 1000;
+
+    /**
+     * Number of slots in the attempt expiration timing wheel (rounded up to a power of two)
+     */
+    private int temporizadorRanuras = 512;
+
+    /**
+     * Maximum expired attempts finalized per tick; the rest wait for the next tick
+     */
+    private int finalizacionLote = 200;
+
+    /**
+     * Interval in milliseconds between flushes of per-reactivo answer time histograms
+     */
+    private long histogramasFlushMs = 60000;
+
+    /**
+     * Interval in milliseconds between batched acknowledgements on attempt channels
+     */
+    private long canalAckMs = 100;
+
+    /**
+     * Lifetime of an attempt channel (SSE stream) in milliseconds
+     */
+    private long canalTimeoutMs = 14400000;
+
+    /**
+     * Lifetime in milliseconds of a single-use ticket for opening an attempt channel with EventSource
+     */
+    private long canalTicketMs = 30000;
+
+    /**
+     * Threads that write acknowledgements to attempt channels, off the shared scheduler
+     */
+    private int canalEnvioHilos = 4;
+}
@@ -0,0 +1,36 @@
+package com.example.enarm360.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.irt.calibracion")
+public class IrtCalibracionProperties {
+
+    /**
+     * Enable the scheduled IRT calibration job
+     */
+    private boolean enabled = true;
+
+    /**
+     * Cron expression for the calibration run
+     */
+    private String cron = "0 30 3 * * ?";
+
+    /**
+     * Alternating person/item fitting rounds
+     */
+    private int iteraciones = 15;
+
+    /**
+     * Minimum answers a reactivo needs before its parameters are written
+     */
+    private int minRespuestas = 30;
+
+    /**
+     * Rows per batched UPDATE when writing fitted parameters
+     */
+    private int loteEscritura = 500;
+}
@@ -0,0 +1,46 @@
+package com.example.enarm360.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.security.principal-cache")
+public class PrincipalCacheProperties {
+
+    /**
+     * Cache current-user info (roles and permissions) in front of UsuarioActual
+     */
+    private boolean enabled = true;
+
+    /**
+     * Maximum cached users (least recently used are evicted)
+     */
+    private int maxEntradas = 10000;
+
+    /**
+     * Time a cached user entry is trusted before reloading it
+     */
+    private long ttlMs = 300000;
+
+    /**
+     * Interval between polls of the invalidation log
+     */
+    private long sondeoMs = 2000;
+
+    /**
+     * Overlap of each poll with the previous one, to catch rows committed late or written by nodes with clock skew
+     */
+    private long margenSeg = 60;
+
+    /**
+     * Hours invalidation log rows are kept
+     */
+    private long retencionHoras = 24;
+
+    /**
+     * Cron expression for purging old invalidation log rows
+     */
+    private String purgaCron = "0 15 * * * ?";
+}
@@ -0,0 +1,31 @@
+package com.example.enarm360.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.reactivos.cambios")
+public class ReactivoCambiosProperties {
+
+    /**
+     * Interval between polls of the reactivo change log
+     */
+    private long sondeoMs = 2000;
+
+    /**
+     * Overlap of each poll with the previous one, to catch rows committed late or written by nodes with clock skew
+     */
+    private long margenSeg = 60;
+
+    /**
+     * Hours change log rows are kept
+     */
+    private long retencionHoras = 24;
+
+    /**
+     * Cron expression for purging old change log rows
+     */
+    private String purgaCron = "0 20 * * * ?";
+}
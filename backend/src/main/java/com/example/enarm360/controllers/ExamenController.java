@@ -1,14 +1,26 @@
 package com.example.enarm360.controllers;
 
 import com.example.enarm360.dtos.ExamenDTO;
+import com.example.enarm360.dtos.ExamenSeccionDTO;
+import com.example.enarm360.dtos.GenerarExamenBlueprintRequest;
 import com.example.enarm360.dtos.GenerarExamenRequest;
+import com.example.enarm360.dtos.GenerarRepasoRequest;
+import com.example.enarm360.dtos.IniciarAdaptativoRequest;
 import com.example.enarm360.dtos.IntentoExamenDTO;
 import com.example.enarm360.dtos.IntentoPreguntaDTO;
+import com.example.enarm360.dtos.IntentoReanudarDTO;
+import com.example.enarm360.dtos.ReactivoTiempoDTO;
 import com.example.enarm360.entities.Examen;
-import com.example.enarm360.entities.IntentoPregunta;
+import com.example.enarm360.services.AdaptativoService;
+import com.example.enarm360.services.ExamenPayloadCache;
+import com.example.enarm360.services.ExamenPregeneracionService;
 import com.example.enarm360.services.ExamenService;
 import com.example.enarm360.Mappers.IntentoExamenMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import java.util.List;
@@ -19,21 +31,96 @@ import java.util.Map;
 public class ExamenController {
 
     private final ExamenService examenService;
+    private final ExamenPregeneracionService pregeneracionService;
+    private final ExamenPayloadCache payloadCache;
+    private final AdaptativoService adaptativoService;
 
     /**
      * Generar un examen SOLO con reactivos
      */
     @PostMapping("/generar")
     public ResponseEntity<ExamenDTO> generarExamen(@RequestBody GenerarExamenRequest request) {
-        Examen examen = examenService.generarExamen(
-                request.getEspecialidades(),
-                request.getNumReactivos(),
-                request.getUsuarioId()
-        );
-        return ResponseEntity.ok(
-                // Usar tu ExamenMapper
-                com.example.enarm360.Mappers.ExamenMapper.toDTO(examen)
-        );
+        // Primero el pool de pregenerados; si está vacío se genera al momento
+        ExamenDTO dto = pregeneracionService
+                .tomar(request.getEspecialidades(), request.getNumReactivos(), request.getUsuarioId())
+                .orElseGet(() -> {
+                    Examen examen = examenService.generarExamen(
+                            request.getEspecialidades(),
+                            request.getNumReactivos(),
+                            request.getUsuarioId()
+                    );
+                    // Usar tu ExamenMapper
+                    return com.example.enarm360.Mappers.ExamenMapper.toDTO(examen);
+                });
+        return ResponseEntity.ok(dto);
+    }
+
+    /**
+     * Generar un examen estratificado por blueprint (porcentajes por especialidad,
+     * balanceado por dificultad y clave). Con el mismo seed se obtiene la misma composición.
+     */
+    @PostMapping("/generar/blueprint")
+    public ResponseEntity<?> generarExamenBlueprint(@RequestBody GenerarExamenBlueprintRequest request) {
+        try {
+            Examen examen = examenService.generarExamenBlueprint(request);
+            return ResponseEntity.ok(com.example.enarm360.Mappers.ExamenMapper.toDTO(examen));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "message", e.getMessage(),
+                    "success", false
+            ));
+        }
+    }
+
+    /**
+     * Generar un examen de repaso con los reactivos fallados que ya vencieron
+     */
+    @PostMapping("/repaso/generar")
+    public ResponseEntity<?> generarExamenRepaso(@RequestBody GenerarRepasoRequest request) {
+        try {
+            Examen examen = examenService.generarExamenRepaso(request);
+            return ResponseEntity.ok(com.example.enarm360.Mappers.ExamenMapper.toDTO(examen));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "message", e.getMessage(),
+                    "success", false
+            ));
+        }
+    }
+
+    /**
+     * Modalidad adaptativa: crea el examen y el intento y devuelve el primer reactivo
+     */
+    @PostMapping("/adaptativo/iniciar")
+    public ResponseEntity<?> iniciarAdaptativo(@RequestBody IniciarAdaptativoRequest request) {
+        try {
+            return ResponseEntity.ok(adaptativoService.iniciar(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "message", e.getMessage(),
+                    "success", false
+            ));
+        }
+    }
+
+    /**
+     * Modalidad adaptativa: responde el reactivo presentado y devuelve el siguiente
+     */
+    @PostMapping("/adaptativo/{intentoId}/responder")
+    public ResponseEntity<?> responderAdaptativo(
+            @PathVariable Long intentoId,
+            @RequestParam Long reactivoId,
+            @RequestParam String respuesta,
+            @RequestParam(required = false) Long seq
+    ) {
+        try {
+            return ResponseEntity.ok(adaptativoService.responder(intentoId, reactivoId, respuesta, seq));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "message", e.getMessage(),
+                    "success", false
+            ));
+        }
     }
 
     /**
@@ -53,17 +140,60 @@ public class ExamenController {
 
     /**
      * Responder un reactivo (pregunta normal A–D)
-     * 👉 Aquí todavía puedes devolver la entidad si no planeas mostrarla en frontend
+     * seq: número creciente por intento; reenviar el mismo seq no duplica la respuesta
      */
     @PostMapping("/intentos/{intentoId}/reactivo")
-    public ResponseEntity<IntentoPregunta> responderReactivo(
+    public ResponseEntity<?> responderReactivo(
             @PathVariable Long intentoId,
             @RequestParam Long reactivoId,
-            @RequestParam String respuesta
+            @RequestParam String respuesta,
+            @RequestParam(required = false) Long seq
     ) {
-        return ResponseEntity.ok(
-                examenService.responderReactivo(intentoId, reactivoId, respuesta)
-        );
+        try {
+            return ResponseEntity.ok(
+                    examenService.responderReactivo(intentoId, reactivoId, respuesta, seq)
+            );
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "message", e.getMessage(),
+                    "success", false
+            ));
+        }
+    }
+
+    /**
+     * Retomar un intento (p.ej. tras cerrarse el navegador): respuestas, tiempo y siguiente pregunta
+     */
+    @GetMapping("/intentos/{intentoId}/reanudar")
+    public ResponseEntity<IntentoReanudarDTO> reanudarIntento(@PathVariable Long intentoId) {
+        return ResponseEntity.ok(examenService.reanudarIntento(intentoId));
+    }
+
+    /**
+     * El cliente muestra un reactivo: marca desde cuándo para medir el tiempo por pregunta
+     */
+    @PostMapping("/intentos/{intentoId}/vista")
+    public ResponseEntity<?> registrarVista(
+            @PathVariable Long intentoId,
+            @RequestParam Long reactivoId
+    ) {
+        try {
+            examenService.registrarVista(intentoId, reactivoId);
+            return ResponseEntity.noContent().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "message", e.getMessage(),
+                    "success", false
+            ));
+        }
+    }
+
+    /**
+     * Tiempo de respuesta de un reactivo (media y percentiles, en ms)
+     */
+    @GetMapping("/reactivos/{reactivoId}/tiempos")
+    public ResponseEntity<ReactivoTiempoDTO> getTiemposReactivo(@PathVariable Long reactivoId) {
+        return ResponseEntity.ok(examenService.getTiemposReactivo(reactivoId));
     }
 
     /**
@@ -77,14 +207,76 @@ public class ExamenController {
     }
 
     /**
-     * Obtener examen con reactivos
+     * Obtener examen con reactivos.
+     * Responde el JSON pre-serializado (gzip si el cliente lo acepta) con ETag; 304 si no cambió.
      */
     @GetMapping("/{examenId}")
-    public ResponseEntity<ExamenDTO> getExamen(@PathVariable Long examenId) {
-        return ResponseEntity.ok(examenService.getExamenDTO(examenId));
+    public ResponseEntity<byte[]> getExamen(
+            @PathVariable Long examenId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        ExamenPayloadCache.Payload payload =
+                payloadCache.obtener(examenId, () -> examenService.getExamenDTO(examenId));
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        String etag = gzip ? payload.etagGzip() : payload.etag();
+
+        if (payload.coincide(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .cacheControl(CacheControl.noCache().cachePrivate())
+                    .build();
+        }
+
+        ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return respuesta.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(payload.gzip());
+        }
+        return respuesta.body(payload.json());
     }
     
 
+    /**
+     * Manifiesto para entrega por secciones: orden de preguntas (sin textos) y rangos de cada sección
+     */
+    @GetMapping("/{examenId}/manifest")
+    public ResponseEntity<?> getManifest(
+            @PathVariable Long examenId,
+            @RequestParam(defaultValue = "20") int tamanoSeccion
+    ) {
+        try {
+            return ResponseEntity.ok(examenService.getManifest(examenId, tamanoSeccion));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage(), "success", false));
+        }
+    }
+
+    /**
+     * Rango de preguntas con textos, por orden. El header Link indica la siguiente sección para precargar.
+     */
+    @GetMapping("/{examenId}/preguntas")
+    public ResponseEntity<?> getSeccion(
+            @PathVariable Long examenId,
+            @RequestParam(defaultValue = "1") int desde,
+            @RequestParam(defaultValue = "20") int limite
+    ) {
+        try {
+            ExamenSeccionDTO seccion = examenService.getSeccion(examenId, desde, limite);
+            ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok();
+            if (seccion.getSiguienteDesde() != null) {
+                respuesta.header(HttpHeaders.LINK, "</api/examenes/" + examenId + "/preguntas?desde="
+                        + seccion.getSiguienteDesde() + "&limite=" + limite + ">; rel=\"next prefetch\"");
+            }
+            return respuesta.body(seccion);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage(), "success", false));
+        }
+    }
+
     @GetMapping("/intentos/{intentoId}/respuestas")
     public ResponseEntity<List<IntentoPreguntaDTO>> getRespuestasDeIntento(
             @PathVariable Long intentoId
@@ -96,12 +288,19 @@ public class ExamenController {
 
 
 @PostMapping("/intentos/{intentoId}/respuestas")
-public ResponseEntity<Void> enviarRespuestas(
+public ResponseEntity<?> enviarRespuestas(
         @PathVariable Long intentoId,
         @RequestBody Map<Long, String> respuestas
 ) {
-    examenService.guardarRespuestas(intentoId, respuestas);
-    return ResponseEntity.ok().build();
+    try {
+        examenService.guardarRespuestas(intentoId, respuestas);
+        return ResponseEntity.ok().build();
+    } catch (IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Map.of(
+                "message", e.getMessage(),
+                "success", false
+        ));
+    }
 }
 
 
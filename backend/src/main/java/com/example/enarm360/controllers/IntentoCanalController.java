@@ -0,0 +1,77 @@
+package com.example.enarm360.controllers;
+
+import com.example.enarm360.dtos.RespuestaFrameDTO;
+import com.example.enarm360.services.IntentoCanalService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Canal en vivo de un intento: un stream SSE autenticado con JWT (o con un ticket de un solo
+ * uso, para EventSource) y frames de respuestas autenticados con el token del canal.
+ */
+@RestController
+@RequestMapping("/api")
+@RequiredArgsConstructor
+public class IntentoCanalController {
+
+    public static final String HEADER_TOKEN = "X-Canal-Token";
+
+    private final IntentoCanalService canalService;
+
+    /**
+     * Abre el canal (requiere JWT en Authorization, así que el cliente usa fetch y lee el body
+     * como stream). El primer evento, "canal", trae el token para los frames; después llegan
+     * eventos "ack" con las confirmaciones agrupadas. 403 si el intento es de otro usuario.
+     */
+    @GetMapping(value = "/examenes/intentos/{intentoId}/canal", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter abrirCanal(@PathVariable Long intentoId) {
+        return canalService.abrir(intentoId);
+    }
+
+    /**
+     * Ticket de un solo uso (requiere JWT) para abrir el canal con EventSource, que no manda
+     * cabeceras: new EventSource("/api/canal/intentos/{intentoId}/stream?ticket=" + ticket).
+     */
+    @PostMapping("/examenes/intentos/{intentoId}/canal/ticket")
+    public ResponseEntity<?> ticketCanal(@PathVariable Long intentoId) {
+        return ResponseEntity.ok(Map.of("ticket", canalService.emitirTicket(intentoId)));
+    }
+
+    /**
+     * Abre el canal con un ticket de /canal/ticket. Mismos eventos que abrirCanal.
+     */
+    @GetMapping(value = "/canal/intentos/{intentoId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> abrirCanalConTicket(@PathVariable Long intentoId,
+                                                          @RequestParam(required = false) String ticket) {
+        try {
+            return ResponseEntity.ok(canalService.abrirConTicket(intentoId, ticket));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+    }
+
+    /**
+     * Frames de respuestas. Autentica con X-Canal-Token, no con JWT; la confirmación de cada
+     * frame llega por el stream.
+     */
+    @PostMapping("/canal/intentos/{intentoId}/frames")
+    public ResponseEntity<?> recibirFrames(
+            @PathVariable Long intentoId,
+            @RequestHeader(value = HEADER_TOKEN, required = false) String token,
+            @RequestBody List<RespuestaFrameDTO> frames
+    ) {
+        if (!canalService.valido(intentoId, token)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("message", "Canal no válido o cerrado", "success", false));
+        }
+        int aceptados = canalService.recibir(intentoId, token, frames);
+        return ResponseEntity.accepted().body(Map.of("recibidos", frames.size(), "aceptados", aceptados));
+    }
+}
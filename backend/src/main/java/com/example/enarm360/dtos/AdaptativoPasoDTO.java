@@ -0,0 +1,22 @@
+package com.example.enarm360.dtos;
+
+import lombok.*;
+
+/**
+ * Resultado de un paso de la modalidad adaptativa: calificación de la respuesta, habilidad
+ * estimada y el siguiente reactivo (null cuando termina).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AdaptativoPasoDTO {
+    private Long intentoId;
+    private Long examenId;
+    private Boolean correcta;          // null en el primer paso
+    private double theta;
+    private double errorEstandar;
+    private int administrados;
+    private boolean terminado;
+    private ExamenPreguntaDTO siguiente;
+}
@@ -0,0 +1,35 @@
+package com.example.enarm360.dtos;
+
+import lombok.*;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Índice de un examen para entrega por secciones: metadata, el orden de todas las
+ * preguntas (sin textos) y los rangos de orden de cada sección.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ExamenManifestDTO {
+    private Long id;
+    private String nombre;
+    private String descripcion;
+    private LocalDateTime creadoEn;
+    private Integer tiempoLimiteMin;
+
+    private int totalPreguntas;
+    private int tamanoSeccion;
+    private List<ExamenPreguntaRefDTO> preguntas;
+    private List<Seccion> secciones;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Seccion {
+        private int indice;
+        private int desde;   // orden inicial (inclusive)
+        private int hasta;   // orden final (inclusive)
+    }
+}
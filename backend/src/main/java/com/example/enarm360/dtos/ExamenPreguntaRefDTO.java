@@ -0,0 +1,17 @@
+package com.example.enarm360.dtos;
+
+import lombok.*;
+
+/**
+ * Referencia ligera a una pregunta del examen (sin textos), para el manifiesto.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ExamenPreguntaRefDTO {
+    private Long id;
+    private Integer orden;
+    private Long reactivoId;
+    private Double puntaje;
+}
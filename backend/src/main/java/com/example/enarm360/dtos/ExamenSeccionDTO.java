@@ -0,0 +1,21 @@
+package com.example.enarm360.dtos;
+
+import lombok.*;
+import java.util.List;
+
+/**
+ * Rango de preguntas de un examen con sus textos. siguienteDesde indica qué pedir
+ * (y precargar) después; es null en la última sección.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ExamenSeccionDTO {
+    private Long examenId;
+    private int desde;
+    private int hasta;
+    private int totalPreguntas;
+    private Integer siguienteDesde;
+    private List<ExamenPreguntaDTO> preguntas;
+}
@@ -0,0 +1,30 @@
+package com.example.enarm360.dtos;
+
+import lombok.Data;
+import java.util.List;
+
+/**
+ * Composición estratificada de un examen: cuántos reactivos en total y qué porcentaje
+ * de cada especialidad. El porcentaje que falte para 100 se reparte entre las
+ * especialidades no listadas, en proporción a su número de reactivos.
+ */
+@Data
+public class GenerarExamenBlueprintRequest {
+    private int totalReactivos;
+    private Long usuarioId;
+    private List<CuotaEspecialidad> especialidades;
+
+    // Reparto parejo entre dificultades / claves (false = proporcional al banco)
+    private boolean balancearDificultad = true;
+    private boolean distribuirClaves = true;
+
+    // Mismo seed + mismo banco = misma composición
+    private Long seed;
+    private Integer tiempoLimiteMin;
+
+    @Data
+    public static class CuotaEspecialidad {
+        private Long especialidadId;
+        private double porcentaje;
+    }
+}
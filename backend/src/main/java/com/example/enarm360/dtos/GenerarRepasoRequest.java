@@ -0,0 +1,10 @@
+package com.example.enarm360.dtos;
+
+import lombok.Data;
+
+@Data
+public class GenerarRepasoRequest {
+    private Long usuarioId;
+    private int numReactivos = 20;      // tope; puede salir con menos si no hay tantos vencidos
+    private Integer tiempoLimiteMin;
+}
@@ -0,0 +1,12 @@
+package com.example.enarm360.dtos;
+
+import lombok.Data;
+import java.util.List;
+
+@Data
+public class IniciarAdaptativoRequest {
+    private Long usuarioId;
+    private List<Long> especialidades;      // vacío = todas
+    private int maxReactivos = 30;
+    private double errorObjetivo = 0.3;     // se detiene cuando el error estándar de θ baja de esto
+}
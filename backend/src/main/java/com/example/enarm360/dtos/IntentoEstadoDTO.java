@@ -0,0 +1,22 @@
+package com.example.enarm360.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Cabecera de un intento para la sesión en memoria: examen, inicio, fin, tiempo límite y usuario.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IntentoEstadoDTO {
+    private Long id;
+    private Long examenId;
+    private LocalDateTime iniciadoEn;
+    private LocalDateTime finalizadoEn;
+    private Integer tiempoLimiteMin;
+    private Long usuarioId;
+}
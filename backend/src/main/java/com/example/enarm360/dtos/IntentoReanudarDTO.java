@@ -0,0 +1,30 @@
+package com.example.enarm360.dtos;
+
+import lombok.*;
+
+import java.util.Map;
+
+/**
+ * Estado compacto de un intento para retomarlo tras perder el cliente.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IntentoReanudarDTO {
+    private Long intentoId;
+    private Long examenId;
+    private boolean finalizado;
+
+    // reactivoId -> letra elegida, en el orden en que se respondieron
+    private Map<Long, String> respuestas;
+    private int respondidas;
+    private int totalPreguntas;
+
+    // Siguiente pregunta sin responder (orden 1-based en el examen); null si ya no hay
+    private Integer siguienteOrden;
+    private Long siguienteReactivoId;
+
+    private long segundosTranscurridos;
+    private Long segundosRestantes;     // null si el examen no tiene tiempo límite
+}
@@ -0,0 +1,17 @@
+package com.example.enarm360.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Lo que se copia de un reactivo a intento_pregunta (enunciado y explicación), sin opciones.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReactivoSnapshotDTO {
+    private Long id;
+    private String pregunta;
+    private String retroalimentacion;
+}
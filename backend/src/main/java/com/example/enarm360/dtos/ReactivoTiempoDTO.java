@@ -0,0 +1,20 @@
+package com.example.enarm360.dtos;
+
+import lombok.*;
+
+/**
+ * Resumen del tiempo de respuesta de un reactivo, en milisegundos.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReactivoTiempoDTO {
+    private Long reactivoId;
+    private long conteo;
+    private long mediaMs;
+    private long p50Ms;
+    private long p90Ms;
+    private long p99Ms;
+    private long maxMs;
+}
@@ -0,0 +1,18 @@
+package com.example.enarm360.dtos;
+
+import lombok.*;
+
+/**
+ * Un evento del cliente en el canal de un intento: una respuesta o, con tipo "vista",
+ * el reactivo que acaba de mostrar.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RespuestaFrameDTO {
+    private String tipo;        // "respuesta" (default) o "vista"
+    private Long seq;
+    private Long reactivoId;
+    private String respuesta;
+}
@@ -7,6 +7,7 @@ import lombok.Data;
 @Builder
 public class TokenResponse {
     private String accessToken;
+    private String refreshToken;
     @Builder.Default
     private String tokenType = "Bearer";
     private Long expiresIn;
@@ -1,6 +1,9 @@
 package com.example.enarm360.dtos.auth;
+import com.example.enarm360.entities.Usuario;
 import lombok.*; 
+import java.util.HashSet;
 import java.util.Set;
+import java.util.stream.Collectors;
 @NoArgsConstructor  
 @AllArgsConstructor 
 @Data
@@ -14,4 +17,39 @@ public class UsuarioInfo {
     private Set<String> roles;
     private Set<String> permisos;
     private Boolean activo;
+
+    /**
+     * Información del usuario para el frontend: roles y permisos efectivos (de sus roles
+     * y directos).
+     */
+    public static UsuarioInfo fromEntity(Usuario usuario) {
+        Set<String> roles = usuario.getRoles().stream()
+                .map(rol -> rol.getNombre())
+                .collect(Collectors.toSet());
+
+        Set<String> permisos = new HashSet<>();
+        
+        // Permisos de roles
+        usuario.getRoles().forEach(rol -> 
+            rol.getPermisos().forEach(permiso -> 
+                permisos.add(permiso.getCodigo())
+            )
+        );
+        
+        // Permisos directos del usuario
+        usuario.getPermisos().forEach(permiso -> 
+            permisos.add(permiso.getCodigo())
+        );
+
+        return UsuarioInfo.builder()
+                .id(usuario.getId())
+                .username(usuario.getUsername())
+                .email(usuario.getEmail())
+                .nombre(usuario.getNombre())
+                .apellidos(usuario.getApellidos())
+                .roles(roles)
+                .permisos(permisos)
+                .activo(usuario.getActivo())
+                .build();
+    }
 }
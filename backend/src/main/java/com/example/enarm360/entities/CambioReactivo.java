@@ -0,0 +1,34 @@
+package com.example.enarm360.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Bitácora de reactivos creados, editados o borrados (ver ReactivoCambiosService).
+ * Cada nodo la sondea para poner al día sus índices en memoria.
+ */
+@Entity
+@Table(name = "cambio_reactivo",
+        indexes = @Index(name = "idx_cambio_reactivo_creado", columnList = "creado_en"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CambioReactivo {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Sin FK: la fila de un reactivo borrado debe sobrevivirle
+    @Column(name = "reactivo_id", nullable = false)
+    private Long reactivoId;
+
+    @Column(name = "creado_en", nullable = false)
+    private LocalDateTime creadoEn;
+}
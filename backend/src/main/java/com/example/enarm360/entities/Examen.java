@@ -17,7 +17,8 @@ import java.util.List;
 public class Examen {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "examen_seq")
+    @SequenceGenerator(name = "examen_seq", sequenceName = "examen_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "creado_en")
@@ -38,6 +39,7 @@ public class Examen {
     private Especialidad especialidad;
 
   @OneToMany(mappedBy = "examen", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
+@OrderBy("orden ASC")
 @Builder.Default
 private List<ExamenPregunta> examenPreguntas = new ArrayList<>();
 
@@ -0,0 +1,33 @@
+package com.example.enarm360.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Regla de paro de un examen adaptativo (ver AdaptativoService).
+ */
+@Entity
+@Table(name = "examen_adaptativo")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ExamenAdaptativo {
+
+    @Id
+    @Column(name = "examen_id")
+    private Long examenId;
+
+    @Column(name = "max_reactivos", nullable = false)
+    private int maxReactivos;
+
+    @Column(name = "error_objetivo", nullable = false)
+    private double errorObjetivo;
+
+    // IDs separados por coma; null = cualquier especialidad
+    @Column(name = "especialidades", length = 1000)
+    private String especialidades;
+}
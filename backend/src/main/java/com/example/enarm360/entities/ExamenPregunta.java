@@ -6,15 +6,19 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 
 @Entity
-@Table(name = "examen_pregunta")
+@Table(name = "examen_pregunta", indexes = {
+        @Index(name = "idx_examen_pregunta_examen_orden", columnList = "examen_id, orden")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 public class ExamenPregunta {
 
+    // Secuencia con pool para que Hibernate pueda agrupar los INSERT en batch
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "examen_pregunta_seq")
+    @SequenceGenerator(name = "examen_pregunta_seq", sequenceName = "examen_pregunta_seq", allocationSize = 50)
     private Long id;
 
     private Integer orden;
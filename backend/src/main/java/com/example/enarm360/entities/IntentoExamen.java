@@ -17,7 +17,8 @@ import lombok.Builder;
 public class IntentoExamen {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "intento_examen_seq")
+    @SequenceGenerator(name = "intento_examen_seq", sequenceName = "intento_examen_seq", allocationSize = 50)
     private Long id;
 
     private Integer correctas = 0;
@@ -7,7 +7,10 @@ import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 @Entity
-@Table(name = "intento_pregunta")
+@Table(name = "intento_pregunta", uniqueConstraints = {
+        // Una fila por reactivo en cada intento: reintentos y nodos concurrentes no duplican
+        @UniqueConstraint(name = "uk_intento_pregunta_intento_reactivo", columnNames = {"intento_examen_id", "reactivo_id"})
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -15,7 +18,8 @@ import lombok.Builder;
 public class IntentoPregunta {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "intento_pregunta_seq")
+    @SequenceGenerator(name = "intento_pregunta_seq", sequenceName = "intento_pregunta_seq", allocationSize = 50)
     private Long id;
 
     private boolean correcta;
@@ -53,6 +57,10 @@ public class IntentoPregunta {
     @Column(name = "respuesta", length = 1)
 private String respuesta; // "a", "b", "c" o "d"
 
+    // Número de secuencia del cliente de la última respuesta aplicada (idempotencia)
+    @Column(name = "secuencia")
+    private Long secuencia;
+
 
 
 }
\ No newline at end of file
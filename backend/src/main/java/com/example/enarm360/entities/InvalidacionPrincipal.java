@@ -0,0 +1,40 @@
+package com.example.enarm360.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Bitácora de cambios que invalidan principals en cache (ver PrincipalInvalidacionService).
+ * Cada nodo la sondea y aplica las filas que no ha visto.
+ */
+@Entity
+@Table(name = "invalidacion_principal",
+        indexes = @Index(name = "idx_invalidacion_principal_creado", columnList = "creado_en"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class InvalidacionPrincipal {
+
+    public enum Tipo { USUARIO, ROL, TODOS }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Tipo tipo;
+
+    // ID del usuario, nombre del rol o "*"
+    @Column(nullable = false, length = 100)
+    private String clave;
+
+    @Column(name = "creado_en", nullable = false)
+    private LocalDateTime creadoEn;
+}
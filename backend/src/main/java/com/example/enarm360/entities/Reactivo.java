@@ -7,6 +7,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import org.hibernate.annotations.CreationTimestamp;
+import com.example.enarm360.services.ReactivoIndexListener;
 
 import java.time.LocalDateTime;
 
@@ -14,6 +15,7 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "reactivos")
+@EntityListeners(ReactivoIndexListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -80,5 +82,12 @@ public class Reactivo {
     @JoinColumn(name = "examen_id")
     private Examen examen;
 
+    // Parámetros IRT 2PL (discriminación a, dificultad b); null hasta que se calibra
+    @Column(name = "irt_a")
+    private Double irtA;
+
+    @Column(name = "irt_b")
+    private Double irtB;
+
 
 }
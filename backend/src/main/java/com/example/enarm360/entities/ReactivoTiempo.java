@@ -0,0 +1,51 @@
+package com.example.enarm360.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Histograma acumulado del tiempo que tardan los alumnos en responder un reactivo.
+ * Los buckets son log-lineales (ver ReactivoTiempoHistogramas) y se guardan dispersos.
+ */
+@Entity
+@Table(name = "reactivo_tiempo")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReactivoTiempo {
+
+    @Id
+    @Column(name = "reactivo_id")
+    private Long reactivoId;
+
+    private long conteo;
+
+    @Column(name = "suma_ms")
+    private long sumaMs;
+
+    @Column(name = "max_ms")
+    private long maxMs;
+
+    // índice de bucket -> conteo
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "buckets", columnDefinition = "jsonb")
+    @Builder.Default
+    private Map<String, Long> buckets = new HashMap<>();
+
+    @Column(name = "actualizado_en")
+    private LocalDateTime actualizadoEn;
+
+    // Varios nodos pueden volcar el mismo reactivo a la vez
+    @Version
+    private Long version;
+}
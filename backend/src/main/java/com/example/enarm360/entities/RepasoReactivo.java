@@ -0,0 +1,59 @@
+package com.example.enarm360.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Estado de repaso espaciado (SM-2) de un reactivo que el usuario falló.
+ */
+@Entity
+@Table(name = "repaso_reactivo",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uk_repaso_reactivo_usuario_reactivo", columnNames = {"usuario_id", "reactivo_id"})
+        },
+        indexes = {
+                @Index(name = "idx_repaso_reactivo_usuario_vence", columnList = "usuario_id, vence_en")
+        })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RepasoReactivo {
+
+    // Secuencia con pool para que Hibernate pueda agrupar los INSERT en batch
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "repaso_reactivo_seq")
+    @SequenceGenerator(name = "repaso_reactivo_seq", sequenceName = "repaso_reactivo_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "usuario_id", nullable = false)
+    private Long usuarioId;
+
+    @Column(name = "reactivo_id", nullable = false)
+    private Long reactivoId;
+
+    // Repasos correctos seguidos desde el último fallo
+    private int repeticiones;
+
+    // Factor de facilidad de SM-2 (mínimo 1.3)
+    private double facilidad;
+
+    @Column(name = "intervalo_dias")
+    private double intervaloDias;
+
+    @Column(name = "vence_en", nullable = false)
+    private LocalDateTime venceEn;
+
+    @Column(name = "actualizado_en")
+    private LocalDateTime actualizadoEn;
+
+    // Varios nodos pueden volcar la cola del mismo usuario; las filas previas quedan en 0
+    @Version
+    @Column(name = "version", columnDefinition = "bigint default 0 not null")
+    private Long version;
+}
@@ -6,7 +6,8 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "sesion_auth")
+@Table(name = "sesion_auth",
+       indexes = @Index(name = "idx_sesion_auth_familia", columnList = "familia"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -21,8 +22,13 @@ public class SesionAuth {
     @JoinColumn(name = "usuario_id", nullable = false)
     private Usuario usuario;
     
-    @Column(name = "token_refresh", unique = true, nullable = false, columnDefinition = "TEXT")
-    private String tokenRefresh;
+    // SHA-256 (hex) del refresh token; nunca el token. Conserva la columna y su índice único
+    @Column(name = "token_refresh", unique = true, nullable = false, length = 64)
+    private String tokenHash;
+    
+    // Se conserva al rotar el token: reusar uno viejo revoca la familia completa
+    @Column(name = "familia", length = 36)
+    private String familia;
     
     @CreationTimestamp
     @Column(name = "emitido_en", nullable = false)
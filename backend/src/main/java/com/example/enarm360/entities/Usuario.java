@@ -43,6 +43,11 @@ public class Usuario {
     @Builder.Default
     @Column(nullable = false)
     private Boolean activo = true;
+
+    // Sube con cada cambio de permisos o activación; los access tokens con una versión menor dejan de valer
+    @Builder.Default
+    @Column(name = "permisos_version", nullable = false, columnDefinition = "bigint default 0")
+    private Long permisosVersion = 0L;
     
     @CreationTimestamp
     @Column(name = "creado_en", nullable = false)
@@ -0,0 +1,37 @@
+package com.example.enarm360.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Reactivos que un usuario ya respondió, como bitmap serializado (ver ReactivoBitmap).
+ */
+@Entity
+@Table(name = "usuario_reactivos_vistos")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UsuarioReactivosVistos {
+
+    @Id
+    @Column(name = "usuario_id")
+    private Long usuarioId;
+
+    @Column(name = "bitmap", columnDefinition = "bytea", nullable = false)
+    private byte[] bitmap;
+
+    private int cardinalidad;
+
+    @Column(name = "actualizado_en")
+    private LocalDateTime actualizadoEn;
+
+    // Varios nodos pueden volcar el mismo usuario a la vez
+    @Version
+    private Long version;
+}
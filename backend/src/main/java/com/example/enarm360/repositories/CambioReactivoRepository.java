@@ -0,0 +1,25 @@
+package com.example.enarm360.repositories;
+
+import com.example.enarm360.entities.CambioReactivo;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+@RepositoryRestResource(exported = false)
+public interface CambioReactivoRepository extends JpaRepository<CambioReactivo, Long> {
+
+    List<CambioReactivo> findByCreadoEnGreaterThanEqualOrderByIdAsc(LocalDateTime desde);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM CambioReactivo c WHERE c.creadoEn < :antes")
+    int deleteAnteriores(@Param("antes") LocalDateTime antes);
+}
@@ -0,0 +1,11 @@
+package com.example.enarm360.repositories;
+
+import com.example.enarm360.entities.ExamenAdaptativo;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.stereotype.Repository;
+
+@Repository
+@RepositoryRestResource(exported = false)
+public interface ExamenAdaptativoRepository extends JpaRepository<ExamenAdaptativo, Long> {
+}
@@ -1,16 +1,64 @@
 package com.example.enarm360.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RestResource;
 import org.springframework.stereotype.Repository;
 
+import com.example.enarm360.dtos.ExamenPreguntaDTO;
+import com.example.enarm360.dtos.ExamenPreguntaRefDTO;
 import com.example.enarm360.entities.ExamenPregunta;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface   ExamenPreguntaRepository  extends JpaRepository<ExamenPregunta, Long> {
 List<ExamenPregunta> findByExamen_Id(Long examenId);
 
+    // Preguntas del examen ya proyectadas a DTO, en orden: un solo SELECT con JOIN al reactivo
+    @RestResource(exported = false)
+    @Query("SELECT new com.example.enarm360.dtos.ExamenPreguntaDTO(" +
+           "ep.id, ep.orden, ep.puntaje, ep.examen.id, r.id, r.pregunta, " +
+           "r.respuestaA, r.respuestaB, r.respuestaC, r.respuestaD) " +
+           "FROM ExamenPregunta ep JOIN ep.reactivo r " +
+           "WHERE ep.examen.id = :examenId ORDER BY ep.orden")
+    List<ExamenPreguntaDTO> findPreguntasDTOByExamenId(@Param("examenId") Long examenId);
+
+    // Un rango de orden [desde, hasta] con textos, para la entrega por secciones
+    @RestResource(exported = false)
+    @Query("SELECT new com.example.enarm360.dtos.ExamenPreguntaDTO(" +
+           "ep.id, ep.orden, ep.puntaje, ep.examen.id, r.id, r.pregunta, " +
+           "r.respuestaA, r.respuestaB, r.respuestaC, r.respuestaD) " +
+           "FROM ExamenPregunta ep JOIN ep.reactivo r " +
+           "WHERE ep.examen.id = :examenId AND ep.orden BETWEEN :desde AND :hasta ORDER BY ep.orden")
+    List<ExamenPreguntaDTO> findPreguntasDTOByExamenIdAndOrdenBetween(@Param("examenId") Long examenId,
+                                                                      @Param("desde") int desde,
+                                                                      @Param("hasta") int hasta);
+
+    // Manifiesto: orden e IDs de todas las preguntas, sin columnas TEXT
+    @RestResource(exported = false)
+    @Query("SELECT new com.example.enarm360.dtos.ExamenPreguntaRefDTO(ep.id, ep.orden, ep.reactivo.id, ep.puntaje) " +
+           "FROM ExamenPregunta ep WHERE ep.examen.id = :examenId ORDER BY ep.orden")
+    List<ExamenPreguntaRefDTO> findRefsByExamenId(@Param("examenId") Long examenId);
+
+    @RestResource(exported = false)
+    int countByExamen_Id(Long examenId);
+
+    // Reactivos del examen en orden (para saber cuál sigue al retomar un intento)
+    @RestResource(exported = false)
+    @Query("SELECT ep.reactivo.id FROM ExamenPregunta ep WHERE ep.examen.id = :examenId ORDER BY ep.orden")
+    List<Long> findReactivoIdsByExamenId(@Param("examenId") Long examenId);
+
+    // Puntaje de cada reactivo dentro del examen de un intento: [reactivoId, puntaje]
+    @RestResource(exported = false)
+    @Query("SELECT ep.reactivo.id, MAX(ep.puntaje) FROM ExamenPregunta ep, IntentoExamen i " +
+           "WHERE i.id = :intentoId AND ep.examen = i.examen AND ep.reactivo.id IN :reactivoIds " +
+           "GROUP BY ep.reactivo.id")
+    List<Object[]> findPuntajesByIntentoIdAndReactivoIdIn(@Param("intentoId") Long intentoId,
+                                                          @Param("reactivoIds") Collection<Long> reactivoIds);
+
 
 
 
@@ -1,9 +1,18 @@
 package com.example.enarm360.repositories;
 import com.example.enarm360.entities.Examen;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RestResource;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 
 @Repository
@@ -15,6 +24,29 @@ public interface ExamenRepository extends JpaRepository<Examen, Long> {
     // Exámenes creados por un usuario
     List<Examen> findByCreadoPor(Long usuarioId);
 
+    // Examen con sus preguntas y reactivos en un solo SELECT
+    @RestResource(exported = false)
+    @EntityGraph(attributePaths = {"examenPreguntas", "examenPreguntas.reactivo"})
+    @Query("SELECT e FROM Examen e WHERE e.id = :id")
+    Optional<Examen> findConReactivosById(@Param("id") Long id);
+
+    // Exámenes pregenerados que quedaron sin asignar (p.ej. tras un reinicio)
+    @RestResource(exported = false)
+    List<Examen> findByCreadoPorIsNullAndNombre(String nombre);
+
+    @RestResource(exported = false)
+    List<Examen> findByCreadoPorIsNullAndNombreStartingWithAndCreadoEnBefore(String prefijo, LocalDateTime limite);
+
+    // Entrega un examen pregenerado a un usuario; devuelve 0 si ya estaba asignado
+    @Modifying
+    @Transactional
+    @RestResource(exported = false)
+    @Query("UPDATE Examen e SET e.creadoPor = :usuarioId, e.creadoEn = :creadoEn, e.nombre = :nombre " +
+           "WHERE e.id = :id AND e.creadoPor IS NULL")
+    int asignarPregenerado(@Param("id") Long id,
+                           @Param("usuarioId") Long usuarioId,
+                           @Param("creadoEn") LocalDateTime creadoEn,
+                           @Param("nombre") String nombre);
    
 }
 
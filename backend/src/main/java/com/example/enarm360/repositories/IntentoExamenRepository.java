@@ -1,9 +1,21 @@
 package com.example.enarm360.repositories;
+import com.example.enarm360.dtos.IntentoEstadoDTO;
 import com.example.enarm360.entities.IntentoExamen;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RestResource;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 
 @Repository
@@ -17,4 +29,45 @@ public interface IntentoExamenRepository extends JpaRepository<IntentoExamen, Lo
 
     // Último intento de un usuario
     Optional<IntentoExamen> findTopByUsuarioIdOrderByIniciadoEnDesc(Long usuarioId);
+
+    // Cabecera del intento sin cargar la entidad ni sus respuestas
+    @RestResource(exported = false)
+    @Query("SELECT new com.example.enarm360.dtos.IntentoEstadoDTO(i.id, e.id, i.iniciadoEn, i.finalizadoEn, e.tiempoLimiteMin, u.id) " +
+           "FROM IntentoExamen i LEFT JOIN i.examen e LEFT JOIN i.usuario u WHERE i.id = :id")
+    Optional<IntentoEstadoDTO> findEstadoById(@Param("id") Long id);
+
+    // Intentos abiertos de exámenes con tiempo límite: [id, iniciadoEn, tiempoLimiteMin]
+    @RestResource(exported = false)
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "5000"))
+    @Query("SELECT i.id, i.iniciadoEn, e.tiempoLimiteMin FROM IntentoExamen i JOIN i.examen e " +
+           "WHERE i.finalizadoEn IS NULL AND e.tiempoLimiteMin > 0")
+    Stream<Object[]> streamAbiertosConLimite();
+
+    // Finaliza solo si sigue abierto. El UPDATE bloquea la fila: de dos finalizaciones
+    // concurrentes (alumno y temporizador, o dos nodos) solo una ve 1 fila
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Transactional
+    @RestResource(exported = false)
+    @Query("UPDATE IntentoExamen i SET i.finalizadoEn = :ahora WHERE i.id = :id AND i.finalizadoEn IS NULL")
+    int marcarFinalizado(@Param("id") Long id, @Param("ahora") LocalDateTime ahora);
+
+    // Lee el intento con SELECT ... FOR UPDATE si sigue abierto (vacío si ya se finalizó o no
+    // existe), para que una escritura de respuestas no se cruce con la finalización
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @RestResource(exported = false)
+    @Query("SELECT i FROM IntentoExamen i WHERE i.id = :id AND i.finalizadoEn IS NULL")
+    Optional<IntentoExamen> findAbiertoById(@Param("id") Long id);
+
+    // Marcador incremental: se suma en la BD para que escrituras concurrentes no se pisen
+    @Modifying
+    @Transactional
+    @RestResource(exported = false)
+    @Query("UPDATE IntentoExamen i SET i.correctas = COALESCE(i.correctas, 0) + :correctas, " +
+           "i.incorrectas = COALESCE(i.incorrectas, 0) + :incorrectas, " +
+           "i.puntajeTotal = COALESCE(i.puntajeTotal, 0) + :puntaje " +
+           "WHERE i.id = :id")
+    int sumarMarcador(@Param("id") Long id,
+                      @Param("correctas") int correctas,
+                      @Param("incorrectas") int incorrectas,
+                      @Param("puntaje") double puntaje);
 }
@@ -2,10 +2,17 @@ package com.example.enarm360.repositories;
 
 import com.example.enarm360.entities.IntentoPregunta;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RestResource;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface IntentoPreguntaRepository extends JpaRepository<IntentoPregunta, Long> {
@@ -22,7 +29,45 @@ public interface IntentoPreguntaRepository extends JpaRepository<IntentoPregunta
     //  Optional<IntentoPregunta> findByIntentoIdAndReactivoId(Long intentoId, Long reactivoId);
 
       Optional<IntentoPregunta> findByIntentoExamenIdAndReactivoId(Long intentoId, Long reactivoId);
+
+    // 🔹 Filas ya existentes del intento para un conjunto de reactivos (upsert en lote)
+    @RestResource(exported = false)
+    List<IntentoPregunta> findByIntentoExamenIdAndReactivoIdIn(Long intentoExamenId, Collection<Long> reactivoIds);
+
+    // 🔹 Respuestas del intento sin textos: [reactivoId, respuesta, orden, correcta, secuencia, tiempoSeg]
+    @RestResource(exported = false)
+    @Query("SELECT ip.reactivo.id, ip.respuesta, ip.orden, ip.correcta, ip.secuencia, ip.tiempoSeg " +
+           "FROM IntentoPregunta ip WHERE ip.intentoExamen.id = :intentoId AND ip.reactivo IS NOT NULL " +
+           "AND ip.respondida = true ORDER BY ip.orden, ip.id")
+    List<Object[]> findRespuestasByIntentoId(@Param("intentoId") Long intentoId);
     
-}
+    // 🔹 Marcador del intento calculado desde sus respuestas: [correctas, incorrectas, puntaje]
+    // El puntaje de un reactivo que aparece dos veces en el examen se toma una vez (el mayor)
+    @RestResource(exported = false)
+    @Query("SELECT COALESCE(SUM(CASE WHEN ip.correcta = true THEN 1 ELSE 0 END), 0), " +
+           "COALESCE(SUM(CASE WHEN ip.correcta = false THEN 1 ELSE 0 END), 0), " +
+           "COALESCE(SUM(CASE WHEN ip.correcta = true THEN COALESCE(ep.puntaje, 1.0) ELSE 0.0 END), 0.0) " +
+           "FROM IntentoPregunta ip JOIN ip.intentoExamen i " +
+           "LEFT JOIN (SELECT e.reactivo.id AS reactivoId, MAX(e.puntaje) AS puntaje FROM ExamenPregunta e " +
+           "           WHERE e.examen.id = (SELECT i2.examen.id FROM IntentoExamen i2 WHERE i2.id = :intentoId) " +
+           "           GROUP BY e.reactivo.id) ep ON ep.reactivoId = ip.reactivo.id " +
+           "WHERE i.id = :intentoId AND ip.respondida = true")
+    List<Object[]> calcularMarcador(@Param("intentoId") Long intentoId);
 
+    // 🔹 Todas las respuestas calificadas, agrupadas por intento, para la calibración IRT: [intentoId, reactivoId, correcta]
+    @RestResource(exported = false)
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.fetchSize", value = "10000"),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    @Query("SELECT ip.intentoExamen.id, ip.reactivo.id, ip.correcta FROM IntentoPregunta ip " +
+           "WHERE ip.reactivo IS NOT NULL AND ip.respondida = true ORDER BY ip.intentoExamen.id")
+    Stream<Object[]> streamRespuestasCalificadas();
 
+    // 🔹 Reactivos respondidos alguna vez por un usuario (con repetidos), para su bitmap de vistos
+    @RestResource(exported = false)
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "5000"))
+    @Query("SELECT ip.reactivo.id FROM IntentoPregunta ip " +
+           "WHERE ip.intentoExamen.usuario.id = :usuarioId AND ip.reactivo IS NOT NULL AND ip.respondida = true")
+    Stream<Long> streamReactivosRespondidosPorUsuario(@Param("usuarioId") Long usuarioId);
+}
@@ -1,13 +1,20 @@
 package com.example.enarm360.repositories;
 
 
+import com.example.enarm360.dtos.ReactivoSnapshotDTO;
 import com.example.enarm360.entities.Reactivo;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RestResource;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface ReactivoRepository extends JpaRepository<Reactivo, Long> {
@@ -19,15 +26,51 @@ public interface ReactivoRepository extends JpaRepository<Reactivo, Long> {
     List<Reactivo> findByUsuario_Id(Long usuarioId);
 
     // Seleccionar reactivos aleatorios de una especialidad
-
-
-
-    
+    // ⚠️ ORDER BY RANDOM() recorre y ordena toda la especialidad; la generación usa ReactivoSamplingIndex
     @Query(value = "SELECT * FROM reactivos WHERE especialidad_id = :especialidadId ORDER BY RANDOM() LIMIT :num", 
            nativeQuery = true)
     List<Reactivo> findRandomByEspecialidad(@Param("especialidadId") Long especialidadId,
                                             @Param("num") int num);
 
+    // Clasificación mínima (id, especialidad, dificultad, clave) para cargar el índice de muestreo
+    @Query("SELECT r.id, r.especialidad.id, r.dificultad.id, r.clave.id FROM Reactivo r ORDER BY r.id")
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "5000"))
+    @RestResource(exported = false)
+    Stream<Object[]> streamClasificaciones();
+
+    // (id, especialidad, dificultad, irtA, irtB) para cargar ReactivoIrtBank
+    @Query("SELECT r.id, r.especialidad.id, r.dificultad.id, r.irtA, r.irtB FROM Reactivo r ORDER BY r.id")
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "5000"))
+    @RestResource(exported = false)
+    Stream<Object[]> streamParametrosIrt();
+
+    // (id, respuesta_correcta) para cargar RespuestaCorrectaIndex
+    @Query("SELECT r.id, r.respuestaCorrecta FROM Reactivo r")
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "5000"))
+    @RestResource(exported = false)
+    Stream<Object[]> streamRespuestasCorrectas();
+
+    // (id, especialidad, dificultad, clave, respuesta_correcta) de reactivos que cambiaron en otro nodo
+    @Query("SELECT r.id, r.especialidad.id, r.dificultad.id, r.clave.id, r.respuestaCorrecta FROM Reactivo r " +
+           "WHERE r.id IN :ids")
+    @RestResource(exported = false)
+    List<Object[]> findIndicesByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT r.respuestaCorrecta FROM Reactivo r WHERE r.id = :id")
+    @RestResource(exported = false)
+    Optional<String> findRespuestaCorrectaById(@Param("id") Long id);
+
+    // Solo enunciado y explicación, para los snapshots de intento_pregunta
+    @Query("SELECT new com.example.enarm360.dtos.ReactivoSnapshotDTO(r.id, r.pregunta, r.retroalimentacion) " +
+           "FROM Reactivo r WHERE r.id = :id")
+    @RestResource(exported = false)
+    Optional<ReactivoSnapshotDTO> findSnapshotById(@Param("id") Long id);
+
+    @Query("SELECT new com.example.enarm360.dtos.ReactivoSnapshotDTO(r.id, r.pregunta, r.retroalimentacion) " +
+           "FROM Reactivo r WHERE r.id IN :ids")
+    @RestResource(exported = false)
+    List<ReactivoSnapshotDTO> findSnapshotsByIdIn(@Param("ids") Collection<Long> ids);
+
 
 
   @Query("SELECT r FROM Reactivo r WHERE r.examen.id = :examenId")
@@ -0,0 +1,18 @@
+package com.example.enarm360.repositories;
+
+import com.example.enarm360.entities.RepasoReactivo;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+@RepositoryRestResource(exported = false)
+public interface RepasoReactivoRepository extends JpaRepository<RepasoReactivo, Long> {
+
+    List<RepasoReactivo> findByUsuarioId(Long usuarioId);
+
+    Optional<RepasoReactivo> findByUsuarioIdAndReactivoId(Long usuarioId, Long reactivoId);
+}
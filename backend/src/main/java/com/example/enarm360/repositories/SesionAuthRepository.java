@@ -1,12 +1,14 @@
 package com.example.enarm360.repositories;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RestResource;
 import org.springframework.stereotype.Repository;
 
 import com.example.enarm360.entities.SesionAuth;
@@ -16,9 +18,36 @@ import jakarta.transaction.Transactional;
 @Repository
 public interface SesionAuthRepository extends JpaRepository<SesionAuth, Long> {
     
-    Optional<SesionAuth> findByTokenRefresh(String tokenRefresh);
+    @RestResource(exported = false)
+    Optional<SesionAuth> findByTokenHash(String tokenHash);
     
-    void deleteByTokenRefresh(String tokenRefresh);
+    // Refresh: sesión, usuario, roles y permisos en una sola consulta
+    @RestResource(exported = false)
+    @Query("SELECT s FROM SesionAuth s JOIN FETCH s.usuario u LEFT JOIN FETCH u.roles r " +
+           "LEFT JOIN FETCH r.permisos LEFT JOIN FETCH u.permisos WHERE s.tokenHash = :tokenHash")
+    Optional<SesionAuth> findByTokenHashWithUsuario(@Param("tokenHash") String tokenHash);
+    
+    @RestResource(exported = false)
+    List<SesionAuth> findByFamilia(String familia);
+    
+    @RestResource(exported = false)
+    @Query("SELECT s.familia FROM SesionAuth s WHERE s.usuario.id = :usuarioId AND s.familia IS NOT NULL")
+    List<String> findFamiliasByUsuarioId(@Param("usuarioId") Long usuarioId);
+    
+    // Rotación atómica: solo gana quien todavía presenta el hash vigente; expiraEn (el de la familia) no cambia
+    @RestResource(exported = false)
+    @Modifying
+    @Transactional
+    @Query("UPDATE SesionAuth s SET s.tokenHash = :nuevo, s.emitidoEn = :emitido " +
+           "WHERE s.id = :id AND s.tokenHash = :actual")
+    int rotar(@Param("id") Long id, @Param("actual") String actual, @Param("nuevo") String nuevo,
+              @Param("emitido") LocalDateTime emitido);
+    
+    @RestResource(exported = false)
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM SesionAuth s WHERE s.familia = :familia")
+    int deleteByFamilia(@Param("familia") String familia);
     
     @Modifying
     @Transactional
@@ -2,11 +2,14 @@ package com.example.enarm360.repositories;
 
 import com.example.enarm360.entities.Usuario;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RestResource;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -16,10 +19,29 @@ import java.time.LocalDateTime;
 public interface UsuarioRepository extends JpaRepository<Usuario, Long> {
 
     // Buscar por username O email (acepta ambos)
-    @Query("SELECT u FROM Usuario u LEFT JOIN FETCH u.roles r LEFT JOIN FETCH r.permisos LEFT JOIN FETCH u.permisos " +
+    @Query("SELECT u FROM Usuario u LEFT JOIN FETCH u.roles r LEFT JOIN FETCH r.permisos LEFT JOIN FETCH u.permisos LEFT JOIN FETCH u.perfil " +
            "WHERE (u.username = :login OR u.email = :login) AND u.activo = true")
     Optional<Usuario> findByUsernameOrEmailAndActivoTrueWithRolesAndPermisos(@Param("login") String login);
 
+    // Versión de permisos y estado para validar access tokens: [permisosVersion, activo]
+    @RestResource(exported = false)
+    @Query("SELECT u.permisosVersion, u.activo FROM Usuario u WHERE u.id = :id")
+    List<Object[]> findVersionTokenById(@Param("id") Long id);
+
+    // Cambios hechos por fuera de los servicios (Spring Data REST): invalidan los tokens emitidos
+    @RestResource(exported = false)
+    @Modifying
+    @Transactional
+    @Query("UPDATE Usuario u SET u.permisosVersion = u.permisosVersion + 1 WHERE u.id = :id")
+    int subirPermisosVersion(@Param("id") Long id);
+
+    @RestResource(exported = false)
+    @Modifying
+    @Transactional
+    @Query("UPDATE Usuario u SET u.permisosVersion = u.permisosVersion + 1 " +
+           "WHERE u.id IN (SELECT u2.id FROM Usuario u2 JOIN u2.roles r WHERE r.id = :rolId)")
+    int subirPermisosVersionPorRol(@Param("rolId") Long rolId);
+
     // Métodos individuales por username
     Optional<Usuario> findByUsernameAndActivoTrue(String username);
     Boolean existsByUsername(String username);
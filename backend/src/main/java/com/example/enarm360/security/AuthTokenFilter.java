@@ -1,5 +1,6 @@
 package com.example.enarm360.security;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -27,7 +28,7 @@ public class AuthTokenFilter extends OncePerRequestFilter {
     private JwtUtils jwtUtils;
 
     @Autowired
-    private UserDetailsServiceImpl userDetailsService;
+    private PermisosVersionStore permisosVersionStore;
 
     @Override
 protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
@@ -37,12 +38,14 @@ protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull Ht
         String jwt = parseJwt(request);
         logger.info("Processing request: {} - JWT: {}", request.getRequestURI(), jwt != null ? "present" : "null");
         
-        if (jwt != null && jwtUtils.validateJwtToken(jwt)) {
-            String username = jwtUtils.getUsernameFromJwtToken(jwt);
+        // Una sola verificación de firma por petición
+        Claims claims = jwt != null ? jwtUtils.parseVerifiedClaims(jwt) : null;
+        if (claims != null) {
+            String username = claims.getSubject();
             logger.info("Username from JWT: {}", username);
             
             if (username != null) {
-                UserDetails userDetails = userDetailsService.loadUserByUsernameOnly(username);
+                UserDetails userDetails = resolverPrincipal(claims, username);
                 
                 if (userDetails != null) {
                     UsernamePasswordAuthenticationToken authentication = 
@@ -72,6 +75,28 @@ protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull Ht
 
     filterChain.doFilter(request, response);
 }
+    /**
+     * Principal desde los claims del token de acceso, validando en memoria la versión de permisos.
+     * Un refresh token (trae familia) no autentica peticiones: solo sirve en /api/auth/refresh.
+     * Un token sin claims de usuario (formato anterior) tampoco; el cliente lo renueva con refresh.
+     */
+    private UserDetails resolverPrincipal(Claims claims, String username) {
+        if (claims.get(JwtUtils.CLAIM_FAMILIA) != null) {
+            logger.warn("Refresh token used as access token for user: {}", username);
+            return null;
+        }
+        UserDetailsImpl principal = jwtUtils.getPrincipalFromClaims(claims);
+        if (principal == null) {
+            logger.warn("Token without user claims rejected for user: {}", username);
+            return null;
+        }
+        if (!permisosVersionStore.vigente(principal.getId(), principal.getPermisosVersion())) {
+            logger.warn("Token with outdated permissions or inactive user: {}", username);
+            return null;
+        }
+        return principal;
+    }
+
     /**
      * Extraer JWT del header Authorization
      */
@@ -108,7 +133,12 @@ protected boolean shouldNotFilter(@NonNull HttpServletRequest request) throws Se
         
         // RUTAS GENÉRICAS PÚBLICAS
         path.startsWith("/api/public/") ||
-        path.startsWith("/actuator/") ||
+
+        // CANAL DE INTENTOS (se autentica con el token del canal, no con JWT)
+        path.startsWith("/api/canal/") ||
+        // ACTUATOR: health e info son públicos; métricas requieren JWT de ADMIN
+        path.startsWith("/actuator/health") ||
+        path.equals("/actuator/info") ||
         path.equals("/error") ||
         
         // RUTAS ESTÁTICAS DEL FRONTEND
@@ -0,0 +1,104 @@
+package com.example.enarm360.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtro de Bloom de refresh tokens muertos (rotados o de una familia revocada) y de
+ * familias revocadas, para rechazar su reuso sin ir a la BD.
+ *
+ * Puede dar falsos positivos, nunca falsos negativos: quien lo consulta solo rechaza sin
+ * BD cuando también la familia del token aparece revocada, y si no, confirma en la BD.
+ * Los tokens muertos dejan de importar cuando expiran, así que hay dos generaciones que
+ * rotan cada app.jwt.refresh-expiration: una entrada vive entre uno y dos periodos.
+ *
+ * Es local a cada nodo; la BD sigue siendo la que decide.
+ */
+@Component
+public class FiltroRevocacion {
+
+    private static final String PREFIJO_FAMILIA = "familia:";
+
+    private final int capacidad;
+    private final double falsosPositivos;
+
+    private volatile Generacion actual;
+    private volatile Generacion anterior;
+
+    public FiltroRevocacion(@Value("${app.jwt.revocacion.capacidad:200000}") int capacidad,
+                            @Value("${app.jwt.revocacion.falsos-positivos:0.000001}") double falsosPositivos) {
+        this.capacidad = capacidad;
+        this.falsosPositivos = falsosPositivos;
+        this.actual = new Generacion(capacidad, falsosPositivos);
+        this.anterior = new Generacion(capacidad, falsosPositivos);
+    }
+
+    public void agregarToken(byte[] digest) {
+        actual.agregar(digest);
+    }
+
+    public boolean contieneToken(byte[] digest) {
+        return actual.contiene(digest) || anterior.contiene(digest);
+    }
+
+    public void agregarFamilia(String familia) {
+        agregarToken(TokenHash.sha256(PREFIJO_FAMILIA + familia));
+    }
+
+    public boolean contieneFamilia(String familia) {
+        return contieneToken(TokenHash.sha256(PREFIJO_FAMILIA + familia));
+    }
+
+    @Scheduled(fixedDelayString = "${app.jwt.refresh-expiration:604800000}",
+               initialDelayString = "${app.jwt.refresh-expiration:604800000}")
+    public synchronized void rotar() {
+        anterior = actual;
+        actual = new Generacion(capacidad, falsosPositivos);
+    }
+
+    /**
+     * Mapa de bits con k posiciones por entrada por doble hashing sobre los primeros 16
+     * bytes del SHA-256 (que ya es uniforme).
+     */
+    private static final class Generacion {
+        private final AtomicLongArray palabras;
+        private final long bits;
+        private final int k;
+
+        Generacion(int capacidad, double falsosPositivos) {
+            double ln2 = Math.log(2);
+            long m = (long) Math.ceil(-capacidad * Math.log(falsosPositivos) / (ln2 * ln2));
+            this.palabras = new AtomicLongArray((int) ((m + 63) >>> 6));
+            this.bits = (long) palabras.length() << 6;
+            this.k = Math.max(1, (int) Math.round((double) bits / capacidad * ln2));
+        }
+
+        void agregar(byte[] digest) {
+            long h1 = leerLong(digest, 0);
+            long h2 = leerLong(digest, 8) | 1;
+            for (int i = 0; i < k; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bits);
+                palabras.getAndAccumulate((int) (bit >>> 6), 1L << bit, (a, b) -> a | b);
+            }
+        }
+
+        boolean contiene(byte[] digest) {
+            long h1 = leerLong(digest, 0);
+            long h2 = leerLong(digest, 8) | 1;
+            for (int i = 0; i < k; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bits);
+                if ((palabras.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        private static long leerLong(byte[] b, int desde) {
+            long v = 0;
+            for (int i = desde; i < desde + 8; i++) v = (v << 8) | (b[i] & 0xFF);
+            return v;
+        }
+    }
+}
@@ -2,21 +2,36 @@ package com.example.enarm360.security;
 
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.SignatureException;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
 
 @Component
 public class JwtUtils {
     
     private static final Logger logger = LoggerFactory.getLogger(JwtUtils.class);
 
+    // Claims del access token: con ellos el filtro arma el principal sin ir a la BD
+    public static final String CLAIM_USUARIO_ID = "uid";
+    public static final String CLAIM_ROLES = "roles";
+    public static final String CLAIM_PERMISOS = "perms";
+    public static final String CLAIM_PERMISOS_VERSION = "pv";
+    public static final String CLAIM_FAMILIA = "fam";
+    private static final String PREFIJO_ROL = "ROLE_";
+
     @Value("${app.jwt.secret}")
     private String jwtSecret;
 
@@ -26,19 +41,82 @@ public class JwtUtils {
     @Value("${app.jwt.refresh-expiration}")
     private int refreshExpirationMs;
 
+    // Se arman una vez: decodificar el secreto y armar el parser en cada token costaba más que verificarlo
+    private SecretKey signKey;
+    private JwtParser parser;
+
+    @PostConstruct
+    void init() {
+        byte[] keyBytes = Decoders.BASE64.decode(jwtSecret);
+        signKey = Keys.hmacShaKeyFor(keyBytes);
+        parser = Jwts.parser().verifyWith(signKey).build();
+    }
+
     /**
      * Generar token de acceso desde Authentication
      */
     public String generateJwtToken(Authentication authentication) {
         UserDetailsImpl userPrincipal = (UserDetailsImpl) authentication.getPrincipal();
-        return generateTokenFromUsername(userPrincipal.getUsername(), jwtExpirationMs);
+        return generateAccessToken(userPrincipal);
+    }
+
+    /**
+     * Generar token de acceso con ID, roles y permisos (separados por espacio) como claims
+     */
+    public String generateAccessToken(UserDetailsImpl user) {
+        StringBuilder roles = new StringBuilder();
+        StringBuilder permisos = new StringBuilder();
+        for (GrantedAuthority authority : user.getAuthorities()) {
+            String nombre = authority.getAuthority();
+            if (nombre.startsWith(PREFIJO_ROL)) {
+                if (!roles.isEmpty()) roles.append(' ');
+                roles.append(nombre, PREFIJO_ROL.length(), nombre.length());
+            } else {
+                if (!permisos.isEmpty()) permisos.append(' ');
+                permisos.append(nombre);
+            }
+        }
+
+        Date now = new Date();
+        return Jwts.builder()
+                .subject(user.getUsername())
+                .claim(CLAIM_USUARIO_ID, user.getId())
+                .claim(CLAIM_ROLES, roles.toString())
+                .claim(CLAIM_PERMISOS, permisos.toString())
+                .claim(CLAIM_PERMISOS_VERSION, user.getPermisosVersion())
+                .issuedAt(now)
+                .expiration(new Date(now.getTime() + jwtExpirationMs))
+                .signWith(getSignKey())
+                .compact();
     }
 
     /**
-     * Generar refresh token
+     * Generar refresh token de una familia nueva
      */
     public String generateRefreshToken(String username) {
-        return generateTokenFromUsername(username, refreshExpirationMs);
+        return generateRefreshToken(username, UUID.randomUUID().toString());
+    }
+
+    /**
+     * Generar refresh token de una familia (la sesión que se rota en cada refresh). El jti
+     * lo hace único aunque se emitan dos en el mismo segundo, porque se guarda su hash.
+     */
+    public String generateRefreshToken(String username, String familia) {
+        return generateRefreshToken(username, familia, new Date(System.currentTimeMillis() + refreshExpirationMs));
+    }
+
+    /**
+     * Generar refresh token de una familia con su vencimiento absoluto: rotar no lo extiende.
+     */
+    public String generateRefreshToken(String username, String familia, Date expira) {
+        return Jwts.builder()
+                .subject(username)
+                .id(UUID.randomUUID().toString())
+                .claim(CLAIM_FAMILIA, familia)
+                .issuedAt(new Date())
+                .expiration(expira)
+                .signWith(getSignKey())
+                .compact();
     }
 
     /**
@@ -60,38 +138,25 @@ public class JwtUtils {
      * Obtener clave de firma
      */
     private SecretKey getSignKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(jwtSecret);
-        return Keys.hmacShaKeyFor(keyBytes);
+        return signKey;
     }
 
     /**
      * Obtener username del token
      */
     public String getUsernameFromJwtToken(String token) {
-        try {
-            return Jwts.parser()
-                    .verifyWith(getSignKey())
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload()
-                    .getSubject();
-        } catch (Exception e) {
-            logger.error("Error al extraer username del token: {}", e.getMessage());
-            return null;
-        }
+        Claims claims = parseVerifiedClaims(token);
+        return claims != null ? claims.getSubject() : null;
     }
 
     /**
-     * Validar token JWT
+     * Verificar firma y expiración una sola vez y devolver los claims, o null si el token
+     * no es válido. Es la única verificación que necesita una petición.
      */
-    public boolean validateJwtToken(String authToken) {
+    public Claims parseVerifiedClaims(String token) {
         try {
-            Jwts.parser()
-                .verifyWith(getSignKey())
-                .build()
-                .parseSignedClaims(authToken);
-            return true;
-        } catch (SecurityException e) {
+            return parser.parseSignedClaims(token).getPayload();
+        } catch (SignatureException e) {
             logger.error("Invalid JWT signature: {}", e.getMessage());
         } catch (MalformedJwtException e) {
             logger.error("Invalid JWT token: {}", e.getMessage());
@@ -101,8 +166,41 @@ public class JwtUtils {
             logger.error("JWT token is unsupported: {}", e.getMessage());
         } catch (IllegalArgumentException e) {
             logger.error("JWT claims string is empty: {}", e.getMessage());
+        } catch (JwtException e) {
+            logger.error("Invalid JWT: {}", e.getMessage());
         }
-        return false;
+        return null;
+    }
+
+    /**
+     * Construir el principal desde los claims de un access token.
+     * Devuelve null si el token no trae claims de usuario (tokens emitidos antes de este formato).
+     */
+    public UserDetailsImpl getPrincipalFromClaims(Claims claims) {
+        Long usuarioId = claims.get(CLAIM_USUARIO_ID, Long.class);
+        if (usuarioId == null) return null;
+
+        Set<GrantedAuthority> authorities = new HashSet<>();
+        String roles = claims.get(CLAIM_ROLES, String.class);
+        if (roles != null && !roles.isEmpty()) {
+            for (String rol : roles.split(" ")) authorities.add(new SimpleGrantedAuthority(PREFIJO_ROL + rol));
+        }
+        String permisos = claims.get(CLAIM_PERMISOS, String.class);
+        if (permisos != null && !permisos.isEmpty()) {
+            for (String permiso : permisos.split(" ")) authorities.add(new SimpleGrantedAuthority(permiso));
+        }
+        Long version = claims.get(CLAIM_PERMISOS_VERSION, Long.class);
+
+        // Sin email, nombre ni contraseña: quien los necesite los consulta por ID
+        return new UserDetailsImpl(usuarioId, claims.getSubject(), null, null, null, null, true,
+                version != null ? version : 0L, authorities);
+    }
+
+    /**
+     * Validar token JWT
+     */
+    public boolean validateJwtToken(String authToken) {
+        return parseVerifiedClaims(authToken) != null;
     }
 
     /**
@@ -110,11 +208,7 @@ public class JwtUtils {
      */
     public boolean isTokenExpired(String token) {
         try {
-            Claims claims = Jwts.parser()
-                    .verifyWith(getSignKey())
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload();
+            Claims claims = parser.parseSignedClaims(token).getPayload();
             return claims.getExpiration().before(new Date());
         } catch (Exception e) {
             logger.error("Error al verificar expiración del token: {}", e.getMessage());
@@ -126,17 +220,8 @@ public class JwtUtils {
      * Obtener fecha de expiración del token
      */
     public Date getExpirationFromToken(String token) {
-        try {
-            Claims claims = Jwts.parser()
-                    .verifyWith(getSignKey())
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload();
-            return claims.getExpiration();
-        } catch (Exception e) {
-            logger.error("Error al obtener fecha de expiración: {}", e.getMessage());
-            return null;
-        }
+        Claims claims = parseVerifiedClaims(token);
+        return claims != null ? claims.getExpiration() : null;
     }
 
     // Getters para usar en otros componentes
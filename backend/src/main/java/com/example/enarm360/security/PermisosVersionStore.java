@@ -0,0 +1,98 @@
+package com.example.enarm360.security;
+
+import com.example.enarm360.entities.Usuario;
+import com.example.enarm360.repositories.UsuarioRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Versión de permisos vigente y estado activo por usuario, para validar en memoria los
+ * access tokens que traen sus permisos como claims.
+ *
+ * Un token vale si el usuario sigue activo y su claim "pv" no es menor que la versión
+ * vigente. Cada entrada se relee de la BD (una consulta por llave primaria) cuando tiene
+ * más de app.jwt.version-ttl-ms; antes de eso la quita PrincipalInvalidacionService en
+ * cuanto este u otro nodo registra un cambio.
+ */
+@Component
+public class PermisosVersionStore {
+
+    private record Estado(long version, boolean activo, long leidoEn) { }
+
+    private final UsuarioRepository usuarioRepository;
+    private final long ttlNanos;
+
+    private final Map<Long, Estado> estados = new ConcurrentHashMap<>();
+
+    public PermisosVersionStore(UsuarioRepository usuarioRepository,
+                                @Value("${app.jwt.version-ttl-ms:30000}") long ttlMs) {
+        this.usuarioRepository = usuarioRepository;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    }
+
+    /**
+     * true si un token emitido con esa versión de permisos sigue siendo válido.
+     */
+    public boolean vigente(Long usuarioId, long version) {
+        if (usuarioId == null) return false;
+        Estado e = estados.get(usuarioId);
+        if (e == null || System.nanoTime() - e.leidoEn() > ttlNanos) {
+            e = leer(usuarioId);
+            if (e == null) return false;
+        }
+        return e.activo() && version >= e.version();
+    }
+
+    /**
+     * Versión conocida al emitir un token (login o refresh), para no releerla enseguida.
+     */
+    public void registrar(Long usuarioId, long version, boolean activo) {
+        if (usuarioId == null) return;
+        estados.put(usuarioId, new Estado(version, activo, System.nanoTime()));
+    }
+
+    /**
+     * Olvida la entrada: la siguiente validación la relee de la BD.
+     */
+    public void invalidar(Long usuarioId) {
+        if (usuarioId != null) estados.remove(usuarioId);
+    }
+
+    public void invalidarTodo() {
+        estados.clear();
+    }
+
+    /**
+     * Sube la versión de permisos del usuario (en la entidad, se guarda con ella): los
+     * access tokens emitidos antes dejan de valer. PrincipalInvalidacionService se encarga
+     * de que cada nodo lo note.
+     */
+    public void subirVersion(Usuario usuario) {
+        usuario.setPermisosVersion((usuario.getPermisosVersion() != null ? usuario.getPermisosVersion() : 0L) + 1);
+    }
+
+    private Estado leer(Long usuarioId) {
+        List<Object[]> filas = usuarioRepository.findVersionTokenById(usuarioId);
+        if (filas.isEmpty()) {
+            estados.remove(usuarioId);
+            return null;
+        }
+        Object[] f = filas.get(0);
+        Estado e = new Estado(f[0] != null ? (Long) f[0] : 0L, Boolean.TRUE.equals(f[1]), System.nanoTime());
+        estados.put(usuarioId, e);
+        return e;
+    }
+
+    // Las entradas vencidas se releerían de todos modos; se quitan para acotar la memoria
+    @Scheduled(fixedDelayString = "${app.jwt.version-purga-ms:300000}")
+    public void purgar() {
+        long ahora = System.nanoTime();
+        estados.values().removeIf(e -> ahora - e.leidoEn() > ttlNanos);
+    }
+}
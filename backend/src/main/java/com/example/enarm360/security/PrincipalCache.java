@@ -0,0 +1,138 @@
+package com.example.enarm360.security;
+
+import com.example.enarm360.config.PrincipalCacheProperties;
+import com.example.enarm360.dtos.auth.UsuarioInfo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Cache acotado de la información del usuario autenticado (roles y permisos efectivos)
+ * por ID, delante de la consulta de UsuarioActual.info().
+ *
+ * Los requests autenticados ya no consultan la BD para saber quién es el usuario: el
+ * principal viene en los claims del token y su vigencia la valida PermisosVersionStore
+ * (que se invalida con la misma bitácora). Lo que sí se pide en muchos requests es la
+ * información completa (getCurrentUser, validaciones de suscripción), que cuesta una
+ * consulta con joins a roles y permisos; esa es la que se guarda aquí.
+ *
+ * LRU por número de entradas y con TTL: una entrada más vieja que ttl-ms se vuelve a
+ * cargar. Los cambios de permisos, roles o estado la quitan antes (ver
+ * PrincipalInvalidacionService). Una carga que empezó antes de una invalidación no se
+ * guarda, para no volver a meter datos viejos.
+ *
+ * Métricas en /actuator/metrics: security.principal.cache (tag resultado=hit|miss),
+ * security.principal.cache.tamano y security.principal.cache.hit.ratio.
+ */
+@Component
+public class PrincipalCache {
+
+    private record Entrada(UsuarioInfo info, long cargadoEn) { }
+
+    private final PrincipalCacheProperties props;
+    private final long ttlNanos;
+    private final Counter hits;
+    private final Counter misses;
+
+    private final LinkedHashMap<Long, Entrada> entradas = new LinkedHashMap<>(256, 0.75f, true);
+    private long generacion = 0;
+
+    public PrincipalCache(PrincipalCacheProperties props, MeterRegistry meterRegistry) {
+        this.props = props;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(props.getTtlMs());
+        this.hits = contador(meterRegistry, "hit");
+        this.misses = contador(meterRegistry, "miss");
+        Gauge.builder("security.principal.cache.tamano", this, PrincipalCache::tamano)
+                .description("Usuarios en cache")
+                .register(meterRegistry);
+        Gauge.builder("security.principal.cache.hit.ratio", this, PrincipalCache::hitRatio)
+                .description("Fracción de cargas de usuario atendidas por el cache")
+                .register(meterRegistry);
+    }
+
+    private static Counter contador(MeterRegistry meterRegistry, String resultado) {
+        return Counter.builder("security.principal.cache")
+                .description("Cargas de usuario atendidas por el cache (hit) o la BD (miss)")
+                .tag("resultado", resultado)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Devuelve la información del usuario, cargándola con el loader solo si no está o ya venció.
+     */
+    public UsuarioInfo obtener(Long usuarioId, Supplier<UsuarioInfo> loader) {
+        if (!props.isEnabled()) return loader.get();
+
+        long gen;
+        synchronized (this) {
+            Entrada e = entradas.get(usuarioId);
+            if (e != null && System.nanoTime() - e.cargadoEn() <= ttlNanos) {
+                hits.increment();
+                return e.info();
+            }
+            gen = generacion;
+        }
+
+        // Cargar fuera del lock
+        misses.increment();
+        UsuarioInfo cargado = loader.get();
+        synchronized (this) {
+            if (gen == generacion) {
+                entradas.put(usuarioId, new Entrada(cargado, System.nanoTime()));
+                while (entradas.size() > props.getMaxEntradas()) {
+                    var it = entradas.entrySet().iterator();
+                    it.next();
+                    it.remove();
+                }
+            }
+        }
+        return cargado;
+    }
+
+    // ==========================================================
+    // INVALIDACIÓN
+    // ==========================================================
+
+    public void invalidarUsuario(Long usuarioId) {
+        if (usuarioId == null) return;
+        quitar(info -> usuarioId.equals(info.getId()));
+    }
+
+    /**
+     * Quita a quienes tienen el rol: sus permisos heredados pudieron cambiar.
+     */
+    public void invalidarRol(String nombre) {
+        if (nombre == null) return;
+        quitar(info -> info.getRoles() != null && info.getRoles().contains(nombre));
+    }
+
+    public synchronized void invalidarTodo() {
+        generacion++;
+        entradas.clear();
+    }
+
+    private synchronized void quitar(Predicate<UsuarioInfo> criterio) {
+        generacion++;
+        entradas.values().removeIf(e -> criterio.test(e.info()));
+    }
+
+    // ==========================================================
+    // MÉTRICAS
+    // ==========================================================
+
+    private synchronized int tamano() {
+        return entradas.size();
+    }
+
+    private double hitRatio() {
+        double h = hits.count();
+        double total = h + misses.count();
+        return total == 0 ? 0 : h / total;
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.enarm360.security;
+
+import com.example.enarm360.config.PrincipalCacheProperties;
+import com.example.enarm360.entities.InvalidacionPrincipal;
+import com.example.enarm360.entities.Rol;
+import com.example.enarm360.entities.Usuario;
+import com.example.enarm360.repositories.InvalidacionPrincipalRepository;
+import com.example.enarm360.repositories.UsuarioRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Invalidación de principals en todos los nodos.
+ *
+ * Cada cambio de permisos, roles o estado de un usuario (o de los permisos de un rol)
+ * sube la versión de permisos en la BD, para que los access tokens emitidos antes dejen
+ * de valer, y escribe una fila en invalidacion_principal en la misma transacción (un cambio
+ * solo de datos, como el nombre, escribe la fila sin subir la versión). Este
+ * nodo limpia su PrincipalCache y PermisosVersionStore al confirmar; los demás lo hacen
+ * al sondear la bitácora cada app.security.principal-cache.sondeo-ms.
+ *
+ * El sondeo relee una ventana que se traslapa con la anterior (margen-seg), porque los
+ * IDs no llegan en orden de confirmación y los relojes de los nodos no coinciden; las
+ * filas ya aplicadas se recuerdan por ID durante esa ventana.
+ */
+@Service
+@RequiredArgsConstructor
+public class PrincipalInvalidacionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrincipalInvalidacionService.class);
+
+    private final InvalidacionPrincipalRepository invalidacionRepository;
+    private final UsuarioRepository usuarioRepository;
+    private final PrincipalCache principalCache;
+    private final PermisosVersionStore permisosVersionStore;
+    private final PrincipalCacheProperties props;
+
+    private final Map<Long, LocalDateTime> aplicadas = new HashMap<>();
+    private LocalDateTime ultimoSondeo = LocalDateTime.now();
+
+    // ==========================================================
+    // CAMBIOS
+    // ==========================================================
+
+    /**
+     * Usuario cargado en la transacción actual: sube su versión en la entidad, que se
+     * guarda con ella.
+     */
+    public void usuarioCambiado(Usuario usuario) {
+        permisosVersionStore.subirVersion(usuario);
+        registrar(InvalidacionPrincipal.Tipo.USUARIO, String.valueOf(usuario.getId()));
+    }
+
+    /**
+     * Usuario modificado por fuera de los servicios (ya guardado): sube su versión en la BD.
+     */
+    public void usuarioModificado(Long usuarioId) {
+        usuarioRepository.subirPermisosVersion(usuarioId);
+        registrar(InvalidacionPrincipal.Tipo.USUARIO, String.valueOf(usuarioId));
+    }
+
+    /**
+     * Cambiaron datos del usuario que no afectan sus tokens (nombre, apellidos): solo se
+     * refresca el cache.
+     */
+    public void datosCambiados(Long usuarioId) {
+        registrar(InvalidacionPrincipal.Tipo.USUARIO, String.valueOf(usuarioId));
+    }
+
+    public void usuarioEliminado(Long usuarioId) {
+        registrar(InvalidacionPrincipal.Tipo.USUARIO, String.valueOf(usuarioId));
+    }
+
+    /**
+     * Cambiaron los permisos del rol: afecta a todos sus usuarios.
+     */
+    public void rolModificado(Rol rol) {
+        usuarioRepository.subirPermisosVersionPorRol(rol.getId());
+        registrar(InvalidacionPrincipal.Tipo.ROL, rol.getNombre());
+    }
+
+    /**
+     * Cambió el rol en sí (nombre, alta o baja): el cache no sabe el nombre anterior, así
+     * que se vacía completo.
+     */
+    public void rolReemplazado(Rol rol) {
+        usuarioRepository.subirPermisosVersionPorRol(rol.getId());
+        registrar(InvalidacionPrincipal.Tipo.TODOS, "*");
+    }
+
+    private void registrar(InvalidacionPrincipal.Tipo tipo, String clave) {
+        InvalidacionPrincipal fila = invalidacionRepository.save(InvalidacionPrincipal.builder()
+                .tipo(tipo)
+                .clave(clave)
+                .creadoEn(LocalDateTime.now())
+                .build());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    aplicarLocal(fila);
+                }
+            });
+        } else {
+            aplicarLocal(fila);
+        }
+    }
+
+    private void aplicarLocal(InvalidacionPrincipal fila) {
+        synchronized (aplicadas) {
+            aplicadas.put(fila.getId(), fila.getCreadoEn());
+        }
+        aplicar(fila);
+    }
+
+    private void aplicar(InvalidacionPrincipal fila) {
+        switch (fila.getTipo()) {
+            case USUARIO -> {
+                Long usuarioId = Long.valueOf(fila.getClave());
+                principalCache.invalidarUsuario(usuarioId);
+                permisosVersionStore.invalidar(usuarioId);
+            }
+            case ROL -> {
+                principalCache.invalidarRol(fila.getClave());
+                permisosVersionStore.invalidarTodo();
+            }
+            case TODOS -> {
+                principalCache.invalidarTodo();
+                permisosVersionStore.invalidarTodo();
+            }
+        }
+    }
+
+    // ==========================================================
+    // SONDEO DE OTROS NODOS
+    // ==========================================================
+
+    @Scheduled(fixedDelayString = "${app.security.principal-cache.sondeo-ms:2000}")
+    public void sondear() {
+        LocalDateTime inicio = LocalDateTime.now();
+        LocalDateTime desde = ultimoSondeo.minusSeconds(props.getMargenSeg());
+        try {
+            for (InvalidacionPrincipal fila : invalidacionRepository.findByCreadoEnGreaterThanEqualOrderByIdAsc(desde)) {
+                boolean nueva;
+                synchronized (aplicadas) {
+                    nueva = aplicadas.putIfAbsent(fila.getId(), fila.getCreadoEn()) == null;
+                }
+                if (nueva) aplicar(fila);
+            }
+        } catch (Exception e) {
+            // La ventana no avanza: se reintenta en el siguiente sondeo
+            logger.warn("Could not poll principal invalidation log: {}", e.getMessage());
+            return;
+        }
+        ultimoSondeo = inicio;
+        synchronized (aplicadas) {
+            aplicadas.values().removeIf(creadoEn -> creadoEn.isBefore(desde));
+        }
+    }
+
+    @Scheduled(cron = "${app.security.principal-cache.purga-cron:0 15 * * * ?}")
+    public void purgar() {
+        int borradas = invalidacionRepository.deleteAnteriores(LocalDateTime.now().minusHours(props.getRetencionHoras()));
+        if (borradas > 0) logger.debug("Purged {} principal invalidation rows", borradas);
+    }
+}
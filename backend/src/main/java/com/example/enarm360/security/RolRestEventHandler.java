@@ -0,0 +1,44 @@
+package com.example.enarm360.security;
+
+import com.example.enarm360.entities.Rol;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.rest.core.annotation.HandleAfterLinkDelete;
+import org.springframework.data.rest.core.annotation.HandleAfterLinkSave;
+import org.springframework.data.rest.core.annotation.HandleAfterSave;
+import org.springframework.data.rest.core.annotation.HandleBeforeDelete;
+import org.springframework.data.rest.core.annotation.RepositoryEventHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Invalida los principals de los usuarios de un rol cuando sus permisos cambian por los
+ * endpoints de Spring Data REST.
+ */
+@Component
+@RepositoryEventHandler(Rol.class)
+@RequiredArgsConstructor
+public class RolRestEventHandler {
+
+    private final PrincipalInvalidacionService principalInvalidacion;
+
+    // Puede ser un cambio de nombre: el cache guarda el nombre anterior en las autoridades
+    @HandleAfterSave
+    public void despuesDeGuardar(Rol rol) {
+        principalInvalidacion.rolReemplazado(rol);
+    }
+
+    @HandleAfterLinkSave
+    public void despuesDeEnlazar(Rol rol, Object enlazado) {
+        principalInvalidacion.rolModificado(rol);
+    }
+
+    @HandleAfterLinkDelete
+    public void despuesDeDesenlazar(Rol rol, Object enlazado) {
+        principalInvalidacion.rolModificado(rol);
+    }
+
+    // Antes de borrar, mientras rol_permiso y usuario_rol siguen ligando a sus usuarios
+    @HandleBeforeDelete
+    public void antesDeBorrar(Rol rol) {
+        principalInvalidacion.rolReemplazado(rol);
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.enarm360.security;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -53,6 +54,9 @@ public SecurityFilterChain filterChain(HttpSecurity http,
         .exceptionHandling(ex -> ex.authenticationEntryPoint(unauthorizedHandler))
         .sessionManagement(sess -> sess.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
         .authorizeHttpRequests(auth -> auth
+            // Los despachos async (streams SSE) ya se autorizaron en la petición original
+            .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
+
             // Permitir acceso a archivos estáticos y frontend
             .requestMatchers("/", "/static/**", "/index.html", "/favicon.ico", "/manifest.json").permitAll()
             
@@ -67,6 +71,13 @@ public SecurityFilterChain filterChain(HttpSecurity http,
                 .requestMatchers("/api/subscription-plans").permitAll() // 👈 planes públicos
              
             
+            // Frames del canal de intentos: el controller valida el token del canal
+            .requestMatchers("/api/canal/**").permitAll()
+
+            // Actuator: health/info para balanceadores, métricas solo para administradores
+            .requestMatchers("/actuator/health/**", "/actuator/info").permitAll()
+            .requestMatchers("/actuator/**").hasRole("ADMIN")
+
             // URLs de testing
             .requestMatchers("/api/test/**").permitAll()
             
@@ -12,13 +12,13 @@ import org.springframework.stereotype.Component;
 public class SubscriptionSecurityUtils {
     
     private final AuthService authService;
+    private final UsuarioActual usuarioActual;
     /**
-     * Extrae el ID del usuario usando tu AuthService existente
+     * Extrae el ID del usuario directo del principal autenticado
      */
     public Long getUserIdFromAuth(Authentication auth) {
         try {
-            UsuarioInfo currentUser = authService.getCurrentUser();
-            return currentUser.getId();
+            return usuarioActual.id();
         } catch (Exception e) {
             throw new RuntimeException("No se pudo obtener el ID del usuario: " + e.getMessage());
         }
@@ -72,7 +72,7 @@ public class SubscriptionSecurityUtils {
      */
     public UsuarioInfo getCurrentUserInfo() {
         try {
-            return authService.getCurrentUser();
+            return usuarioActual.info();
         } catch (Exception e) {
             throw new RuntimeException("Error al obtener información del usuario actual: " + e.getMessage());
         }
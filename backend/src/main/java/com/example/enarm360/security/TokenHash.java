@@ -0,0 +1,27 @@
+package com.example.enarm360.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 de tokens: lo que se guarda y se busca en la BD en lugar del token.
+ */
+public final class TokenHash {
+
+    private TokenHash() {
+    }
+
+    public static byte[] sha256(String valor) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(valor.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String hex(byte[] digest) {
+        return HexFormat.of().formatHex(digest);
+    }
+}
@@ -19,11 +19,18 @@ public class UserDetailsImpl implements UserDetails {
     private String apellidos;
     private String password;
     private boolean activo;
+    private long permisosVersion;
     private Collection<? extends GrantedAuthority> authorities;
 
     public UserDetailsImpl(Long id, String username, String email, String nombre, String apellidos, 
                           String password, boolean activo,
                           Collection<? extends GrantedAuthority> authorities) {
+        this(id, username, email, nombre, apellidos, password, activo, 0L, authorities);
+    }
+
+    public UserDetailsImpl(Long id, String username, String email, String nombre, String apellidos,
+                          String password, boolean activo, long permisosVersion,
+                          Collection<? extends GrantedAuthority> authorities) {
         this.id = id;
         this.username = username;
         this.email = email;
@@ -31,6 +38,7 @@ public class UserDetailsImpl implements UserDetails {
         this.apellidos = apellidos;
         this.password = password;
         this.activo = activo;
+        this.permisosVersion = permisosVersion;
         this.authorities = authorities;
     }
 
@@ -63,6 +71,7 @@ public class UserDetailsImpl implements UserDetails {
                 usuario.getApellidos(),
                 usuario.getContrasenaHash(),
                 usuario.getActivo(),
+                usuario.getPermisosVersion() != null ? usuario.getPermisosVersion() : 0L,
                 authorities);
     }
 
@@ -122,6 +131,10 @@ public class UserDetailsImpl implements UserDetails {
         return activo;
     }
 
+    public long getPermisosVersion() {
+        return permisosVersion;
+    }
+
     /**
      * Método para identificar si el login fue con email o username
      */
@@ -0,0 +1,65 @@
+package com.example.enarm360.security;
+
+import com.example.enarm360.dtos.auth.UsuarioInfo;
+import com.example.enarm360.repositories.UsuarioRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * Usuario autenticado del request actual.
+ *
+ * El ID sale directo del principal, sin ir a la BD. La información completa (roles y
+ * permisos) sale de PrincipalCache; en un miss se carga con una sola consulta. Además se
+ * guarda como atributo del request, así que los servicios que la piden varias veces en
+ * un mismo request ni siquiera vuelven al cache.
+ */
+@Component
+@RequiredArgsConstructor
+public class UsuarioActual {
+
+    private static final String ATRIBUTO_INFO = UsuarioActual.class.getName() + ".info";
+
+    private final UsuarioRepository usuarioRepository;
+    private final PrincipalCache principalCache;
+    private final PlatformTransactionManager transactionManager;
+
+    public UserDetailsImpl principal() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || !auth.isAuthenticated() || !(auth.getPrincipal() instanceof UserDetailsImpl principal)) {
+            throw new RuntimeException("Usuario no autenticado");
+        }
+        return principal;
+    }
+
+    public Long id() {
+        return principal().getId();
+    }
+
+    public UsuarioInfo info() {
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null && request.getAttribute(ATRIBUTO_INFO, RequestAttributes.SCOPE_REQUEST) instanceof UsuarioInfo info) {
+            return info;
+        }
+        UserDetailsImpl principal = principal();
+        UsuarioInfo info = principalCache.obtener(principal.getId(), () -> lectura().execute(status ->
+                usuarioRepository.findByUsernameOrEmailAndActivoTrueWithRolesAndPermisos(principal.getUsername())
+                        .map(UsuarioInfo::fromEntity)
+                        .orElseThrow(() -> new RuntimeException("Usuario no encontrado"))));
+        if (request != null) {
+            request.setAttribute(ATRIBUTO_INFO, info, RequestAttributes.SCOPE_REQUEST);
+        }
+        return info;
+    }
+
+    private TransactionTemplate lectura() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        return tx;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.enarm360.security;
+
+import com.example.enarm360.entities.Usuario;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.rest.core.annotation.HandleAfterDelete;
+import org.springframework.data.rest.core.annotation.HandleAfterLinkDelete;
+import org.springframework.data.rest.core.annotation.HandleAfterLinkSave;
+import org.springframework.data.rest.core.annotation.HandleAfterSave;
+import org.springframework.data.rest.core.annotation.RepositoryEventHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Invalida el principal de un usuario modificado por los endpoints de Spring Data REST,
+ * que no pasan por AdminUserService ni UsuarioService.
+ */
+@Component
+@RepositoryEventHandler(Usuario.class)
+@RequiredArgsConstructor
+public class UsuarioRestEventHandler {
+
+    private final PrincipalInvalidacionService principalInvalidacion;
+
+    @HandleAfterSave
+    public void despuesDeGuardar(Usuario usuario) {
+        principalInvalidacion.usuarioModificado(usuario.getId());
+    }
+
+    @HandleAfterLinkSave
+    public void despuesDeEnlazar(Usuario usuario, Object enlazado) {
+        principalInvalidacion.usuarioModificado(usuario.getId());
+    }
+
+    @HandleAfterLinkDelete
+    public void despuesDeDesenlazar(Usuario usuario, Object enlazado) {
+        principalInvalidacion.usuarioModificado(usuario.getId());
+    }
+
+    @HandleAfterDelete
+    public void despuesDeBorrar(Usuario usuario) {
+        principalInvalidacion.usuarioEliminado(usuario.getId());
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.config.IntentoSesionProperties;
+import com.example.enarm360.dtos.AdaptativoPasoDTO;
+import com.example.enarm360.dtos.ExamenPreguntaDTO;
+import com.example.enarm360.dtos.IniciarAdaptativoRequest;
+import com.example.enarm360.dtos.IntentoEstadoDTO;
+import com.example.enarm360.dtos.IntentoPreguntaDTO;
+import com.example.enarm360.entities.Examen;
+import com.example.enarm360.entities.ExamenAdaptativo;
+import com.example.enarm360.entities.ExamenPregunta;
+import com.example.enarm360.entities.IntentoExamen;
+import com.example.enarm360.repositories.ExamenAdaptativoRepository;
+import com.example.enarm360.repositories.ExamenPreguntaRepository;
+import com.example.enarm360.repositories.ExamenRepository;
+import com.example.enarm360.repositories.IntentoExamenRepository;
+import com.example.enarm360.repositories.IntentoPreguntaRepository;
+import com.example.enarm360.repositories.ReactivoRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Modalidad adaptativa (CAT): cada reactivo se elige para maximizar la información en la
+ * habilidad estimada del alumno, que se actualiza tras cada respuesta.
+ *
+ * θ se estima por EAP sobre una malla fija (prior normal estándar); el posterior vive en
+ * memoria por intento y cuesta O(malla) actualizarlo. La elección sale de ReactivoIrtBank
+ * sin consultar la BD. Los reactivos presentados se agregan al examen uno a uno, así que
+ * respuestas, marcador, reanudar y finalizar funcionan igual que en un examen normal.
+ */
+@Service
+@RequiredArgsConstructor
+public class AdaptativoService {
+
+    static final String NOMBRE_ADAPTATIVO = "Examen adaptativo";
+    private static final int CANDIDATOS = 5;
+    private static final double[] MALLA = new double[81];
+    private static final double[] LOG_PRIOR = new double[MALLA.length];
+    // Solo para exámenes creados antes de examen_adaptativo, que guardaban la regla en la descripción
+    private static final Pattern CONFIG_LEGADO = Pattern.compile(
+            "hasta (\\d+) reactivos \\(error ([0-9.Ee+-]+)(?:, especialidades ([0-9,]+))?\\)");
+
+    static {
+        for (int k = 0; k < MALLA.length; k++) {
+            MALLA[k] = -4.0 + k * 0.1;
+            LOG_PRIOR[k] = -MALLA[k] * MALLA[k] / 2;
+        }
+    }
+
+    private final ExamenService examenService;
+    private final ExamenRepository examenDao;
+    private final ExamenAdaptativoRepository adaptativoDao;
+    private final ExamenPreguntaRepository examenPreguntaDao;
+    private final IntentoExamenRepository intentoExamenDao;
+    private final IntentoPreguntaRepository intentoPreguntaDao;
+    private final ReactivoRepository reactivoDao;
+    private final ReactivoIrtBank banco;
+    private final IntentoSesionStore intentoSesiones;
+    private final ExamenPayloadCache payloadCache;
+    private final IntentoSesionProperties props;
+
+    private final Map<Long, Estado> estados = new ConcurrentHashMap<>();
+
+    // ==========================================================
+    // FLUJO
+    // ==========================================================
+
+    @Transactional
+    public AdaptativoPasoDTO iniciar(IniciarAdaptativoRequest request) {
+        if (request.getMaxReactivos() <= 0) {
+            throw new IllegalArgumentException("maxReactivos debe ser mayor a 0");
+        }
+        if (request.getErrorObjetivo() <= 0) {
+            throw new IllegalArgumentException("errorObjetivo debe ser mayor a 0");
+        }
+        List<Long> especialidades = request.getEspecialidades() == null ? List.of() : request.getEspecialidades();
+
+        String descripcion = "Examen adaptativo de hasta " + request.getMaxReactivos() + " reactivos (error "
+                + request.getErrorObjetivo()
+                + (especialidades.isEmpty() ? "" : ", especialidades "
+                + especialidades.stream().map(String::valueOf).collect(Collectors.joining(",")))
+                + ")";
+        Examen examen = examenDao.save(Examen.builder()
+                .nombre(NOMBRE_ADAPTATIVO)
+                .descripcion(descripcion)
+                .creadoPor(request.getUsuarioId())
+                .creadoEn(LocalDateTime.now())
+                .build());
+        // La regla de paro se guarda aparte para poder reconstruir el estado
+        adaptativoDao.save(ExamenAdaptativo.builder()
+                .examenId(examen.getId())
+                .maxReactivos(request.getMaxReactivos())
+                .errorObjetivo(request.getErrorObjetivo())
+                .especialidades(especialidades.isEmpty() ? null
+                        : especialidades.stream().map(String::valueOf).collect(Collectors.joining(",")))
+                .build());
+        IntentoExamen intento = examenService.iniciarIntento(examen.getId(), request.getUsuarioId());
+
+        Estado e = new Estado(intento.getId(), examen.getId(), especialidades,
+                request.getMaxReactivos(), request.getErrorObjetivo());
+        estados.put(e.intentoId, e);
+        try {
+            synchronized (e) {
+                ExamenPreguntaDTO primera = administrarSiguiente(e);
+                if (primera == null) {
+                    throw new IllegalArgumentException("No hay reactivos disponibles para las especialidades pedidas");
+                }
+                return paso(e, null, primera);
+            }
+        } catch (RuntimeException ex) {
+            estados.remove(e.intentoId);
+            throw ex;
+        }
+    }
+
+    /**
+     * Registra la respuesta, actualiza θ y devuelve el siguiente reactivo (o terminado).
+     */
+    @Transactional
+    public AdaptativoPasoDTO responder(Long intentoId, Long reactivoId, String respuesta, Long secuencia) {
+        Estado e = estado(intentoId);
+        try {
+            synchronized (e) {
+                if (!e.administrados.contains(reactivoId)) {
+                    throw new IllegalArgumentException("El reactivo " + reactivoId + " no se presentó en este intento");
+                }
+                IntentoPreguntaDTO r = intentoSesiones.responder(intentoId, reactivoId, respuesta, secuencia);
+                e.ultimoUso = System.nanoTime();
+
+                // Solo la primera respuesta a cada reactivo mueve θ; cambiarla después no
+                boolean nueva = e.respondidos.add(reactivoId);
+                if (nueva) e.actualizar(banco.parametros(reactivoId), r.isCorrecta());
+
+                ExamenPreguntaDTO siguiente = null;
+                if (!terminado(e)) {
+                    siguiente = e.pendiente != null && !e.respondidos.contains(e.pendiente)
+                            ? pregunta(e, e.orden)
+                            : administrarSiguiente(e);
+                }
+                return paso(e, r.isCorrecta(), siguiente);
+            }
+        } catch (RuntimeException ex) {
+            // El estado en memoria pudo quedar adelante de la BD: se reconstruye en la siguiente llamada
+            if (!(ex instanceof IllegalArgumentException)) estados.remove(intentoId);
+            throw ex;
+        }
+    }
+
+    private boolean terminado(Estado e) {
+        return e.respondidos.size() >= e.maxReactivos || e.errorEstandar() <= e.errorObjetivo;
+    }
+
+    private ExamenPreguntaDTO administrarSiguiente(Estado e) {
+        long id = banco.seleccionar(e.theta(), e.especialidades, e.administrados::contains,
+                CANDIDATOS, ThreadLocalRandom.current());
+        if (id < 0) return null;
+
+        e.orden++;
+        e.administrados.add(id);
+        e.pendiente = id;
+        examenPreguntaDao.save(ExamenPregunta.builder()
+                .examen(examenDao.getReferenceById(e.examenId))
+                .reactivo(reactivoDao.getReferenceById(id))
+                .orden(e.orden)
+                .puntaje(1.0)
+                .build());
+        // El examen crece con cada paso: el JSON cacheado ya no sirve
+        payloadCache.invalidar(e.examenId);
+        return pregunta(e, e.orden);
+    }
+
+    private ExamenPreguntaDTO pregunta(Estado e, int orden) {
+        List<ExamenPreguntaDTO> p = examenPreguntaDao.findPreguntasDTOByExamenIdAndOrdenBetween(e.examenId, orden, orden);
+        return p.isEmpty() ? null : p.get(0);
+    }
+
+    private AdaptativoPasoDTO paso(Estado e, Boolean correcta, ExamenPreguntaDTO siguiente) {
+        return AdaptativoPasoDTO.builder()
+                .intentoId(e.intentoId)
+                .examenId(e.examenId)
+                .correcta(correcta)
+                .theta(e.theta())
+                .errorEstandar(e.errorEstandar())
+                .administrados(e.administrados.size())
+                .terminado(siguiente == null)
+                .siguiente(siguiente)
+                .build();
+    }
+
+    // ==========================================================
+    // ESTADO
+    // ==========================================================
+
+    private Estado estado(Long intentoId) {
+        Estado e = estados.get(intentoId);
+        if (e != null) return e;
+
+        IntentoEstadoDTO intento = intentoExamenDao.findEstadoById(intentoId)
+                .orElseThrow(() -> new RuntimeException("Intento no encontrado con id " + intentoId));
+        ExamenAdaptativo config = adaptativoDao.findById(intento.getExamenId())
+                .orElseGet(() -> configLegado(intentoId, intento.getExamenId()));
+
+        Estado nuevo = new Estado(intentoId, config.getExamenId(), especialidades(config.getEspecialidades()),
+                config.getMaxReactivos(), config.getErrorObjetivo());
+        List<Long> presentados = examenPreguntaDao.findReactivoIdsByExamenId(config.getExamenId());
+        nuevo.administrados.addAll(presentados);
+        nuevo.orden = presentados.size();
+        nuevo.pendiente = presentados.isEmpty() ? null : presentados.get(presentados.size() - 1);
+        for (Object[] f : intentoPreguntaDao.findRespuestasByIntentoId(intentoId)) {
+            Long reactivoId = (Long) f[0];
+            if (nuevo.respondidos.add(reactivoId)) {
+                nuevo.actualizar(banco.parametros(reactivoId), Boolean.TRUE.equals(f[3]));
+            }
+        }
+
+        Estado previo = estados.putIfAbsent(intentoId, nuevo);
+        return previo != null ? previo : nuevo;
+    }
+
+    private ExamenAdaptativo configLegado(Long intentoId, Long examenId) {
+        Examen examen = examenDao.findById(examenId)
+                .orElseThrow(() -> new RuntimeException("Examen no encontrado con id " + examenId));
+        Matcher m = NOMBRE_ADAPTATIVO.equals(examen.getNombre()) && examen.getDescripcion() != null
+                ? CONFIG_LEGADO.matcher(examen.getDescripcion()) : null;
+        if (m == null || !m.find()) {
+            throw new IllegalArgumentException("El intento " + intentoId + " no es adaptativo");
+        }
+        return ExamenAdaptativo.builder()
+                .examenId(examenId)
+                .maxReactivos(Integer.parseInt(m.group(1)))
+                .errorObjetivo(Double.parseDouble(m.group(2)))
+                .especialidades(m.group(3))
+                .build();
+    }
+
+    private static List<Long> especialidades(String ids) {
+        return ids == null || ids.isBlank() ? List.of()
+                : Arrays.stream(ids.split(",")).map(String::trim).map(Long::valueOf).toList();
+    }
+
+    @Scheduled(fixedDelayString = "${app.intentos.flush-intervalo-ms:2000}")
+    public void descartarInactivos() {
+        long limite = System.nanoTime() - TimeUnit.MINUTES.toNanos(props.getInactividadMin());
+        estados.values().removeIf(e -> e.ultimoUso < limite);
+    }
+
+    /**
+     * Posterior de θ sobre MALLA (en log) y los reactivos presentados/respondidos.
+     */
+    private static final class Estado {
+        final Long intentoId;
+        final Long examenId;
+        final List<Long> especialidades;
+        final int maxReactivos;
+        final double errorObjetivo;
+        final double[] logPosterior = LOG_PRIOR.clone();
+        final Set<Long> administrados = new LinkedHashSet<>();
+        final Set<Long> respondidos = new LinkedHashSet<>();
+        int orden;
+        Long pendiente;
+        volatile long ultimoUso = System.nanoTime();
+
+        Estado(Long intentoId, Long examenId, List<Long> especialidades, int maxReactivos, double errorObjetivo) {
+            this.intentoId = intentoId;
+            this.examenId = examenId;
+            this.especialidades = new ArrayList<>(especialidades);
+            this.maxReactivos = maxReactivos;
+            this.errorObjetivo = errorObjetivo;
+        }
+
+        void actualizar(ReactivoIrtBank.Parametros p, boolean correcta) {
+            for (int k = 0; k < MALLA.length; k++) {
+                double pr = Math.min(Math.max(p.probabilidad(MALLA[k]), 1e-9), 1 - 1e-9);
+                logPosterior[k] += Math.log(correcta ? pr : 1 - pr);
+            }
+        }
+
+        double theta() {
+            return momentos()[0];
+        }
+
+        double errorEstandar() {
+            return Math.sqrt(momentos()[1]);
+        }
+
+        private double[] momentos() {
+            double max = Arrays.stream(logPosterior).max().orElse(0);
+            double suma = 0, media = 0, segundo = 0;
+            for (int k = 0; k < MALLA.length; k++) {
+                double w = Math.exp(logPosterior[k] - max);
+                suma += w;
+                media += w * MALLA[k];
+                segundo += w * MALLA[k] * MALLA[k];
+            }
+            media /= suma;
+            return new double[]{media, Math.max(0, segundo / suma - media * media)};
+        }
+    }
+}
@@ -7,6 +7,8 @@ import com.example.enarm360.entities.Usuario;
 import com.example.enarm360.repositories.PermisoRepository;
 import com.example.enarm360.repositories.UsuarioRepository;
 import com.example.enarm360.repositories.UsuarioPermisoLogRepository;
+import com.example.enarm360.security.PrincipalInvalidacionService;
+import com.example.enarm360.security.UsuarioActual;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -23,7 +25,8 @@ public class AdminUserService {
     private final UsuarioRepository usuarioRepository;
     private final PermisoRepository permisoRepository;
     private final UsuarioPermisoLogRepository logRepository;
-    private final AuthService authService;
+    private final UsuarioActual usuarioActual;
+    private final PrincipalInvalidacionService principalInvalidacion;
 
     public List<PermisoDto> listPermisos() {
         return permisoRepository.findAll().stream().map(PermisoDto::fromEntity).collect(Collectors.toList());
@@ -60,6 +63,7 @@ public class AdminUserService {
     public UsuarioPermisosDto setActivo(Long userId, boolean activo) {
         Usuario u = usuarioRepository.findById(userId).orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
         u.setActivo(activo);
+        principalInvalidacion.usuarioCambiado(u);
         usuarioRepository.save(u);
         return UsuarioPermisosDto.fromEntity(u);
     }
@@ -68,13 +72,13 @@ public class AdminUserService {
         Usuario u = usuarioRepository.findById(userId).orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
         Permiso p = permisoRepository.findByCodigo(codigo).orElseThrow(() -> new RuntimeException("Permiso no encontrado: " + codigo));
         u.getPermisos().add(p);
+        principalInvalidacion.usuarioCambiado(u);
         usuarioRepository.save(u);
         // Log
-        var actor = authService.getCurrentUser();
         logRepository.save(com.example.enarm360.entities.UsuarioPermisoLog.builder()
                 .usuario(u)
                 .permiso(p)
-                .actor(usuarioRepository.findById(actor.getId()).orElseThrow())
+                .actor(usuarioRepository.getReferenceById(usuarioActual.id()))
                 .accion(com.example.enarm360.entities.UsuarioPermisoLog.Accion.GRANT)
                 .build());
         return UsuarioPermisosDto.fromEntity(u);
@@ -84,13 +88,13 @@ public class AdminUserService {
         Usuario u = usuarioRepository.findById(userId).orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
         Permiso p = permisoRepository.findByCodigo(codigo).orElseThrow(() -> new RuntimeException("Permiso no encontrado: " + codigo));
         u.getPermisos().remove(p);
+        principalInvalidacion.usuarioCambiado(u);
         usuarioRepository.save(u);
         // Log
-        var actor = authService.getCurrentUser();
         logRepository.save(com.example.enarm360.entities.UsuarioPermisoLog.builder()
                 .usuario(u)
                 .permiso(p)
-                .actor(usuarioRepository.findById(actor.getId()).orElseThrow())
+                .actor(usuarioRepository.getReferenceById(usuarioActual.id()))
                 .accion(com.example.enarm360.entities.UsuarioPermisoLog.Accion.REVOKE)
                 .build());
         return UsuarioPermisosDto.fromEntity(u);
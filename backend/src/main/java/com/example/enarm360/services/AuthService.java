@@ -5,8 +5,13 @@ import com.example.enarm360.entities.SesionAuth;
 import com.example.enarm360.entities.Usuario;
 import com.example.enarm360.repositories.SesionAuthRepository;
 import com.example.enarm360.repositories.UsuarioRepository;
+import com.example.enarm360.security.FiltroRevocacion;
 import com.example.enarm360.security.JwtUtils;
+import com.example.enarm360.security.PermisosVersionStore;
+import com.example.enarm360.security.UsuarioActual;
+import com.example.enarm360.security.TokenHash;
 import com.example.enarm360.security.UserDetailsImpl;
+import io.jsonwebtoken.Claims;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,10 +24,13 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Date;
+import java.util.HexFormat;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Service
@@ -44,6 +52,18 @@ public class AuthService {
     @Autowired
     private JwtUtils jwtUtils;
 
+    @Autowired
+    private PermisosVersionStore permisosVersionStore;
+
+    @Autowired
+    private UsuarioActual usuarioActual;
+
+    @Autowired
+    private FiltroRevocacion filtroRevocacion;
+
+    @Autowired
+    private IntentoCanalService intentoCanales;
+
     /**
      * Autenticar usuario con email O username y generar tokens
      */
@@ -64,17 +84,23 @@ public class AuthService {
 
             // Generar tokens usando el username (no el login)
             String accessToken = jwtUtils.generateJwtToken(authentication);
-            String refreshToken = jwtUtils.generateRefreshToken(userDetails.getUsername());
+            String familia = UUID.randomUUID().toString();
+            // Vencimiento absoluto de la familia: se fija aquí y cada rotación lo conserva
+            LocalDateTime emitido = LocalDateTime.now();
+            LocalDateTime expiraFamilia = emitido.plusSeconds(jwtUtils.getRefreshExpirationMs() / 1000);
+            String refreshToken = jwtUtils.generateRefreshToken(userDetails.getUsername(), familia, fecha(expiraFamilia));
+            permisosVersionStore.registrar(userDetails.getId(), userDetails.getPermisosVersion(), userDetails.isActivo());
 
             // Limpiar tokens expirados del usuario
             limpiarTokensExpirados(userDetails.getId());
 
-            // Guardar refresh token en base de datos
+            // Guardar el hash del refresh token en base de datos
             SesionAuth sesion = SesionAuth.builder()
                     .usuario(usuarioRepository.findById(userDetails.getId()).orElseThrow())
-                    .tokenRefresh(refreshToken)
-                    .emitidoEn(LocalDateTime.now())
-                    .expiraEn(LocalDateTime.now().plusSeconds(jwtUtils.getRefreshExpirationMs() / 1000))
+                    .tokenHash(TokenHash.hex(TokenHash.sha256(refreshToken)))
+                    .familia(familia)
+                    .emitidoEn(emitido)
+                    .expiraEn(expiraFamilia)
                     .build();
 
             sesionAuthRepository.save(sesion);
@@ -83,7 +109,7 @@ public class AuthService {
             Usuario usuario = usuarioRepository.findById(userDetails.getId())
                     .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
 
-            UsuarioInfo usuarioInfo = buildUsuarioInfo(usuario);
+            UsuarioInfo usuarioInfo = UsuarioInfo.fromEntity(usuario);
 
             logger.info("Login exitoso para usuario: {} (username: {}, email: {})", 
                     usuario.getNombre(), usuario.getUsername(), usuario.getEmail());
@@ -103,57 +129,129 @@ public class AuthService {
     }
 
     /**
-     * Renovar access token usando refresh token
+     * Renovar access token usando refresh token, rotando el refresh token.
+     *
+     * El token se busca por su hash. Cada refresh emite uno nuevo de la misma familia y el
+     * anterior queda muerto; presentar uno muerto es reuso (robo o replay) y revoca la
+     * familia completa. Una sola transacción (una conexión del pool por refresh) que se
+     * confirma aunque el refresh termine en error, para no perder la rotación ni la
+     * revocación. El UPDATE de rotar bloquea la fila: los refresh paralelos con el mismo
+     * token esperan al ganador y ven 0 filas.
      */
+    @Transactional(noRollbackFor = RuntimeException.class)
     public TokenResponse refreshToken(RefreshTokenRequest request) {
         String requestRefreshToken = request.getRefreshToken();
         logger.debug("Intentando renovar token");
-
-        // Verificar si el refresh token es válido
-        if (!jwtUtils.validateJwtToken(requestRefreshToken)) {
-            logger.warn("Refresh token inválido");
+        if (requestRefreshToken == null || requestRefreshToken.isBlank()) {
             throw new RuntimeException("Refresh token inválido");
         }
 
-        // Buscar el token en la base de datos
-        Optional<SesionAuth> sesionOpt = sesionAuthRepository.findByTokenRefresh(requestRefreshToken);
+        byte[] digest = TokenHash.sha256(requestRefreshToken);
+
+        // Replay de un token muerto de una familia ya revocada: se rechaza sin BD
+        if (filtroRevocacion.contieneToken(digest)) {
+            String familia = familiaDelToken(requestRefreshToken);
+            if (familia != null && filtroRevocacion.contieneFamilia(familia)) {
+                logger.warn("Refresh token de una familia revocada");
+                throw new RuntimeException("Refresh token revocado");
+            }
+            // Puede ser un falso positivo del filtro: decide la BD
+        }
+
+        String hash = TokenHash.hex(digest);
+        Optional<SesionAuth> sesionOpt = sesionAuthRepository.findByTokenHashWithUsuario(hash);
         if (sesionOpt.isEmpty()) {
+            revocarPorReuso(requestRefreshToken);
             logger.warn("Refresh token no encontrado en BD");
             throw new RuntimeException("Refresh token no encontrado");
         }
 
         SesionAuth sesion = sesionOpt.get();
+        Usuario usuario = sesion.getUsuario();
+        LocalDateTime ahora = LocalDateTime.now();
 
         // Verificar si ha expirado
-        if (sesion.getExpiraEn().isBefore(LocalDateTime.now())) {
-            logger.warn("Refresh token expirado para usuario: {}", sesion.getUsuario().getUsername());
+        if (sesion.getExpiraEn().isBefore(ahora)) {
+            logger.warn("Refresh token expirado para usuario: {}", usuario.getUsername());
             sesionAuthRepository.delete(sesion);
             throw new RuntimeException("Refresh token expirado");
         }
 
-        // Generar nuevo access token usando username
-        String username = jwtUtils.getUsernameFromJwtToken(requestRefreshToken);
-        String newAccessToken = jwtUtils.generateTokenFromUsername(username, jwtUtils.getJwtExpirationMs());
+        // Generar nuevo access token con los roles y permisos vigentes
+        if (!Boolean.TRUE.equals(usuario.getActivo())) {
+            throw new RuntimeException("Usuario no encontrado o inactivo");
+        }
+        UserDetailsImpl userDetails = UserDetailsImpl.build(usuario);
+
+        // El token nuevo vence cuando vence la familia: refrescar no alarga la sesión
+        String nuevoRefreshToken = jwtUtils.generateRefreshToken(usuario.getUsername(), sesion.getFamilia(),
+                fecha(sesion.getExpiraEn()));
+        int rotadas = sesionAuthRepository.rotar(sesion.getId(), hash, TokenHash.hex(TokenHash.sha256(nuevoRefreshToken)),
+                ahora);
+        if (rotadas == 0) {
+            // Otro refresh con el mismo token ganó la rotación
+            revocarPorReuso(requestRefreshToken);
+            throw new RuntimeException("Refresh token no encontrado");
+        }
+        filtroRevocacion.agregarToken(digest);
+
+        String newAccessToken = jwtUtils.generateAccessToken(userDetails);
+        permisosVersionStore.registrar(userDetails.getId(), userDetails.getPermisosVersion(), userDetails.isActivo());
 
-        logger.debug("Token renovado exitosamente para usuario: {}", username);
+        logger.debug("Token renovado exitosamente para usuario: {}", usuario.getUsername());
 
         return TokenResponse.builder()
                 .accessToken(newAccessToken)
+                .refreshToken(nuevoRefreshToken)
                 .tokenType("Bearer")
                 .expiresIn((long) jwtUtils.getJwtExpirationMs() / 1000)
                 .build();
     }
 
     /**
-     * Cerrar sesión (eliminar refresh token)
+     * Un token con firma válida que ya no está en la BD fue rotado o revocado: se revoca
+     * su familia, incluido el token que la sesión tenga vigente.
+     */
+    private void revocarPorReuso(String refreshToken) {
+        String familia = familiaDelToken(refreshToken);
+        if (familia == null || filtroRevocacion.contieneFamilia(familia)) return;
+        logger.warn("Reuso de refresh token: se revoca la familia {}", familia);
+        revocarFamilia(familia);
+    }
+
+    private void revocarFamilia(String familia) {
+        for (SesionAuth s : sesionAuthRepository.findByFamilia(familia)) {
+            filtroRevocacion.agregarToken(HexFormat.of().parseHex(s.getTokenHash()));
+        }
+        sesionAuthRepository.deleteByFamilia(familia);
+        filtroRevocacion.agregarFamilia(familia);
+    }
+
+    private static Date fecha(LocalDateTime t) {
+        return Date.from(t.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    private String familiaDelToken(String refreshToken) {
+        Claims claims = jwtUtils.parseVerifiedClaims(refreshToken);
+        return claims != null ? claims.get(JwtUtils.CLAIM_FAMILIA, String.class) : null;
+    }
+
+    /**
+     * Cerrar sesión (revocar la familia del refresh token)
      */
     public void logout(String refreshToken) {
         logger.debug("Cerrando sesión");
-        
-        sesionAuthRepository.findByTokenRefresh(refreshToken)
+        if (refreshToken == null || refreshToken.isBlank()) return;
+
+        sesionAuthRepository.findByTokenHash(TokenHash.hex(TokenHash.sha256(refreshToken)))
                 .ifPresent(sesion -> {
-                    logger.info("Logout para usuario: {}", sesion.getUsuario().getUsername());
-                    sesionAuthRepository.delete(sesion);
+                    logger.info("Logout para usuario ID: {}", sesion.getUsuario().getId());
+                    intentoCanales.cerrarUsuario(sesion.getUsuario().getId());
+                    if (sesion.getFamilia() != null) {
+                        revocarFamilia(sesion.getFamilia());
+                    } else {
+                        sesionAuthRepository.delete(sesion);
+                    }
                 });
     }
 
@@ -162,6 +260,10 @@ public class AuthService {
      */
     public void logoutAll(Long usuarioId) {
         logger.info("Cerrando todas las sesiones para usuario ID: {}", usuarioId);
+        intentoCanales.cerrarUsuario(usuarioId);
+        for (String familia : sesionAuthRepository.findFamiliasByUsuarioId(usuarioId)) {
+            revocarFamilia(familia);
+        }
         sesionAuthRepository.deleteAllByUsuarioId(usuarioId);
     }
 
@@ -169,18 +271,7 @@ public class AuthService {
      * Obtener información del usuario actual
      */
     public UsuarioInfo getCurrentUser() {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        
-        if (authentication == null || !authentication.isAuthenticated()) {
-            throw new RuntimeException("Usuario no autenticado");
-        }
-        
-        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-        
-        Usuario usuario = usuarioRepository.findByUsernameAndActivoTrue(userDetails.getUsername())
-                .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
-
-        return buildUsuarioInfo(usuario);
+        return usuarioActual.info();
     }
 
     /**
@@ -227,40 +318,6 @@ public class AuthService {
         sesionAuthRepository.deleteExpiredTokens(LocalDateTime.now());
     }
 
-    /**
-     * Construir información del usuario para el frontend
-     */
-    private UsuarioInfo buildUsuarioInfo(Usuario usuario) {
-        Set<String> roles = usuario.getRoles().stream()
-                .map(rol -> rol.getNombre())
-                .collect(Collectors.toSet());
-
-        Set<String> permisos = new HashSet<>();
-        
-        // Permisos de roles
-        usuario.getRoles().forEach(rol -> 
-            rol.getPermisos().forEach(permiso -> 
-                permisos.add(permiso.getCodigo())
-            )
-        );
-        
-        // Permisos directos del usuario
-        usuario.getPermisos().forEach(permiso -> 
-            permisos.add(permiso.getCodigo())
-        );
-
-        return UsuarioInfo.builder()
-                .id(usuario.getId())
-                .username(usuario.getUsername())
-                .email(usuario.getEmail())
-                .nombre(usuario.getNombre())
-                .apellidos(usuario.getApellidos())
-                .roles(roles)
-                .permisos(permisos)
-                .activo(usuario.getActivo())
-                .build();
-    }
-
     /**
  * Verificar si usuario actual tiene un rol específico
  */
@@ -0,0 +1,216 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.dtos.GenerarExamenBlueprintRequest;
+import com.example.enarm360.dtos.GenerarExamenBlueprintRequest.CuotaEspecialidad;
+import com.example.enarm360.services.ReactivoSamplingIndex.Celda;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongPredicate;
+import java.util.random.RandomGenerator;
+
+/**
+ * Resuelve en memoria la composición de un examen por blueprint.
+ *
+ * Reparte el total entre especialidades (porcentajes del request), luego cada cuota
+ * entre dificultades y cada una de esas entre claves, usando los conteos por celda de
+ * ReactivoSamplingIndex. Al final muestrea los IDs de cada celda. No toca la BD, así que
+ * el costo depende del número de celdas y de reactivos pedidos, no del tamaño del banco.
+ */
+@Component
+@RequiredArgsConstructor
+public class ExamBlueprintPlanner {
+
+    private static final double EPSILON = 1e-6;
+
+    private final ReactivoSamplingIndex indice;
+
+    /**
+     * IDs elegidos, agrupados por especialidad en el orden del request y barajados
+     * dentro de cada grupo. Dentro de cada celda se prefieren los IDs que no cumplen
+     * excluir (p.ej. ya vistos por el usuario); las cuotas no cambian.
+     */
+    public List<Long> planificar(GenerarExamenBlueprintRequest req, RandomGenerator rnd, LongPredicate excluir) {
+        Map<Long, Integer> porEspecialidad = repartirEspecialidades(req, rnd);
+
+        List<Long> ids = new ArrayList<>(req.getTotalReactivos());
+        porEspecialidad.forEach((espId, cuota) -> {
+            List<Long> bloque = muestrearEspecialidad(espId, cuota, req, rnd, excluir);
+            barajar(bloque, rnd);
+            ids.addAll(bloque);
+        });
+        return ids;
+    }
+
+    // ==========================================================
+    // NIVEL 1: ESPECIALIDADES
+    // ==========================================================
+
+    private Map<Long, Integer> repartirEspecialidades(GenerarExamenBlueprintRequest req, RandomGenerator rnd) {
+        int total = req.getTotalReactivos();
+        if (total <= 0) {
+            throw new IllegalArgumentException("totalReactivos debe ser mayor a 0");
+        }
+
+        List<CuotaEspecialidad> cuotas = req.getEspecialidades() == null ? List.of() : req.getEspecialidades();
+        Map<Long, Integer> disponibles = indice.conteosPorEspecialidad();
+
+        double sumaPct = 0;
+        for (CuotaEspecialidad c : cuotas) {
+            if (c.getEspecialidadId() == null || c.getPorcentaje() < 0) {
+                throw new IllegalArgumentException("Cuota de especialidad inválida: " + c);
+            }
+            sumaPct += c.getPorcentaje();
+        }
+        if (sumaPct > 100 + EPSILON) {
+            throw new IllegalArgumentException("Los porcentajes suman " + sumaPct + "%, más de 100%");
+        }
+
+        // Las especialidades listadas más un cubo "resto" con lo que falte para 100%
+        List<Long> restoIds = disponibles.keySet().stream()
+                .filter(id -> cuotas.stream().noneMatch(c -> id.equals(c.getEspecialidadId())))
+                .toList();
+        double restoPct = cuotas.isEmpty() ? 100 : Math.max(0, 100 - sumaPct);
+
+        double[] pesos = new double[cuotas.size() + 1];
+        int[] sinTope = new int[pesos.length];
+        for (int i = 0; i < cuotas.size(); i++) pesos[i] = cuotas.get(i).getPorcentaje();
+        pesos[cuotas.size()] = restoPct;
+        Arrays.fill(sinTope, Integer.MAX_VALUE);
+        int[] asignado = repartir(total, pesos, sinTope, rnd);
+
+        Map<Long, Integer> resultado = new LinkedHashMap<>();
+        for (int i = 0; i < cuotas.size(); i++) {
+            Long espId = cuotas.get(i).getEspecialidadId();
+            int hay = disponibles.getOrDefault(espId, 0);
+            if (asignado[i] > hay) {
+                throw new IllegalArgumentException("La especialidad " + espId + " tiene " + hay
+                        + " reactivos y el blueprint pide " + asignado[i]);
+            }
+            if (asignado[i] > 0) resultado.merge(espId, asignado[i], Integer::sum);
+        }
+
+        int resto = asignado[cuotas.size()];
+        if (resto > 0) {
+            double[] pesosResto = new double[restoIds.size()];
+            int[] topes = new int[restoIds.size()];
+            for (int i = 0; i < restoIds.size(); i++) {
+                topes[i] = disponibles.get(restoIds.get(i));
+                pesosResto[i] = topes[i];
+            }
+            int[] reparto = repartir(resto, pesosResto, topes, rnd);
+            if (Arrays.stream(reparto).sum() < resto) {
+                throw new IllegalArgumentException("No hay suficientes reactivos en las demás especialidades para completar "
+                        + total + " reactivos");
+            }
+            for (int i = 0; i < restoIds.size(); i++) {
+                if (reparto[i] > 0) resultado.put(restoIds.get(i), reparto[i]);
+            }
+        }
+        return resultado;
+    }
+
+    // ==========================================================
+    // NIVELES 2 Y 3: DIFICULTAD Y CLAVE
+    // ==========================================================
+
+    private List<Long> muestrearEspecialidad(Long espId, int cuota, GenerarExamenBlueprintRequest req,
+                                             RandomGenerator rnd, LongPredicate excluir) {
+        // dificultad -> (celda completa -> conteo), en orden estable
+        Map<Long, Map<Celda, Integer>> porDificultad = new LinkedHashMap<>();
+        indice.conteosPorCelda(espId).forEach((celda, n) ->
+                porDificultad.computeIfAbsent(celda.dificultadId(), k -> new LinkedHashMap<>()).put(celda, n));
+
+        List<Map<Celda, Integer>> grupos = new ArrayList<>(porDificultad.values());
+        int[] topesDif = grupos.stream().mapToInt(g -> g.values().stream().mapToInt(Integer::intValue).sum()).toArray();
+        int[] porDif = repartir(cuota, pesos(topesDif, req.isBalancearDificultad()), topesDif, rnd);
+
+        List<Long> ids = new ArrayList<>(cuota);
+        for (int d = 0; d < grupos.size(); d++) {
+            if (porDif[d] == 0) continue;
+            List<Celda> celdas = new ArrayList<>(grupos.get(d).keySet());
+            int[] topesClave = grupos.get(d).values().stream().mapToInt(Integer::intValue).toArray();
+            int[] porClave = repartir(porDif[d], pesos(topesClave, req.isDistribuirClaves()), topesClave, rnd);
+
+            for (int c = 0; c < celdas.size(); c++) {
+                if (porClave[c] == 0) continue;
+                for (long id : indice.muestrear(celdas.get(c), porClave[c], rnd, excluir)) ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private static double[] pesos(int[] topes, boolean parejo) {
+        double[] pesos = new double[topes.length];
+        for (int i = 0; i < topes.length; i++) pesos[i] = parejo ? 1 : topes[i];
+        return pesos;
+    }
+
+    // ==========================================================
+    // REPARTO
+    // ==========================================================
+
+    /**
+     * Reparte total unidades según pesos sin pasar ningún tope (método del mayor residuo).
+     * Lo que no cabe en un grupo topado se vuelve a repartir entre los demás. Los empates
+     * en el residuo se rompen con rnd para que el resultado dependa solo del seed.
+     * Si la suma de topes es menor que total, devuelve menos de total.
+     */
+    static int[] repartir(int total, double[] pesos, int[] topes, RandomGenerator rnd) {
+        int n = pesos.length;
+        int[] asignado = new int[n];
+        boolean[] activo = new boolean[n];
+        for (int i = 0; i < n; i++) activo[i] = pesos[i] > 0 && topes[i] > 0;
+
+        int restante = total;
+        while (restante > 0) {
+            double suma = 0;
+            for (int i = 0; i < n; i++) if (activo[i]) suma += pesos[i];
+            if (suma <= 0) break;
+
+            double[] residuos = new double[n];
+            boolean alguienTopado = false;
+            int repartido = 0;
+            for (int i = 0; i < n; i++) {
+                if (!activo[i]) continue;
+                double exacto = restante * pesos[i] / suma;
+                int base = (int) Math.min(Math.floor(exacto), topes[i] - asignado[i]);
+                asignado[i] += base;
+                repartido += base;
+                residuos[i] = exacto - base;
+                if (asignado[i] >= topes[i]) {
+                    activo[i] = false;
+                    alguienTopado = true;
+                }
+            }
+            restante -= repartido;
+            if (alguienTopado) continue;
+
+            // Nadie topado: quedan menos unidades que grupos activos, van a los mayores residuos
+            Integer[] orden = new Integer[n];
+            for (int i = 0; i < n; i++) orden[i] = i;
+            barajar(Arrays.asList(orden), rnd);
+            Arrays.sort(orden, (a, b) -> Double.compare(residuos[b], residuos[a]));
+            for (int k = 0; k < n && restante > 0; k++) {
+                if (!activo[orden[k]]) continue;
+                asignado[orden[k]]++;
+                restante--;
+            }
+        }
+        return asignado;
+    }
+
+    private static <T> void barajar(List<T> lista, RandomGenerator rnd) {
+        for (int i = lista.size() - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            T tmp = lista.get(i);
+            lista.set(i, lista.get(j));
+            lista.set(j, tmp);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.dtos.ExamenDTO;
+import com.example.enarm360.dtos.ExamenPreguntaDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache del JSON ya serializado (plano y gzip) de cada examen.
+ *
+ * La lista de preguntas de un examen no cambia después de generarse, así que
+ * GET /api/examenes/{id} puede responder los bytes directamente con un ETag fuerte, sin
+ * armar el DTO ni pasar por Jackson. Acotado por bytes totales con desalojo LRU.
+ *
+ * Los textos sí pueden cambiar si se edita un reactivo: ReactivoIndexListener llama a
+ * invalidarReactivo tras el commit y se descartan los exámenes en cache que lo incluyen.
+ * En los demás nodos lo hace ReactivoCambiosService al leer la bitácora de cambios.
+ */
+@Slf4j
+@Component
+public class ExamenPayloadCache {
+
+    /**
+     * Representaciones de un examen. Los ETag difieren por codificación, como pide un ETag fuerte.
+     */
+    public record Payload(byte[] json, byte[] gzip, String etag, String etagGzip) {
+        int bytes() {
+            return json.length + gzip.length;
+        }
+
+        public boolean coincide(String ifNoneMatch) {
+            if (ifNoneMatch == null) return false;
+            if (ifNoneMatch.trim().equals("*")) return true;
+            for (String tag : ifNoneMatch.split(",")) {
+                String t = tag.trim();
+                if (t.equals(etag) || t.equals(etagGzip)) return true;
+            }
+            return false;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final long maxBytes;
+
+    private final LinkedHashMap<Long, Payload> entradas = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytesTotales = 0;
+    // Reactivo → exámenes en cache que lo incluyen
+    private final Map<Long, Set<Long>> examenesPorReactivo = new HashMap<>();
+    private final Map<Long, List<Long>> reactivosPorExamen = new HashMap<>();
+    // Cambia con cada invalidación: un payload armado antes de ella no se guarda
+    private long generacion = 0;
+
+    public ExamenPayloadCache(ObjectMapper objectMapper,
+                              @Value("${app.examenes.payload-cache.max-bytes:67108864}") long maxBytes) {
+        this.objectMapper = objectMapper;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Devuelve el payload del examen, serializándolo con el loader solo si no está en cache.
+     */
+    public Payload obtener(Long examenId, Supplier<ExamenDTO> loader) {
+        long leida;
+        synchronized (this) {
+            Payload p = entradas.get(examenId);
+            if (p != null) return p;
+            leida = generacion;
+        }
+
+        // Serializar fuera del lock; si dos hilos compiten, gana el primero en guardar
+        ExamenDTO dto = loader.get();
+        Payload nuevo = serializar(dto);
+        synchronized (this) {
+            Payload existente = entradas.get(examenId);
+            if (existente != null) return existente;
+            if (nuevo.bytes() > maxBytes || leida != generacion) return nuevo;
+
+            entradas.put(examenId, nuevo);
+            bytesTotales += nuevo.bytes();
+            indexar(examenId, dto);
+            desalojar();
+            return nuevo;
+        }
+    }
+
+    public synchronized void invalidar(Long examenId) {
+        generacion++;
+        quitar(examenId);
+    }
+
+    /**
+     * Descarta los exámenes en cache que incluyen el reactivo (editado o borrado).
+     */
+    public synchronized void invalidarReactivo(Long reactivoId) {
+        generacion++;
+        Set<Long> examenes = examenesPorReactivo.get(reactivoId);
+        if (examenes == null) return;
+        for (Long examenId : List.copyOf(examenes)) quitar(examenId);
+    }
+
+    private void indexar(Long examenId, ExamenDTO dto) {
+        List<Long> reactivos = dto.getPreguntas() == null ? List.of()
+                : dto.getPreguntas().stream().map(ExamenPreguntaDTO::getReactivoId).filter(Objects::nonNull).toList();
+        reactivosPorExamen.put(examenId, reactivos);
+        for (Long r : reactivos) examenesPorReactivo.computeIfAbsent(r, k -> new HashSet<>()).add(examenId);
+    }
+
+    private void quitar(Long examenId) {
+        Payload p = entradas.remove(examenId);
+        if (p != null) bytesTotales -= p.bytes();
+        desindexar(examenId);
+    }
+
+    private void desindexar(Long examenId) {
+        List<Long> reactivos = reactivosPorExamen.remove(examenId);
+        if (reactivos == null) return;
+        for (Long r : reactivos) {
+            Set<Long> examenes = examenesPorReactivo.get(r);
+            if (examenes != null && examenes.remove(examenId) && examenes.isEmpty()) {
+                examenesPorReactivo.remove(r);
+            }
+        }
+    }
+
+    private void desalojar() {
+        var it = entradas.entrySet().iterator();
+        while (bytesTotales > maxBytes && it.hasNext()) {
+            Map.Entry<Long, Payload> masViejo = it.next();
+            bytesTotales -= masViejo.getValue().bytes();
+            it.remove();
+            desindexar(masViejo.getKey());
+        }
+    }
+
+    private Payload serializar(ExamenDTO dto) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(dto);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + 64);
+            try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+                gz.write(json);
+            }
+
+            String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(json), 0, 16);
+            return new Payload(json, out.toByteArray(), "\"" + hash + "\"", "\"" + hash + "-gzip\"");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
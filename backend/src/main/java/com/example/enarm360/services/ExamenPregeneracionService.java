@@ -0,0 +1,296 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.Mappers.ExamenMapper;
+import com.example.enarm360.config.ExamenPregeneracionProperties;
+import com.example.enarm360.dtos.ExamenDTO;
+import com.example.enarm360.dtos.ExamenPreguntaDTO;
+import com.example.enarm360.entities.Examen;
+import com.example.enarm360.repositories.ExamenRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+import java.util.stream.Collectors;
+
+/**
+ * Pool de exámenes ya generados para las configuraciones más pedidas de
+ * POST /api/examenes/generar.
+ *
+ * Es una cola respaldada por la BD: cada examen del pool ya está insertado (examen y sus
+ * preguntas, sin usuario) y en memoria solo queda la cola de IDs con su DTO mapeado.
+ * Un worker en segundo plano la rellena cuando hay poca carga; en la petición se saca uno
+ * de la cola en O(1) y se asigna al usuario con un solo UPDATE (asignarPregenerado), sin
+ * muestreo, INSERTs ni mapeo. Si el pool está vacío el controller usa la generación normal.
+ *
+ * Los exámenes se generan sin usuario, así que al entregarlos se saltan los que incluyen
+ * reactivos que el usuario ya vio (vuelven a la cola para otro); si no queda ninguno
+ * limpio, también se usa la generación normal. Métricas: examenes.pregeneracion{configuracion,
+ * resultado}; el tag configuracion solo toma los valores del top que tiene pool, lo demás
+ * cuenta como "otra".
+ *
+ * Mientras están en el pool, los exámenes llevan en el nombre el nodo que los generó
+ * (app.examenes.pregeneracion.nodo), y un examen no pasa más de vida-maxima-horas en el pool.
+ * Al arrancar, un nodo borra los que él dejó sin asignar y, de cualquier nodo, los que ya
+ * pasaron el doble de esa vida: no toca los pools vivos de los demás.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExamenPregeneracionService {
+
+    static final String NOMBRE_PREGENERADO = "Examen pregenerado";
+    static final String CONFIGURACION_OTRA = "otra";
+
+    /**
+     * Configuración de generación. El orden de especialidades importa: define el orden
+     * de las preguntas en el examen.
+     */
+    record Configuracion(List<Long> especialidades, int numReactivos) {
+        static Configuracion of(List<Long> especialidades, int numReactivos) {
+            return new Configuracion(especialidades == null ? List.of() : List.copyOf(especialidades), numReactivos);
+        }
+
+        String etiqueta() {
+            return especialidades.stream().map(String::valueOf).collect(Collectors.joining(",")) + "x" + numReactivos;
+        }
+    }
+
+    private record Pregenerado(Long examenId, ExamenDTO dto, long[] reactivos, long generadoEn) {
+        static Pregenerado of(ExamenDTO dto) {
+            long[] reactivos = dto.getPreguntas() == null ? new long[0]
+                    : dto.getPreguntas().stream().map(ExamenPreguntaDTO::getReactivoId)
+                        .filter(Objects::nonNull).mapToLong(Long::longValue).toArray();
+            return new Pregenerado(dto.getId(), dto, reactivos, System.nanoTime());
+        }
+
+        boolean incluyeAlguno(LongPredicate vistos) {
+            for (long id : reactivos) {
+                if (vistos.test(id)) return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class Pool {
+        final Queue<Pregenerado> cola = new ConcurrentLinkedQueue<>();
+        final AtomicInteger tamano = new AtomicInteger();
+    }
+
+    private final ExamenService examenService;
+    private final ExamenRepository examenDao;
+    private final ReactivoVistoService reactivosVistos;
+    private final ExamenPregeneracionProperties props;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Configuracion, Pool> pools = new ConcurrentHashMap<>();
+    private final Map<Configuracion, AtomicLong> demanda = new ConcurrentHashMap<>();
+    private final AtomicInteger solicitudesDesdeUltimoCiclo = new AtomicInteger();
+
+    // ==========================================================
+    // ENTREGA
+    // ==========================================================
+
+    /**
+     * Entrega un examen pregenerado para la configuración, o vacío si no hay.
+     */
+    public Optional<ExamenDTO> tomar(List<Long> especialidades, int numReactivos, Long usuarioId) {
+        if (!props.isEnabled()) return Optional.empty();
+
+        Configuracion config = Configuracion.of(especialidades, numReactivos);
+        demanda.computeIfAbsent(config, k -> new AtomicLong()).incrementAndGet();
+        solicitudesDesdeUltimoCiclo.incrementAndGet();
+
+        Pool pool = pools.get(config);
+        if (pool == null || pool.cola.isEmpty()) {
+            contador(config, "miss").increment();
+            return Optional.empty();
+        }
+
+        // Se revisan a lo más los que había: uno con reactivos ya vistos vuelve a la cola
+        LongPredicate vistos = reactivosVistos.vistos(usuarioId);
+        Pregenerado p;
+        for (int restantes = pool.tamano.get(); restantes > 0 && (p = pool.cola.poll()) != null; restantes--) {
+            if (p.incluyeAlguno(vistos)) {
+                pool.cola.add(p);
+                continue;
+            }
+            pool.tamano.decrementAndGet();
+            LocalDateTime ahora = LocalDateTime.now();
+            if (examenDao.asignarPregenerado(p.examenId(), usuarioId, ahora, ExamenService.NOMBRE_GENERADO) == 1) {
+                contador(config, "hit").increment();
+                return Optional.of(copiaAsignada(p.dto(), ahora));
+            }
+            // Alguien lo borró o asignó por fuera; se intenta con el siguiente
+        }
+
+        contador(config, "miss").increment();
+        return Optional.empty();
+    }
+
+    private static ExamenDTO copiaAsignada(ExamenDTO dto, LocalDateTime creadoEn) {
+        return ExamenDTO.builder()
+                .id(dto.getId())
+                .nombre(ExamenService.NOMBRE_GENERADO)
+                .descripcion(dto.getDescripcion())
+                .creadoEn(creadoEn)
+                .tiempoLimiteMin(dto.getTiempoLimiteMin())
+                .preguntas(dto.getPreguntas())
+                .build();
+    }
+
+    // Cardinalidad acotada: cada configuración pedida por un cliente no crea su propia serie
+    private Counter contador(Configuracion config, String resultado) {
+        return Counter.builder("examenes.pregeneracion")
+                .description("Solicitudes de generación atendidas (hit) o no (miss) por el pool")
+                .tag("configuracion", pools.containsKey(config) ? config.etiqueta() : CONFIGURACION_OTRA)
+                .tag("resultado", resultado)
+                .register(meterRegistry);
+    }
+
+    // ==========================================================
+    // RELLENO EN SEGUNDO PLANO
+    // ==========================================================
+
+    @Scheduled(fixedDelayString = "${app.examenes.pregeneracion.intervalo-ms:30000}")
+    public void rellenar() {
+        if (!props.isEnabled()) return;
+
+        int carga = solicitudesDesdeUltimoCiclo.getAndSet(0);
+        if (carga > props.getCargaMaxima()) {
+            log.debug("Pregeneración pospuesta: {} solicitudes desde el último ciclo", carga);
+            return;
+        }
+
+        List<Configuracion> top = masPedidas();
+        descartarFueraDelTop(Set.copyOf(top));
+        descartarVencidos();
+
+        int generados = 0;
+        for (Configuracion config : top) {
+            Pool pool = pools.computeIfAbsent(config, k -> new Pool());
+            while (pool.tamano.get() < props.getTamanoPorConfiguracion() && generados < props.getMaxPorCiclo()) {
+                try {
+                    Examen examen = examenService.generarExamen(
+                            config.especialidades(), config.numReactivos(), null, nombreEnPool());
+                    pool.cola.add(Pregenerado.of(ExamenMapper.toDTO(examen)));
+                    pool.tamano.incrementAndGet();
+                    generados++;
+                } catch (Exception e) {
+                    log.error("Error al pregenerar examen {}", config.etiqueta(), e);
+                    break;
+                }
+            }
+        }
+
+        // La demanda decae para que el top siga lo que se pide ahora
+        demanda.values().forEach(d -> d.updateAndGet(v -> v / 2));
+        demanda.values().removeIf(d -> d.get() == 0);
+        if (generados > 0) log.info("Pregenerados {} exámenes", generados);
+    }
+
+    private List<Configuracion> masPedidas() {
+        return demanda.entrySet().stream()
+                .filter(e -> e.getKey().numReactivos() > 0 && !e.getKey().especialidades().isEmpty())
+                .sorted(Map.Entry.<Configuracion, AtomicLong>comparingByValue(
+                        Comparator.comparingLong(AtomicLong::get)).reversed())
+                .limit(props.getMaxConfiguraciones())
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    // Mantiene el pool acotado: las configuraciones que salen del top devuelven sus exámenes
+    private void descartarFueraDelTop(Set<Configuracion> top) {
+        for (Configuracion config : new ArrayList<>(pools.keySet())) {
+            if (top.contains(config)) continue;
+            Pool pool = pools.remove(config);
+            List<Long> ids = new ArrayList<>();
+            Pregenerado p;
+            while ((p = pool.cola.poll()) != null) ids.add(p.examenId());
+            borrarSinAsignar(ids);
+            meterRegistry.find("examenes.pregeneracion").tag("configuracion", config.etiqueta()).meters()
+                    .forEach(meterRegistry::remove);
+        }
+    }
+
+    // Se recorre la cola completa: los que tomar devolvió quedan detrás de otros más nuevos
+    private void descartarVencidos() {
+        long limite = System.nanoTime() - TimeUnit.HOURS.toNanos(props.getVidaMaximaHoras());
+        List<Long> ids = new ArrayList<>();
+        for (Pool pool : pools.values()) {
+            for (Pregenerado p : pool.cola) {
+                if (p.generadoEn() < limite && pool.cola.remove(p)) {
+                    pool.tamano.decrementAndGet();
+                    ids.add(p.examenId());
+                }
+            }
+        }
+        borrarSinAsignar(ids);
+    }
+
+    private String nombreEnPool() {
+        String nodo = props.getNodo() == null || props.getNodo().isBlank() ? "local" : props.getNodo().trim();
+        return NOMBRE_PREGENERADO + " " + (nodo.length() > 64 ? nodo.substring(0, 64) : nodo);
+    }
+
+    // ==========================================================
+    // LIMPIEZA
+    // ==========================================================
+
+    /**
+     * Las filas del pool sobreviven a un reinicio pero la cola en memoria no: al arrancar se
+     * borran los pregenerados que este nodo dejó sin asignar y los de cualquier nodo que ya
+     * no pueden estar en un pool vivo por su edad.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void limpiarHuerfanos() {
+        try {
+            List<Examen> propios = examenDao.findByCreadoPorIsNullAndNombre(nombreEnPool());
+            LocalDateTime limite = LocalDateTime.now().minusHours(2L * props.getVidaMaximaHoras());
+            List<Examen> viejos = examenDao.findByCreadoPorIsNullAndNombreStartingWithAndCreadoEnBefore(
+                    NOMBRE_PREGENERADO, limite);
+            Map<Long, Examen> huerfanos = new LinkedHashMap<>();
+            propios.forEach(e -> huerfanos.put(e.getId(), e));
+            viejos.forEach(e -> huerfanos.putIfAbsent(e.getId(), e));
+            if (!huerfanos.isEmpty()) {
+                examenDao.deleteAll(huerfanos.values());
+                log.info("Eliminados {} exámenes pregenerados sin asignar ({} de este nodo)",
+                        huerfanos.size(), propios.size());
+            }
+        } catch (Exception e) {
+            log.error("Error al limpiar exámenes pregenerados", e);
+        }
+    }
+
+    private void borrarSinAsignar(List<Long> ids) {
+        if (ids.isEmpty()) return;
+        try {
+            List<Examen> examenes = examenDao.findAllById(ids).stream()
+                    .filter(e -> e.getCreadoPor() == null && nombreEnPool().equals(e.getNombre()))
+                    .toList();
+            examenDao.deleteAll(examenes);
+        } catch (Exception e) {
+            log.error("Error al descartar exámenes pregenerados", e);
+        }
+    }
+}
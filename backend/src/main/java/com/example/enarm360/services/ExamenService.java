@@ -3,17 +3,37 @@ package com.example.enarm360.services;
 import com.example.enarm360.Mappers.ExamenMapper;
 import com.example.enarm360.Mappers.IntentoExamenMapper;
 import com.example.enarm360.dtos.ExamenDTO;
+import com.example.enarm360.dtos.ExamenManifestDTO;
+import com.example.enarm360.dtos.ExamenPreguntaDTO;
+import com.example.enarm360.dtos.ExamenPreguntaRefDTO;
+import com.example.enarm360.dtos.ExamenSeccionDTO;
+import com.example.enarm360.dtos.GenerarExamenBlueprintRequest;
+import com.example.enarm360.dtos.GenerarRepasoRequest;
 import com.example.enarm360.dtos.IntentoExamenDTO;
+import com.example.enarm360.dtos.IntentoEstadoDTO;
 import com.example.enarm360.dtos.IntentoPreguntaDTO;
+import com.example.enarm360.dtos.IntentoReanudarDTO;
+import com.example.enarm360.dtos.ReactivoTiempoDTO;
 import com.example.enarm360.entities.*;
 import com.example.enarm360.repositories.*;
+import com.example.enarm360.services.IntentoRespuestaWriter.RespuestaPendiente;
+import com.example.enarm360.services.ReactivoSamplingIndex.Celda;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -26,25 +46,102 @@ public class ExamenService {
     private final IntentoPreguntaRepository intentoPreguntaDao;
     private final OpcionRespuestaRepository opcionRespuestaDao;
     private final PreguntaRepository preguntaDao;
+    private final ReactivoSamplingIndex reactivoSampler;
+    private final ExamBlueprintPlanner blueprintPlanner;
+    private final RespuestaCorrectaIndex respuestasCorrectas;
+    private final IntentoSesionStore intentoSesiones;
+    private final IntentoCanalService intentoCanales;
+    private final IntentoRespuestaWriter respuestaWriter;
+    private final IntentoExpiracionService intentoExpiracion;
+    private final ReactivoTiempoHistogramas tiempoHistogramas;
+    private final ReactivoVistoService reactivosVistos;
+    private final RepasoService repasoService;
 
     // ==========================================================
     // GENERACIÓN DE EXÁMENES
     // ==========================================================
 
+    public static final String NOMBRE_GENERADO = "Examen generado";
+    public static final String NOMBRE_REPASO = "Examen de repaso";
+
    @Transactional
 public Examen generarExamen(List<Long> especialidadIds, int numReactivos, Long usuarioId) {
+    return generarExamen(especialidadIds, numReactivos, usuarioId, NOMBRE_GENERADO);
+}
+
+   @Transactional
+public Examen generarExamen(List<Long> especialidadIds, int numReactivos, Long usuarioId, String nombre) {
     Examen examen = Examen.builder()
-            .nombre("Examen generado")
+            .nombre(nombre)
             .descripcion("Examen con " + numReactivos + " reactivos")
             .creadoPor(usuarioId)
             .creadoEn(LocalDateTime.now())
             .build();
 
-    examen = examenDao.save(examen);
-
-    int orden = 1;
+    // Se prefieren reactivos que el usuario no ha respondido
+    LongPredicate vistos = reactivosVistos.vistos(usuarioId);
+    List<Long> ids = new ArrayList<>();
     for (Long espId : especialidadIds) {
-        List<Reactivo> reactivos = reactivoDao.findRandomByEspecialidad(espId, numReactivos);
+        for (long id : reactivoSampler.muestrear(Celda.of(espId), numReactivos, ThreadLocalRandom.current(), vistos)) {
+            ids.add(id);
+        }
+    }
+
+    return persistirExamen(examen, cargarEnOrden(ids));
+}
+
+    /**
+     * Genera un examen estratificado según el blueprint (especialidad → dificultad → clave).
+     * La composición se resuelve en memoria y los reactivos se cargan en una sola consulta por ID.
+     */
+    @Transactional
+    public Examen generarExamenBlueprint(GenerarExamenBlueprintRequest request) {
+        long seed = request.getSeed() != null ? request.getSeed() : ThreadLocalRandom.current().nextLong();
+        List<Long> ids = blueprintPlanner.planificar(request, new SplittableRandom(seed),
+                reactivosVistos.vistos(request.getUsuarioId()));
+
+        Examen examen = Examen.builder()
+                .nombre("Examen por blueprint")
+                .descripcion("Examen con " + ids.size() + " reactivos (seed " + seed + ")")
+                .creadoPor(request.getUsuarioId())
+                .creadoEn(LocalDateTime.now())
+                .tiempoLimiteMin(request.getTiempoLimiteMin())
+                .build();
+
+        return persistirExamen(examen, cargarEnOrden(ids));
+    }
+
+    /**
+     * Examen de repaso con los reactivos vencidos del usuario en su cola de repaso
+     * espaciado, del más atrasado al más reciente. Se contesta y califica como cualquier
+     * examen; al finalizar el intento la cola se actualiza con los resultados.
+     */
+    @Transactional
+    public Examen generarExamenRepaso(GenerarRepasoRequest request) {
+        if (request.getUsuarioId() == null) {
+            throw new IllegalArgumentException("usuarioId es obligatorio");
+        }
+        if (request.getNumReactivos() <= 0) {
+            throw new IllegalArgumentException("numReactivos debe ser mayor a 0");
+        }
+        List<Long> ids = repasoService.vencidos(request.getUsuarioId(), request.getNumReactivos(), LocalDateTime.now());
+        if (ids.isEmpty()) {
+            throw new IllegalArgumentException("No hay reactivos pendientes de repaso");
+        }
+
+        Examen examen = Examen.builder()
+                .nombre(NOMBRE_REPASO)
+                .descripcion("Repaso de " + ids.size() + " reactivos")
+                .creadoPor(request.getUsuarioId())
+                .creadoEn(LocalDateTime.now())
+                .tiempoLimiteMin(request.getTiempoLimiteMin())
+                .build();
+
+        return persistirExamen(examen, cargarEnOrden(ids));
+    }
+
+    private Examen persistirExamen(Examen examen, List<Reactivo> reactivos) {
+        int orden = 1;
         for (Reactivo r : reactivos) {
             ExamenPregunta ep = ExamenPregunta.builder()
                     .examen(examen)
@@ -52,12 +149,32 @@ public Examen generarExamen(List<Long> especialidadIds, int numReactivos, Long u
                     .orden(orden++)
                     .puntaje(1.0)
                     .build();
-            examenPreguntaDao.save(ep);
+            examen.getExamenPreguntas().add(ep);
         }
+
+        // Un solo persist en cascada: los INSERT de examen_pregunta salen en batch al hacer flush
+        return examenDao.save(examen);
     }
 
-    return examen;
-}
+    /**
+     * Carga por llave primaria los IDs muestreados, respetando el orden del muestreo.
+     * Los IDs que ya no existen en BD se descartan y se sacan del índice.
+     */
+    private List<Reactivo> cargarEnOrden(List<Long> llaves) {
+        Map<Long, Reactivo> porId = reactivoDao.findAllById(llaves).stream()
+                .collect(Collectors.toMap(Reactivo::getId, Function.identity()));
+
+        List<Reactivo> resultado = new ArrayList<>(llaves.size());
+        for (Long id : llaves) {
+            Reactivo r = porId.get(id);
+            if (r != null) {
+                resultado.add(r);
+            } else {
+                reactivoSampler.quitar(id);
+            }
+        }
+        return resultado;
+    }
 
     // ==========================================================
     // INTENTOS
@@ -76,14 +193,20 @@ public IntentoExamen iniciarIntento(Long examenId, Long usuarioId) {
             .duracionSeg(0)
             .build();
 
-    return intentoExamenDao.save(intento);
+    intentoExamenDao.save(intento);
+    intentoSesiones.abrirNuevo(new IntentoEstadoDTO(intento.getId(), examenId, intento.getIniciadoEn(),
+            null, intento.getExamen().getTiempoLimiteMin(), usuarioId));
+    intentoExpiracion.programar(intento.getId(), intento.getIniciadoEn(), intento.getExamen().getTiempoLimiteMin());
+    return intento;
 }
 
  
     @Transactional
     public IntentoPregunta responderPregunta(Long intentoId, Long preguntaId, Long opcionId) {
-        IntentoExamen intento = intentoExamenDao.findById(intentoId)
-                .orElseThrow(() -> new RuntimeException("Intento no encontrado con id " + intentoId));
+        IntentoExamen intento = intentoExamenDao.findAbiertoById(intentoId)
+                .orElseThrow(() -> intentoExamenDao.existsById(intentoId)
+                        ? new IllegalArgumentException("El intento ya fue finalizado")
+                        : new RuntimeException("Intento no encontrado con id " + intentoId));
 
         Pregunta pregunta = preguntaDao.findById(preguntaId)
                 .orElseThrow(() -> new RuntimeException("Pregunta no encontrada con id " + preguntaId));
@@ -103,55 +226,97 @@ public IntentoExamen iniciarIntento(Long examenId, Long usuarioId) {
                 .tiempoSeg(0)
                 .build();
 
-        return intentoPreguntaDao.save(intentoPregunta);
+        intentoPregunta = intentoPreguntaDao.save(intentoPregunta);
+        // Las preguntas no tienen fila en examen_pregunta: valen 1.0, como en calcularMarcador
+        intentoExamenDao.sumarMarcador(intentoId, correcta ? 1 : 0, correcta ? 0 : 1, correcta ? 1.0 : 0.0);
+        return intentoPregunta;
     }
 
-    @Transactional
-public IntentoPregunta responderReactivo(Long intentoId, Long reactivoId, String respuesta) {
-    IntentoExamen intento = intentoExamenDao.findById(intentoId)
-            .orElseThrow(() -> new RuntimeException("Intento no encontrado con id " + intentoId));
-
-    Reactivo reactivo = reactivoDao.findById(reactivoId)
-            .orElseThrow(() -> new RuntimeException("Reactivo no encontrado con id " + reactivoId));
-
-    boolean correcta = reactivo.getRespuestaCorrecta().equalsIgnoreCase(respuesta);
+    /**
+     * Responde desde la sesión en memoria del intento; la escritura a intento_pregunta
+     * depende de app.intentos.durabilidad. Con secuencia, un reintento no cambia nada.
+     */
+public IntentoPreguntaDTO responderReactivo(Long intentoId, Long reactivoId, String respuesta, Long secuencia) {
+    return intentoSesiones.responder(intentoId, reactivoId, respuesta, secuencia);
+}
 
-    // 🔹 calcular orden dinámicamente
-    int orden = intentoPreguntaDao.countByIntentoExamenId(intentoId) + 1;
+    /**
+     * El cliente avisa que muestra un reactivo; sirve para medir el tiempo por pregunta.
+     */
+public void registrarVista(Long intentoId, Long reactivoId) {
+    intentoSesiones.vista(intentoId, reactivoId);
+}
 
-    IntentoPregunta intentoPregunta = IntentoPregunta.builder()
-            .intentoExamen(intento)
-            .reactivo(reactivo)
-            .enunciadoSnap(reactivo.getPregunta())
-            .explicacionSnap(reactivo.getRetroalimentacion())
-            .correcta(correcta)
-            .respondida(true)
-            .orden(orden)
-            .tiempoSeg(0)
-            .build();
+    /**
+     * Estado para retomar un intento, servido desde la sesión en memoria.
+     */
+public IntentoReanudarDTO reanudarIntento(Long intentoId) {
+    return intentoSesiones.reanudar(intentoId);
+}
 
-    return intentoPreguntaDao.save(intentoPregunta);
+@Transactional(readOnly = true)
+public ReactivoTiempoDTO getTiemposReactivo(Long reactivoId) {
+    return tiempoHistogramas.resumen(reactivoId);
 }
 @Transactional
 public IntentoExamenDTO finalizarIntento(Long intentoId) {
+    LocalDateTime ahora = LocalDateTime.now();
+    // Desde aquí la sesión rechaza respuestas; lo que seguía en memoria se escribe antes
+    intentoSesiones.finalizar(intentoId, ahora);
+    intentoExpiracion.cancelar(intentoId);
+
+    // Puede llegar dos veces (el alumno y el temporizador, o dos nodos): el UPDATE condicional
+    // bloquea la fila y solo el primero lo ve cambiar; los demás devuelven el resultado ya guardado
+    boolean primero = intentoExamenDao.marcarFinalizado(intentoId, ahora) == 1;
+    // Los canales en vivo del intento ya no tienen qué recibir
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+            intentoCanales.cerrarIntento(intentoId);
+        }
+    });
     IntentoExamen intento = intentoExamenDao.findById(intentoId)
             .orElseThrow(() -> new RuntimeException("Intento no encontrado"));
+    if (!primero) {
+        return IntentoExamenMapper.toDTO(intento);
+    }
 
-    long correctas = intento.getPreguntas().stream().filter(IntentoPregunta::isCorrecta).count();
-    long incorrectas = intento.getPreguntas().stream()
-                              .filter(ip -> ip.isRespondida() && !ip.isCorrecta())
-                              .count();
-    long enBlanco = intento.getPreguntas().stream()
-                           .filter(ip -> !ip.isRespondida())
-                           .count();
+    // El marcador sale de las respuestas escritas con una sola consulta: cuenta también los
+    // intentos que ya tenían respuestas antes de que existiera el marcador incremental
+    Object[] marcador = intentoPreguntaDao.calcularMarcador(intentoId).get(0);
+    int correctas = ((Number) marcador[0]).intValue();
+    int incorrectas = ((Number) marcador[1]).intValue();
+    intento.setCorrectas(correctas);
+    intento.setIncorrectas(incorrectas);
+    intento.setPuntajeTotal(((Number) marcador[2]).doubleValue());
+
+    if (intento.getIniciadoEn() != null) {
+        long duracion = java.time.Duration.between(intento.getIniciadoEn(), ahora).getSeconds();
+        Integer limiteMin = intento.getExamen().getTiempoLimiteMin();
+        if (limiteMin != null && limiteMin > 0) duracion = Math.min(duracion, limiteMin * 60L);
+        intento.setDuracionSeg((int) Math.max(0, duracion));
+    }
 
-    intento.setCorrectas((int) correctas);
-    intento.setIncorrectas((int) incorrectas);
-    intento.setEnBlanco((int) enBlanco);
-    intento.setFinalizadoEn(java.time.LocalDateTime.now());
+    int totalPreguntas = examenPreguntaDao.countByExamen_Id(intento.getExamen().getId());
+    intento.setEnBlanco(Math.max(0, totalPreguntas - correctas - incorrectas));
 
     intentoExamenDao.save(intento);
 
+    // Los reactivos fallados entran a la cola de repaso (y los repasados avanzan) al confirmar
+    if (intento.getUsuario() != null) {
+        Long usuarioId = intento.getUsuario().getId();
+        Map<Long, Boolean> resultados = new HashMap<>();
+        for (Object[] f : intentoPreguntaDao.findRespuestasByIntentoId(intentoId)) {
+            resultados.put((Long) f[0], Boolean.TRUE.equals(f[3]));
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                repasoService.registrarResultados(usuarioId, resultados);
+            }
+        });
+    }
+
     return IntentoExamenMapper.toDTO(intento);
 }
 
@@ -170,21 +335,77 @@ public IntentoExamenDTO finalizarIntento(Long intentoId) {
 
   @Transactional(readOnly = true)
 public Examen getExamenConReactivos(Long examenId) {
-    Examen examen = examenDao.findById(examenId)
+    // examenPreguntas → reactivo ya vienen inicializados por el entity graph
+    return examenDao.findConReactivosById(examenId)
             .orElseThrow(() -> new RuntimeException("Examen no encontrado con id " + examenId));
-
-    // Inicializar la relación examenPreguntas → reactivo
-    examen.getExamenPreguntas().forEach(ep -> ep.getReactivo().getId());
-
-    return examen;
 }
 @Transactional(readOnly = true)
 public ExamenDTO getExamenDTO(Long examenId) {
     Examen examen = examenDao.findById(examenId)
             .orElseThrow(() -> new RuntimeException("Examen no encontrado"));
-    return ExamenMapper.toDTO(examen); // ✅ delega al mapper
+    // 2 SELECT en total sin importar cuántas preguntas tenga (antes: 1 por reactivo)
+    return ExamenMapper.toDTO(examen, examenPreguntaDao.findPreguntasDTOByExamenId(examenId));
 }
 
+    // ==========================================================
+    // ENTREGA POR SECCIONES
+    // ==========================================================
+
+    public static final int MAX_PREGUNTAS_POR_SECCION = 100;
+
+    @Transactional(readOnly = true)
+    public ExamenManifestDTO getManifest(Long examenId, int tamanoSeccion) {
+        if (tamanoSeccion < 1 || tamanoSeccion > MAX_PREGUNTAS_POR_SECCION) {
+            throw new IllegalArgumentException("tamanoSeccion debe estar entre 1 y " + MAX_PREGUNTAS_POR_SECCION);
+        }
+        Examen examen = examenDao.findById(examenId)
+                .orElseThrow(() -> new RuntimeException("Examen no encontrado"));
+        List<ExamenPreguntaRefDTO> refs = examenPreguntaDao.findRefsByExamenId(examenId);
+
+        List<ExamenManifestDTO.Seccion> secciones = new ArrayList<>();
+        for (int i = 0; i < refs.size(); i += tamanoSeccion) {
+            int fin = Math.min(i + tamanoSeccion, refs.size()) - 1;
+            secciones.add(new ExamenManifestDTO.Seccion(
+                    secciones.size(), refs.get(i).getOrden(), refs.get(fin).getOrden()));
+        }
+
+        return ExamenManifestDTO.builder()
+                .id(examen.getId())
+                .nombre(examen.getNombre())
+                .descripcion(examen.getDescripcion())
+                .creadoEn(examen.getCreadoEn())
+                .tiempoLimiteMin(examen.getTiempoLimiteMin())
+                .totalPreguntas(refs.size())
+                .tamanoSeccion(tamanoSeccion)
+                .preguntas(refs)
+                .secciones(secciones)
+                .build();
+    }
+
+    @Transactional(readOnly = true)
+    public ExamenSeccionDTO getSeccion(Long examenId, int desde, int limite) {
+        if (desde < 1 || limite < 1 || limite > MAX_PREGUNTAS_POR_SECCION) {
+            throw new IllegalArgumentException("desde debe ser >= 1 y limite entre 1 y " + MAX_PREGUNTAS_POR_SECCION);
+        }
+        int total = examenPreguntaDao.countByExamen_Id(examenId);
+        if (total == 0 && !examenDao.existsById(examenId)) {
+            throw new RuntimeException("Examen no encontrado");
+        }
+
+        int hasta = desde + limite - 1;
+        List<ExamenPreguntaDTO> preguntas =
+                examenPreguntaDao.findPreguntasDTOByExamenIdAndOrdenBetween(examenId, desde, hasta);
+
+        return ExamenSeccionDTO.builder()
+                .examenId(examenId)
+                .desde(desde)
+                .hasta(Math.min(hasta, Math.max(total, desde)))
+                .totalPreguntas(total)
+                .siguienteDesde(hasta < total ? hasta + 1 : null)
+                .preguntas(preguntas)
+                .build();
+    }
+
 @Transactional(readOnly = true)
 public List<IntentoPreguntaDTO> getRespuestasDeIntento(Long intentoId) {
     List<IntentoPregunta> respuestas = intentoPreguntaDao.findByIntentoExamenId(intentoId);
@@ -195,37 +416,25 @@ public List<IntentoPreguntaDTO> getRespuestasDeIntento(Long intentoId) {
 
 @Transactional
 public void guardarRespuestas(Long intentoId, Map<Long, String> respuestas) {
-    IntentoExamen intento = intentoExamenDao.findById(intentoId)
+    IntentoEstadoDTO estado = intentoExamenDao.findEstadoById(intentoId)
             .orElseThrow(() -> new RuntimeException("Intento no encontrado"));
 
-    respuestas.forEach((reactivoId, letraRespuesta) -> {
-        IntentoPregunta ip = intentoPreguntaDao
-                .findByIntentoExamenIdAndReactivoId(intentoId, reactivoId)
-                .orElseGet(() -> {
-                    Reactivo reactivo = reactivoDao.findById(reactivoId)
-                            .orElseThrow(() -> new RuntimeException("Reactivo no encontrado"));
-
-                    // 👇 aquí seteo snapshots para que no sean null
-                    return IntentoPregunta.builder()
-                            .intentoExamen(intento)
-                            .reactivo(reactivo)
-                            .orden(reactivo.getId().intValue()) // o el campo orden real
-                            .enunciadoSnap(reactivo.getPregunta())
-                            .explicacionSnap(reactivo.getRetroalimentacion())
-                            .build();
-                });
-
-        ip.setRespuesta(letraRespuesta);
-        ip.setRespondida(true);
-
-        // marcar si es correcta
-        boolean esCorrecta = ip.getReactivo()
-                .getRespuestaCorrecta()
-                .equalsIgnoreCase(letraRespuesta);
-        ip.setCorrecta(esCorrecta);
-
-        intentoPreguntaDao.save(ip);
-    });
+    // El lote manda sobre lo que la sesión tenga en memoria
+    intentoSesiones.cerrar(intentoId);
+
+    // Un SELECT de filas existentes, uno de snapshots faltantes y el upsert en batch
+    List<RespuestaPendiente> lote = new ArrayList<>(respuestas.size());
+    respuestas.forEach((reactivoId, letraRespuesta) -> lote.add(new RespuestaPendiente(
+            reactivoId,
+            letraRespuesta,
+            respuestasCorrectas.esCorrecta(reactivoId, letraRespuesta),
+            reactivoId.intValue(),    // o el campo orden real
+            null,
+            null)));
+    if (!respuestaWriter.upsert(intentoId, lote)) {
+        throw new IllegalArgumentException("El intento ya fue finalizado");
+    }
+    respuestas.keySet().forEach(reactivoId -> reactivosVistos.marcar(estado.getUsuarioId(), reactivoId));
 }
 
 
@@ -0,0 +1,307 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.config.IntentoSesionProperties;
+import com.example.enarm360.dtos.IntentoPreguntaDTO;
+import com.example.enarm360.dtos.RespuestaFrameDTO;
+import com.example.enarm360.security.PermisosVersionStore;
+import com.example.enarm360.security.UserDetailsImpl;
+import com.example.enarm360.security.UsuarioActual;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Canal persistente por intento para simulacros en vivo.
+ *
+ * El cliente abre un stream SSE una sola vez (con su JWT) y recibe un token de canal.
+ * Solo el dueño del intento puede abrirlo. Como EventSource del navegador no manda
+ * cabeceras, hay dos formas de abrir el stream: con fetch y Authorization (leyendo el body
+ * como stream), o pidiendo antes con el JWT un ticket de un solo uso que vence en
+ * app.intentos.canal-ticket-ms y abriendo new EventSource(url + "?ticket=...").
+ * Después manda las respuestas en frames (uno o varios por POST) con ese token: no se
+ * vuelve a parsear el JWT, no se carga el usuario y no se abre transacción (las respuestas
+ * van a IntentoSesionStore). Las confirmaciones salen por el stream agrupadas cada
+ * app.intentos.canal-ack-ms.
+ *
+ * El tick de confirmaciones corre en el scheduler compartido pero no escribe en los
+ * streams: cada envío (bloqueante si el cliente lee lento) va a un pool propio de
+ * app.intentos.canal-envio-hilos, con a lo sumo un envío en curso por canal.
+ *
+ * El token de canal no sobrevive a lo que lo respalda: cada lote de frames vuelve a validar
+ * en memoria (PermisosVersionStore) que el usuario siga activo y con la versión de permisos
+ * del JWT con que abrió el canal, y los canales se cierran al finalizar el intento y al
+ * cerrar sesión.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IntentoCanalService {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final long PING_NANOS = TimeUnit.SECONDS.toNanos(15);
+
+    private final IntentoSesionStore intentoSesiones;
+    private final IntentoSesionProperties props;
+    private final UsuarioActual usuarioActual;
+    private final PermisosVersionStore permisosVersionStore;
+
+    private final Map<String, Canal> canales = new ConcurrentHashMap<>();
+    private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+    private ExecutorService envios;
+
+    private record Ticket(Long intentoId, Long usuarioId, long permisosVersion, long vence) { }
+
+    private static final class Canal {
+        final Long intentoId;
+        final Long usuarioId;
+        final long permisosVersion;
+        final String token;
+        final SseEmitter emitter;
+        final Queue<Map<String, Object>> acks = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean enviando = new AtomicBoolean();
+        volatile long ultimoEnvio = System.nanoTime();
+
+        Canal(Long intentoId, Long usuarioId, long permisosVersion, String token, SseEmitter emitter) {
+            this.intentoId = intentoId;
+            this.usuarioId = usuarioId;
+            this.permisosVersion = permisosVersion;
+            this.token = token;
+            this.emitter = emitter;
+        }
+    }
+
+    @PostConstruct
+    void iniciar() {
+        AtomicInteger hilos = new AtomicInteger();
+        envios = Executors.newFixedThreadPool(props.getCanalEnvioHilos(), r -> {
+            Thread t = new Thread(r, "canal-envio-" + hilos.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void detener() {
+        envios.shutdownNow();
+    }
+
+    // ==========================================================
+    // APERTURA
+    // ==========================================================
+
+    /**
+     * Abre el canal con el JWT de la petición (cliente fetch con Authorization).
+     */
+    public SseEmitter abrir(Long intentoId) {
+        UserDetailsImpl principal = usuarioActual.principal();
+        verificarDueno(intentoId, principal.getId());
+        return abrir(intentoId, principal.getId(), principal.getPermisosVersion());
+    }
+
+    /**
+     * Ticket de un solo uso para abrir el stream con EventSource, que no puede mandar el JWT.
+     */
+    public String emitirTicket(Long intentoId) {
+        UserDetailsImpl principal = usuarioActual.principal();
+        verificarDueno(intentoId, principal.getId());
+
+        long ahora = System.nanoTime();
+        tickets.values().removeIf(t -> t.vence() - ahora < 0);
+        String ticket = nuevoToken();
+        tickets.put(ticket, new Ticket(intentoId, principal.getId(), principal.getPermisosVersion(),
+                ahora + TimeUnit.MILLISECONDS.toNanos(props.getCanalTicketMs())));
+        return ticket;
+    }
+
+    /**
+     * Abre el canal con un ticket de emitirTicket; se consume aunque no sea válido.
+     */
+    public SseEmitter abrirConTicket(Long intentoId, String ticket) {
+        Ticket t = ticket == null ? null : tickets.remove(ticket);
+        if (t == null || !t.intentoId().equals(intentoId) || t.vence() - System.nanoTime() < 0
+                || !permisosVersionStore.vigente(t.usuarioId(), t.permisosVersion())) {
+            throw new IllegalArgumentException("Ticket de canal no válido o vencido");
+        }
+        return abrir(intentoId, t.usuarioId(), t.permisosVersion());
+    }
+
+    private void verificarDueno(Long intentoId, Long usuarioId) {
+        // Valida que el intento exista y deja su sesión en memoria antes de aceptar frames
+        if (!usuarioId.equals(intentoSesiones.usuarioId(intentoId))) {
+            throw new AccessDeniedException("El intento no pertenece al usuario");
+        }
+    }
+
+    private SseEmitter abrir(Long intentoId, Long usuarioId, long permisosVersion) {
+        String token = nuevoToken();
+        SseEmitter emitter = new SseEmitter(props.getCanalTimeoutMs());
+        Canal canal = new Canal(intentoId, usuarioId, permisosVersion, token, emitter);
+        emitter.onCompletion(() -> canales.remove(token));
+        emitter.onTimeout(() -> canales.remove(token));
+        emitter.onError(e -> canales.remove(token));
+        canales.put(token, canal);
+
+        try {
+            emitter.send(SseEmitter.event().name("canal").data(Map.of("intentoId", intentoId, "token", token)));
+        } catch (IOException e) {
+            canales.remove(token);
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    private static String nuevoToken() {
+        byte[] bytes = new byte[24];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    public boolean valido(Long intentoId, String token) {
+        return vigente(intentoId, token) != null;
+    }
+
+    /**
+     * El canal del token si es de ese intento y su usuario sigue vigente; si no, null (y un
+     * canal revocado se cierra).
+     */
+    private Canal vigente(Long intentoId, String token) {
+        Canal c = token == null ? null : canales.get(token);
+        if (c == null || !c.intentoId.equals(intentoId)) return null;
+        if (!permisosVersionStore.vigente(c.usuarioId, c.permisosVersion)) {
+            log.debug("Canal del intento {} revocado: permisos o estado del usuario cambiaron", intentoId);
+            cerrar(c);
+            return null;
+        }
+        return c;
+    }
+
+    // ==========================================================
+    // CIERRE
+    // ==========================================================
+
+    /**
+     * Cierra los canales del intento (al finalizarlo).
+     */
+    public void cerrarIntento(Long intentoId) {
+        for (Canal c : canales.values()) {
+            if (c.intentoId.equals(intentoId)) cerrar(c);
+        }
+    }
+
+    /**
+     * Cierra los canales del usuario (al cerrar sesión).
+     */
+    public void cerrarUsuario(Long usuarioId) {
+        for (Canal c : canales.values()) {
+            if (c.usuarioId.equals(usuarioId)) cerrar(c);
+        }
+    }
+
+    private void cerrar(Canal c) {
+        if (canales.remove(c.token, c)) c.emitter.complete();
+    }
+
+    // ==========================================================
+    // FRAMES
+    // ==========================================================
+
+    /**
+     * Aplica los frames en orden. Los errores de un frame se confirman como rechazo sin
+     * detener los demás. Devuelve cuántos frames se aceptaron.
+     */
+    public int recibir(Long intentoId, String token, List<RespuestaFrameDTO> frames) {
+        Canal canal = vigente(intentoId, token);
+        if (canal == null) {
+            throw new IllegalArgumentException("Canal no válido para el intento " + intentoId);
+        }
+
+        int aceptados = 0;
+        for (RespuestaFrameDTO f : frames) {
+            Map<String, Object> ack = new LinkedHashMap<>();
+            ack.put("seq", f.getSeq());
+            ack.put("reactivoId", f.getReactivoId());
+            try {
+                if ("vista".equalsIgnoreCase(f.getTipo())) {
+                    intentoSesiones.vista(intentoId, f.getReactivoId());
+                    ack.put("ok", true);
+                } else {
+                    IntentoPreguntaDTO r = intentoSesiones.responder(intentoId, f.getReactivoId(), f.getRespuesta(), f.getSeq());
+                    ack.put("ok", true);
+                    ack.put("correcta", r.isCorrecta());
+                    ack.put("orden", r.getOrden());
+                    ack.put("tiempoSeg", r.getTiempoSeg());
+                }
+                aceptados++;
+            } catch (Exception e) {
+                ack.put("ok", false);
+                ack.put("error", e.getMessage());
+            }
+            canal.acks.add(ack);
+        }
+        return aceptados;
+    }
+
+    // ==========================================================
+    // CONFIRMACIONES
+    // ==========================================================
+
+    @Scheduled(fixedDelayString = "${app.intentos.canal-ack-ms:100}")
+    public void enviarAcks() {
+        long ahora = System.nanoTime();
+        for (Canal c : canales.values()) {
+            if (c.acks.isEmpty() && ahora - c.ultimoEnvio <= PING_NANOS) continue;
+            // Un cliente lento no acumula envíos: lo nuevo sale en el siguiente tick
+            if (!c.enviando.compareAndSet(false, true)) continue;
+            try {
+                envios.execute(() -> enviar(c));
+            } catch (RuntimeException e) {
+                c.enviando.set(false);   // pool detenido al apagar
+            }
+        }
+    }
+
+    private void enviar(Canal c) {
+        try {
+            List<Map<String, Object>> lote = new ArrayList<>();
+            Map<String, Object> ack;
+            while ((ack = c.acks.poll()) != null) lote.add(ack);
+
+            long ahora = System.nanoTime();
+            if (!lote.isEmpty()) {
+                c.emitter.send(SseEmitter.event().name("ack").data(lote));
+                c.ultimoEnvio = ahora;
+            } else if (ahora - c.ultimoEnvio > PING_NANOS) {
+                // Evita que proxies corten el stream por inactividad
+                c.emitter.send(SseEmitter.event().comment("ping"));
+                c.ultimoEnvio = ahora;
+            }
+        } catch (Exception e) {
+            log.debug("Canal del intento {} cerrado: {}", c.intentoId, e.getMessage());
+            canales.remove(c.token, c);
+            c.emitter.completeWithError(e);
+        } finally {
+            c.enviando.set(false);
+        }
+    }
+}
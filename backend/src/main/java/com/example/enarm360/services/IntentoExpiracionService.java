@@ -0,0 +1,202 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.config.IntentoSesionProperties;
+import com.example.enarm360.repositories.IntentoExamenRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Finaliza solos los intentos de exámenes con tiempo límite cuando se les acaba el tiempo
+ * (iniciadoEn + tiempoLimiteMin + app.intentos.gracia-seg).
+ *
+ * Los vencimientos viven en una rueda de temporizadores con hash: programar y cancelar
+ * son O(1) y un solo job avanza la rueda cada tick, sin una tarea por intento. Lo vencido
+ * se finaliza en lotes de app.intentos.finalizacion-lote por tick. La rueda vive en
+ * memoria; al arrancar se reconstruye con los intentos abiertos de la BD.
+ *
+ * ExamenService programa y cancela aquí, por eso este servicio lo resuelve de forma diferida.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IntentoExpiracionService {
+
+    private final IntentoSesionProperties props;
+    private final IntentoExamenRepository intentoExamenDao;
+    private final ObjectProvider<ExamenService> examenService;
+    private final PlatformTransactionManager transactionManager;
+
+    private final Queue<Long> vencidos = new ConcurrentLinkedQueue<>();
+    private Rueda rueda;
+
+    @PostConstruct
+    void crearRueda() {
+        rueda = new Rueda(props.getTemporizadorRanuras(), TimeUnit.MILLISECONDS.toNanos(props.getTemporizadorTickMs()));
+    }
+
+    // ==========================================================
+    // PROGRAMACIÓN
+    // ==========================================================
+
+    /**
+     * Programa la finalización de un intento. Sin tiempo límite no hace nada.
+     */
+    public void programar(Long intentoId, LocalDateTime iniciadoEn, Integer tiempoLimiteMin) {
+        if (intentoId == null || iniciadoEn == null || tiempoLimiteMin == null || tiempoLimiteMin <= 0) return;
+        LocalDateTime vence = iniciadoEn.plusMinutes(tiempoLimiteMin).plusSeconds(props.getGraciaSeg());
+        long restanteNanos = Math.max(0, Duration.between(LocalDateTime.now(), vence).toNanos());
+        rueda.programar(intentoId, restanteNanos);
+    }
+
+    public void cancelar(Long intentoId) {
+        if (intentoId != null) rueda.cancelar(intentoId);
+    }
+
+    public int programados() {
+        return rueda.tamano();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconstruir() {
+        try {
+            TransactionTemplate tx = new TransactionTemplate(transactionManager);
+            tx.setReadOnly(true);
+            Integer total = tx.execute(status -> {
+                int n = 0;
+                try (Stream<Object[]> filas = intentoExamenDao.streamAbiertosConLimite()) {
+                    for (Object[] f : (Iterable<Object[]>) filas::iterator) {
+                        programar((Long) f[0], (LocalDateTime) f[1], (Integer) f[2]);
+                        n++;
+                    }
+                }
+                return n;
+            });
+            log.info("Temporizador de intentos reconstruido: {} intentos abiertos con tiempo límite", total);
+        } catch (Exception e) {
+            log.error("No se pudo reconstruir el temporizador de intentos", e);
+        }
+    }
+
+    // ==========================================================
+    // AVANCE Y FINALIZACIÓN
+    // ==========================================================
+
+    @Scheduled(fixedDelayString = "${app.intentos.temporizador-tick-ms:1000}")
+    public void avanzar() {
+        rueda.avanzar(System.nanoTime(), vencidos);
+
+        int finalizados = 0;
+        Long intentoId;
+        while (finalizados < props.getFinalizacionLote() && (intentoId = vencidos.poll()) != null) {
+            try {
+                examenService.getObject().finalizarIntento(intentoId);
+                finalizados++;
+            } catch (Exception e) {
+                log.error("No se pudo finalizar el intento vencido {}", intentoId, e);
+            }
+        }
+        if (finalizados > 0) log.info("Intentos finalizados por tiempo: {}", finalizados);
+    }
+
+    // ==========================================================
+    // RUEDA
+    // ==========================================================
+
+    /**
+     * Rueda de temporizadores con hash: cada ranura es una lista doblemente enlazada y
+     * cada entrada guarda cuántas vueltas completas le faltan. Un mapa por intento da la
+     * cancelación O(1).
+     */
+    private static final class Rueda {
+        private final Entrada[] ranuras;
+        private final int mask;
+        private final long tickNanos;
+        private final long inicio = System.nanoTime();
+        private final Map<Long, Entrada> porIntento = new HashMap<>();
+        private long tick;  // siguiente tick a procesar
+
+        Rueda(int ranuras, long tickNanos) {
+            int n = Integer.highestOneBit(Math.max(ranuras - 1, 1)) << 1;
+            this.ranuras = new Entrada[n];
+            this.mask = n - 1;
+            this.tickNanos = Math.max(tickNanos, 1);
+        }
+
+        synchronized void programar(long intentoId, long restanteNanos) {
+            cancelar(intentoId);
+            // Redondeo hacia arriba: nunca vence antes de tiempo. Lo más pronto es el siguiente tick
+            long destino = Math.max((System.nanoTime() - inicio + restanteNanos + tickNanos - 1) / tickNanos, tick);
+            Entrada e = new Entrada(intentoId, (destino - tick) / ranuras.length);
+            int i = (int) (destino & mask);
+            e.ranura = i;
+            e.siguiente = ranuras[i];
+            if (ranuras[i] != null) ranuras[i].anterior = e;
+            ranuras[i] = e;
+            porIntento.put(intentoId, e);
+        }
+
+        synchronized void cancelar(long intentoId) {
+            Entrada e = porIntento.remove(intentoId);
+            if (e != null) desenlazar(e);
+        }
+
+        synchronized int tamano() {
+            return porIntento.size();
+        }
+
+        synchronized void avanzar(long ahoraNanos, Queue<Long> vencidos) {
+            long hasta = (ahoraNanos - inicio) / tickNanos;
+            for (; tick <= hasta; tick++) {
+                Entrada e = ranuras[(int) (tick & mask)];
+                while (e != null) {
+                    Entrada siguiente = e.siguiente;
+                    if (e.vueltas == 0) {
+                        desenlazar(e);
+                        porIntento.remove(e.intentoId);
+                        vencidos.add(e.intentoId);
+                    } else {
+                        e.vueltas--;
+                    }
+                    e = siguiente;
+                }
+            }
+        }
+
+        private void desenlazar(Entrada e) {
+            if (e.anterior != null) e.anterior.siguiente = e.siguiente;
+            else ranuras[e.ranura] = e.siguiente;
+            if (e.siguiente != null) e.siguiente.anterior = e.anterior;
+            e.anterior = e.siguiente = null;
+        }
+    }
+
+    private static final class Entrada {
+        final long intentoId;
+        long vueltas;
+        int ranura;
+        Entrada anterior;
+        Entrada siguiente;
+
+        Entrada(long intentoId, long vueltas) {
+            this.intentoId = intentoId;
+            this.vueltas = vueltas;
+        }
+    }
+}
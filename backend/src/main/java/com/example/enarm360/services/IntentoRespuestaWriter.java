@@ -0,0 +1,138 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.dtos.ReactivoSnapshotDTO;
+import com.example.enarm360.entities.IntentoExamen;
+import com.example.enarm360.entities.IntentoPregunta;
+import com.example.enarm360.repositories.ExamenPreguntaRepository;
+import com.example.enarm360.repositories.IntentoExamenRepository;
+import com.example.enarm360.repositories.IntentoPreguntaRepository;
+import com.example.enarm360.repositories.ReactivoRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Escribe en lote las respuestas de un intento en intento_pregunta (upsert por reactivo).
+ *
+ * Costo fijo por lote: un SELECT de las filas existentes, un SELECT de snapshots para
+ * los reactivos nuevos, uno de puntajes, los INSERT/UPDATE agrupados en batch por
+ * Hibernate y un UPDATE del marcador del intento (correctas, incorrectas, puntajeTotal)
+ * con la diferencia que deja el lote.
+ *
+ * Antes de escribir toma el candado de la fila del intento y comprueba que siga abierto:
+ * un lote que llega después de finalizar (o que se cruza con la finalización) no escribe
+ * nada y upsert devuelve false. El candado también serializa los lotes del mismo intento
+ * entre nodos, así que dos lotes no pueden insertar el mismo reactivo a la vez.
+ */
+@Component
+@RequiredArgsConstructor
+public class IntentoRespuestaWriter {
+
+    /**
+     * Respuesta a un reactivo dentro de un intento, lista para escribirse. secuencia es el
+     * número que manda el cliente y tiempoSeg el tiempo acumulado en el reactivo (null si no se sabe).
+     */
+    public record RespuestaPendiente(Long reactivoId, String letra, boolean correcta, int orden,
+                                     Long secuencia, Integer tiempoSeg) { }
+
+    private final IntentoExamenRepository intentoExamenDao;
+    private final IntentoPreguntaRepository intentoPreguntaDao;
+    private final ReactivoRepository reactivoDao;
+    private final ExamenPreguntaRepository examenPreguntaDao;
+
+    @Transactional
+    public boolean upsert(Long intentoId, Collection<RespuestaPendiente> respuestas) {
+        if (respuestas.isEmpty()) return true;
+        Optional<IntentoExamen> abierto = intentoExamenDao.findAbiertoById(intentoId);
+        if (abierto.isEmpty()) return false;
+
+        Set<Long> reactivoIds = respuestas.stream().map(RespuestaPendiente::reactivoId).collect(Collectors.toSet());
+        Map<Long, IntentoPregunta> existentes = new HashMap<>();
+        for (IntentoPregunta ip : intentoPreguntaDao.findByIntentoExamenIdAndReactivoIdIn(intentoId, reactivoIds)) {
+            // Con duplicados antiguos (sin restricción única aún) manda la fila de id mayor, la que se lee
+            existentes.merge(ip.getReactivo().getId(), ip, (a, b) -> a.getId() > b.getId() ? a : b);
+        }
+
+        List<Long> nuevos = reactivoIds.stream().filter(id -> !existentes.containsKey(id)).toList();
+        Map<Long, ReactivoSnapshotDTO> snaps = nuevos.isEmpty() ? Map.of()
+                : reactivoDao.findSnapshotsByIdIn(nuevos).stream()
+                        .collect(Collectors.toMap(ReactivoSnapshotDTO::getId, Function.identity()));
+
+        Map<Long, Double> puntajes = new HashMap<>();
+        for (Object[] f : examenPreguntaDao.findPuntajesByIntentoIdAndReactivoIdIn(intentoId, reactivoIds)) {
+            if (f[1] != null) puntajes.put((Long) f[0], (Double) f[1]);
+        }
+
+        IntentoExamen intento = abierto.get();
+        List<IntentoPregunta> aGuardar = new ArrayList<>(respuestas.size());
+        int deltaCorrectas = 0;
+        int deltaIncorrectas = 0;
+        double deltaPuntaje = 0;
+        for (RespuestaPendiente r : respuestas) {
+            double puntaje = puntajes.getOrDefault(r.reactivoId(), 1.0);
+            IntentoPregunta ip = existentes.get(r.reactivoId());
+            if (ip != null && yaAplicada(ip, r)) continue;
+            if (ip != null && ip.isRespondida()) {
+                // Se reemplaza una respuesta ya contada: primero se descuenta
+                if (ip.isCorrecta()) {
+                    deltaCorrectas--;
+                    deltaPuntaje -= puntaje;
+                } else {
+                    deltaIncorrectas--;
+                }
+            }
+            if (r.correcta()) {
+                deltaCorrectas++;
+                deltaPuntaje += puntaje;
+            } else {
+                deltaIncorrectas++;
+            }
+
+            if (ip == null) {
+                ReactivoSnapshotDTO snap = snaps.get(r.reactivoId());
+                if (snap == null) {
+                    throw new RuntimeException("Reactivo no encontrado con id " + r.reactivoId());
+                }
+                ip = IntentoPregunta.builder()
+                        .intentoExamen(intento)
+                        .reactivo(reactivoDao.getReferenceById(r.reactivoId()))
+                        .orden(r.orden())
+                        .tiempoSeg(0)
+                        .enunciadoSnap(snap.getPregunta())
+                        .explicacionSnap(snap.getRetroalimentacion())
+                        .build();
+                existentes.put(r.reactivoId(), ip);
+            }
+            ip.setRespuesta(r.letra());
+            ip.setRespondida(true);
+            ip.setCorrecta(r.correcta());
+            if (r.secuencia() != null) ip.setSecuencia(r.secuencia());
+            if (r.tiempoSeg() != null) ip.setTiempoSeg(r.tiempoSeg());
+            aGuardar.add(ip);
+        }
+
+        if (aGuardar.isEmpty()) return true;
+        intentoPreguntaDao.saveAll(aGuardar);
+        // Deja las filas visibles para consultas posteriores en la misma transacción (p.ej. finalizar)
+        intentoPreguntaDao.flush();
+        if (deltaCorrectas != 0 || deltaIncorrectas != 0 || deltaPuntaje != 0) {
+            intentoExamenDao.sumarMarcador(intentoId, deltaCorrectas, deltaIncorrectas, deltaPuntaje);
+        }
+        return true;
+    }
+
+    // Reintento (o respuesta atrasada) de algo que la fila ya refleja: no se toca ni se cuenta
+    private static boolean yaAplicada(IntentoPregunta ip, RespuestaPendiente r) {
+        return r.secuencia() != null && ip.getSecuencia() != null && r.secuencia() <= ip.getSecuencia();
+    }
+}
@@ -0,0 +1,497 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.config.IntentoSesionProperties;
+import com.example.enarm360.config.IntentoSesionProperties.Durabilidad;
+import com.example.enarm360.dtos.IntentoEstadoDTO;
+import com.example.enarm360.dtos.IntentoPreguntaDTO;
+import com.example.enarm360.dtos.IntentoReanudarDTO;
+import com.example.enarm360.repositories.ExamenPreguntaRepository;
+import com.example.enarm360.repositories.IntentoExamenRepository;
+import com.example.enarm360.repositories.IntentoPreguntaRepository;
+import com.example.enarm360.services.IntentoRespuestaWriter.RespuestaPendiente;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Estado en memoria de los intentos activos: respuestas por reactivo y las que faltan por escribir.
+ *
+ * Responder un reactivo no consulta la BD (la calificación sale de RespuestaCorrectaIndex);
+ * solo el primer uso de un intento en este nodo cuesta dos consultas. Con durabilidad SYNC
+ * cada respuesta se escribe antes de responder; con WRITE_BEHIND se confirma desde memoria
+ * y se escribe en lote cada app.intentos.flush-intervalo-ms, al finalizar y al apagar.
+ * WRITE_BEHIND supone que todas las peticiones de un intento llegan al mismo nodo.
+ *
+ * Si el cliente manda un número de secuencia, los reintentos se reconocen en una ventana
+ * de secuencias recientes por intento y se contestan sin cambiar nada; lo que se escape
+ * de la ventana (otro nodo, reinicio) lo filtran la columna secuencia y el índice único
+ * (intento, reactivo) de intento_pregunta.
+ *
+ * El tiempo por pregunta se mide con System.nanoTime() en el servidor. Si el cliente avisa
+ * qué reactivo está viendo (vista), cuenta el tiempo con ese reactivo en pantalla; si no,
+ * el tiempo desde la respuesta anterior. La primera respuesta a cada reactivo alimenta
+ * ReactivoTiempoHistogramas.
+ *
+ * La sesión es también la cache para retomar un intento (reanudar): respuestas, tiempo y
+ * siguiente pregunta salen de memoria; cargarla cuesta dos o tres proyecciones, nunca
+ * entidades por pregunta.
+ *
+ * Un intento finalizado, o con el tiempo límite vencido (más app.intentos.gracia-seg), ya
+ * no acepta respuestas ni vistas: se rechazan con IllegalArgumentException. finalizar marca
+ * la sesión como finalizada antes de escribir lo pendiente, así una respuesta que se cruce
+ * con la finalización se rechaza en vez de escribirse después.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IntentoSesionStore {
+
+    private final IntentoSesionProperties props;
+    private final IntentoRespuestaWriter writer;
+    private final RespuestaCorrectaIndex respuestasCorrectas;
+    private final ReactivoTiempoHistogramas histogramas;
+    private final ReactivoVistoService reactivosVistos;
+    private final IntentoExamenRepository intentoExamenDao;
+    private final IntentoPreguntaRepository intentoPreguntaDao;
+    private final ExamenPreguntaRepository examenPreguntaDao;
+
+    private static final int VENTANA_SECUENCIAS = 256;
+
+    private final Map<Long, Sesion> sesiones = new ConcurrentHashMap<>();
+
+    // ==========================================================
+    // RESPUESTAS
+    // ==========================================================
+
+    /**
+     * Registra (o reemplaza) la respuesta a un reactivo y la devuelve calificada.
+     */
+    public IntentoPreguntaDTO responder(Long intentoId, Long reactivoId, String letra, Long secuencia) {
+        if (respuestasCorrectas.respuestaCorrecta(reactivoId) == 0) {
+            throw new RuntimeException("Reactivo no encontrado con id " + reactivoId);
+        }
+        boolean correcta = respuestasCorrectas.esCorrecta(reactivoId, letra);
+
+        Sesion s;
+        RespuestaPendiente r;
+        do {
+            s = obtener(intentoId);
+            r = s.registrar(reactivoId, letra, correcta, secuencia);
+        } while (r == null);   // la sesión se cerró mientras tanto: se abre otra
+
+        // También en un reintento: si la primera escritura falló, el lote sigue pendiente
+        if (props.getDurabilidad() == Durabilidad.SYNC) {
+            escribir(s);
+            // Otro nodo finalizó el intento y la BD rechazó el lote
+            if (s.rechazada) throw new IllegalArgumentException("El intento ya fue finalizado");
+        }
+
+        return IntentoPreguntaDTO.builder()
+                .orden(r.orden())
+                .correcta(r.correcta())
+                .respondida(true)
+                .tiempoSeg(r.tiempoSeg())
+                .intentoExamenId(intentoId)
+                .reactivoId(r.reactivoId())
+                .respuestaSeleccionada(r.letra())
+                .build();
+    }
+
+    /**
+     * El alumno tiene el reactivo en pantalla desde ahora (y dejó de ver el anterior).
+     */
+    public void vista(Long intentoId, Long reactivoId) {
+        boolean ok;
+        do {
+            ok = obtener(intentoId).marcarVista(reactivoId, System.nanoTime());
+        } while (!ok);
+    }
+
+    /**
+     * Estado compacto del intento: respuestas, tiempo transcurrido y siguiente pregunta.
+     */
+    public IntentoReanudarDTO reanudar(Long intentoId) {
+        Sesion s = obtener(intentoId);
+        if (s.reactivosExamen == null && s.examenId != null) {
+            s.reactivosExamen = examenPreguntaDao.findReactivoIdsByExamenId(s.examenId).stream()
+                    .mapToLong(Long::longValue).toArray();
+        }
+        return s.estado();
+    }
+
+    /**
+     * Dueño del intento (carga la sesión si no estaba en memoria).
+     */
+    public Long usuarioId(Long intentoId) {
+        return obtener(intentoId).usuarioId;
+    }
+
+    /**
+     * Registra un intento recién creado, sin respuestas previas que cargar.
+     */
+    public void abrirNuevo(IntentoEstadoDTO intento) {
+        sesiones.putIfAbsent(intento.getId(), new Sesion(intento));
+    }
+
+    /**
+     * Marca el intento como finalizado en memoria (desde aquí se rechazan respuestas y vistas),
+     * escribe lo pendiente y lo saca de memoria. Dentro de una transacción la sesión se quita
+     * cuando esta confirma; si hace rollback, vuelve a quedar abierta.
+     */
+    public void finalizar(Long intentoId, LocalDateTime ahora) {
+        Sesion s = sesiones.get(intentoId);
+        if (s == null) return;
+        LocalDateTime previo = s.finalizar(ahora);
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            try {
+                escribir(s);
+            } catch (RuntimeException e) {
+                s.reabrir(previo);
+                throw e;
+            }
+            s.cerrar();
+            sesiones.remove(intentoId, s);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    s.cerrar();
+                    sesiones.remove(intentoId, s);
+                } else {
+                    s.reabrir(previo);
+                }
+            }
+        });
+        escribir(s);
+    }
+
+    /**
+     * Escribe lo pendiente del intento y lo saca de memoria. Si se llama dentro de una
+     * transacción, la sesión se quita solo cuando esta confirma.
+     */
+    public void cerrar(Long intentoId) {
+        Sesion s = sesiones.get(intentoId);
+        if (s == null) return;
+        escribir(s);
+
+        Runnable quitar = () -> {
+            if (s.cerrarSiNoHayPendientes()) sesiones.remove(intentoId, s);
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    quitar.run();
+                }
+            });
+        } else {
+            quitar.run();
+        }
+    }
+
+    private Sesion obtener(Long intentoId) {
+        Sesion s = sesiones.get(intentoId);
+        if (s != null) return s;
+
+        // Fuera de computeIfAbsent para no bloquear el bin del mapa durante las consultas
+        IntentoEstadoDTO estado = intentoExamenDao.findEstadoById(intentoId)
+                .orElseThrow(() -> new RuntimeException("Intento no encontrado con id " + intentoId));
+        Sesion nueva = new Sesion(estado);
+        nueva.cargar(intentoPreguntaDao.findRespuestasByIntentoId(intentoId));
+        Sesion previa = sesiones.putIfAbsent(intentoId, nueva);
+        return previa != null ? previa : nueva;
+    }
+
+    // ==========================================================
+    // ESCRITURA
+    // ==========================================================
+
+    @Scheduled(fixedDelayString = "${app.intentos.flush-intervalo-ms:2000}")
+    public void escribirPendientes() {
+        long limite = System.nanoTime() - TimeUnit.MINUTES.toNanos(props.getInactividadMin());
+        int lotes = 0;
+        for (Sesion s : sesiones.values()) {
+            try {
+                if (escribir(s)) lotes++;
+            } catch (Exception e) {
+                // El lote quedó pendiente; se reintenta en el siguiente ciclo
+                log.error("Error al escribir respuestas del intento {}", s.intentoId, e);
+                continue;
+            }
+            if (s.ultimoUso < limite && s.cerrarSiNoHayPendientes()) {
+                sesiones.remove(s.intentoId, s);
+            }
+        }
+        if (lotes > 0) log.debug("Escritas respuestas de {} intentos", lotes);
+    }
+
+    @PreDestroy
+    public void escribirAlApagar() {
+        for (Sesion s : sesiones.values()) {
+            try {
+                escribir(s);
+            } catch (Exception e) {
+                log.error("Respuestas del intento {} sin escribir al apagar", s.intentoId, e);
+            }
+        }
+    }
+
+    /**
+     * Escribe el lote pendiente de la sesión. true si había algo que escribir.
+     */
+    private boolean escribir(Sesion s) {
+        // Un solo escritor por sesión: dos lotes concurrentes podrían insertar el mismo reactivo dos veces
+        s.escritura.lock();
+        try {
+            List<RespuestaPendiente> lote = s.tomarPendientes();
+            if (lote.isEmpty()) return false;
+            boolean escrito;
+            try {
+                escrito = writer.upsert(s.intentoId, lote);
+            } catch (RuntimeException e) {
+                s.devolver(lote);
+                throw e;
+            }
+            if (!escrito) {
+                // El intento ya está finalizado en la BD: el lote se descarta, no se reintenta
+                log.warn("Descartadas {} respuestas del intento {}: ya estaba finalizado", lote.size(), s.intentoId);
+                s.rechazar();
+                return false;
+            }
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                // Dentro de una transacción ajena: si hace rollback el lote vuelve a quedar pendiente
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status != STATUS_COMMITTED) s.devolver(lote);
+                    }
+                });
+            }
+            return true;
+        } finally {
+            s.escritura.unlock();
+        }
+    }
+
+    // ==========================================================
+    // SESIÓN
+    // ==========================================================
+
+    /**
+     * Respuestas de un intento. El estado se protege con el monitor de la sesión (un lock
+     * por intento, así los intentos no compiten entre sí); la escritura a BD con su propio lock.
+     */
+    private final class Sesion {
+        final Long intentoId;
+        final Long examenId;
+        final LocalDateTime iniciadoEn;
+        final LocalDateTime venceEn;       // null si no tiene tiempo límite
+        final Integer tiempoLimiteMin;
+        final Long usuarioId;
+        volatile long[] reactivosExamen;   // en orden; se carga al primer reanudar
+        final ReentrantLock escritura = new ReentrantLock();
+        final Map<Long, RespuestaPendiente> respuestas = new HashMap<>();
+        final Map<Long, RespuestaPendiente> pendientes = new LinkedHashMap<>();
+        final Map<Long, RespuestaPendiente> recientes = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, RespuestaPendiente> masVieja) {
+                return size() > VENTANA_SECUENCIAS;
+            }
+        };
+        // Tiempo acumulado (nanos) con cada reactivo en pantalla
+        final Map<Long, Long> tiempos = new HashMap<>();
+        Long vistaReactivo;
+        long vistaDesde;
+        boolean usaVistas;
+        long ultimaMarca = System.nanoTime();
+        int ultimoOrden;
+        boolean cerrada;
+        LocalDateTime finalizadoEn;
+        volatile boolean rechazada;        // la BD rechazó un lote porque el intento ya estaba finalizado
+        volatile long ultimoUso = System.nanoTime();
+
+        Sesion(IntentoEstadoDTO intento) {
+            this.intentoId = intento.getId();
+            this.examenId = intento.getExamenId();
+            this.iniciadoEn = intento.getIniciadoEn();
+            this.finalizadoEn = intento.getFinalizadoEn();
+            this.tiempoLimiteMin = intento.getTiempoLimiteMin();
+            this.usuarioId = intento.getUsuarioId();
+            this.venceEn = iniciadoEn != null && tiempoLimiteMin != null && tiempoLimiteMin > 0
+                    ? iniciadoEn.plusMinutes(tiempoLimiteMin).plusSeconds(props.getGraciaSeg()) : null;
+        }
+
+        /**
+         * Respuestas ya escritas: [reactivoId, respuesta, orden, correcta, secuencia, tiempoSeg].
+         */
+        synchronized void cargar(List<Object[]> filas) {
+            for (Object[] f : filas) {
+                Long reactivoId = (Long) f[0];
+                Integer tiempoSeg = (Integer) f[5];
+                RespuestaPendiente r = new RespuestaPendiente(reactivoId, (String) f[1], Boolean.TRUE.equals(f[3]),
+                        f[2] != null ? (Integer) f[2] : 0, (Long) f[4], tiempoSeg);
+                respuestas.put(reactivoId, r);
+                if (r.secuencia() != null) recientes.put(r.secuencia(), r);
+                if (tiempoSeg != null) tiempos.put(reactivoId, TimeUnit.SECONDS.toNanos(tiempoSeg));
+            }
+            ultimoOrden = respuestas.size();
+        }
+
+        synchronized IntentoReanudarDTO estado() {
+            ultimoUso = System.nanoTime();
+            Map<Long, String> letras = new LinkedHashMap<>();
+            respuestas.values().stream()
+                    .sorted(Comparator.comparingInt(RespuestaPendiente::orden))
+                    .forEach(r -> letras.put(r.reactivoId(), r.letra()));
+
+            long[] examen = reactivosExamen != null ? reactivosExamen : new long[0];
+            Integer siguienteOrden = null;
+            Long siguienteReactivo = null;
+            for (int i = 0; i < examen.length; i++) {
+                if (!respuestas.containsKey(examen[i])) {
+                    siguienteOrden = i + 1;
+                    siguienteReactivo = examen[i];
+                    break;
+                }
+            }
+
+            long transcurridos = iniciadoEn == null ? 0 : Math.max(0,
+                    Duration.between(iniciadoEn, finalizadoEn != null ? finalizadoEn : LocalDateTime.now()).getSeconds());
+            Long restantes = tiempoLimiteMin != null && tiempoLimiteMin > 0
+                    ? Math.max(0, tiempoLimiteMin * 60L - transcurridos) : null;
+
+            return IntentoReanudarDTO.builder()
+                    .intentoId(intentoId)
+                    .examenId(examenId)
+                    .finalizado(finalizadoEn != null)
+                    .respuestas(letras)
+                    .respondidas(letras.size())
+                    .totalPreguntas(examen.length)
+                    .siguienteOrden(siguienteOrden)
+                    .siguienteReactivoId(siguienteReactivo)
+                    .segundosTranscurridos(transcurridos)
+                    .segundosRestantes(restantes)
+                    .build();
+        }
+
+        /**
+         * La respuesta vigente tras registrar; en un reintento o una secuencia atrasada es la
+         * que ya estaba. null si la sesión ya se cerró.
+         */
+        synchronized RespuestaPendiente registrar(Long reactivoId, String letra, boolean correcta, Long secuencia) {
+            if (cerrada) return null;
+            ultimoUso = System.nanoTime();
+            if (secuencia != null) {
+                // Un reintento de algo ya aceptado se contesta igual aunque el intento haya terminado
+                RespuestaPendiente vista = recientes.get(secuencia);
+                if (vista != null) return vista;
+            }
+            verificarAbierta();
+
+            RespuestaPendiente previa = respuestas.get(reactivoId);
+            if (previa != null && secuencia != null && previa.secuencia() != null && secuencia < previa.secuencia()) {
+                return previa;
+            }
+            int orden = previa != null ? previa.orden() : ++ultimoOrden;
+            long acumulado = acumularTiempo(reactivoId, System.nanoTime());
+            RespuestaPendiente r = new RespuestaPendiente(reactivoId, letra, correcta, orden, secuencia,
+                    (int) TimeUnit.NANOSECONDS.toSeconds(acumulado));
+            if (previa == null) {
+                histogramas.registrar(reactivoId, TimeUnit.NANOSECONDS.toMillis(acumulado));
+                reactivosVistos.marcar(usuarioId, reactivoId);
+            }
+            respuestas.put(reactivoId, r);
+            pendientes.put(reactivoId, r);
+            if (secuencia != null) recientes.put(secuencia, r);
+            return r;
+        }
+
+        synchronized boolean marcarVista(Long reactivoId, long ahora) {
+            if (cerrada) return false;
+            verificarAbierta();
+            ultimoUso = System.nanoTime();
+            if (vistaReactivo != null) tiempos.merge(vistaReactivo, ahora - vistaDesde, Long::sum);
+            usaVistas = true;
+            vistaReactivo = reactivoId;
+            vistaDesde = ahora;
+            return true;
+        }
+
+        private long acumularTiempo(Long reactivoId, long ahora) {
+            long tramo = 0;
+            if (!usaVistas) {
+                tramo = ahora - ultimaMarca;
+            } else if (reactivoId.equals(vistaReactivo)) {
+                tramo = ahora - vistaDesde;
+                vistaDesde = ahora;
+            }
+            ultimaMarca = ahora;
+            return tiempos.merge(reactivoId, Math.max(0, tramo), Long::sum);
+        }
+
+        synchronized List<RespuestaPendiente> tomarPendientes() {
+            if (pendientes.isEmpty()) return List.of();
+            List<RespuestaPendiente> lote = new ArrayList<>(pendientes.values());
+            pendientes.clear();
+            return lote;
+        }
+
+        // Una respuesta más nueva del mismo reactivo tiene prioridad sobre la que falló
+        synchronized void devolver(List<RespuestaPendiente> lote) {
+            for (RespuestaPendiente r : lote) pendientes.putIfAbsent(r.reactivoId(), r);
+        }
+
+        private void verificarAbierta() {
+            if (finalizadoEn != null || rechazada) {
+                throw new IllegalArgumentException("El intento ya fue finalizado");
+            }
+            if (venceEn != null && LocalDateTime.now().isAfter(venceEn)) {
+                throw new IllegalArgumentException("El tiempo del intento ya terminó");
+            }
+        }
+
+        // Devuelve el valor anterior para poder reabrir si la finalización hace rollback
+        synchronized LocalDateTime finalizar(LocalDateTime ahora) {
+            LocalDateTime previo = finalizadoEn;
+            if (finalizadoEn == null) finalizadoEn = ahora;
+            return previo;
+        }
+
+        synchronized void reabrir(LocalDateTime previo) {
+            finalizadoEn = previo;
+        }
+
+        synchronized void rechazar() {
+            rechazada = true;
+            pendientes.clear();
+        }
+
+        synchronized void cerrar() {
+            cerrada = true;
+        }
+
+        synchronized boolean cerrarSiNoHayPendientes() {
+            if (pendientes.isEmpty()) cerrada = true;
+            return cerrada;
+        }
+    }
+}
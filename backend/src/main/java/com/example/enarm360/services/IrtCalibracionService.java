@@ -0,0 +1,394 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.config.IrtCalibracionProperties;
+import com.example.enarm360.repositories.IntentoPreguntaRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Calibración fuera de línea de parámetros 2PL (discriminación a, dificultad b) de cada
+ * reactivo a partir del histórico de intento_pregunta.
+ *
+ * Las respuestas se leen con un cursor de solo avance ordenado por intento y se guardan
+ * en una matriz dispersa de arreglos primitivos (un renglón por intento, sin objetos por
+ * respuesta). El ajuste es máxima verosimilitud conjunta: en cada ronda se actualiza θ de
+ * cada intento y luego (a, b) de cada reactivo con un paso de Fisher scoring, repartiendo
+ * renglones o columnas entre núcleos con fork/join. Al final se escriben los parámetros
+ * en lotes y se recarga ReactivoIrtBank.
+ *
+ * Métricas: irt.calibracion.progreso (0..1), irt.calibracion.throughput (respuestas/s de
+ * la última lectura), irt.calibracion.respuestas, irt.calibracion.reactivos y
+ * irt.calibracion.duracion.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IrtCalibracionService {
+
+    private static final double THETA_MAX = 4.0;
+    private static final double A_MIN = 0.2;
+    private static final double A_MAX = 3.0;
+    private static final int UMBRAL_FORK = 2048;
+
+    private final IntentoPreguntaRepository intentoPreguntaDao;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final ReactivoIrtBank irtBank;
+    private final IrtCalibracionProperties props;
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicBoolean enCurso = new AtomicBoolean();
+    private final AtomicLong progresoMilesimas = new AtomicLong();
+    private final AtomicLong throughput = new AtomicLong();
+
+    private Counter respuestasLeidas;
+    private Counter reactivosCalibrados;
+    private Timer duracion;
+
+    @PostConstruct
+    void registrarMetricas() {
+        Gauge.builder("irt.calibracion.progreso", progresoMilesimas, p -> p.get() / 1000.0)
+                .description("Avance de la calibración en curso (0 a 1)")
+                .register(meterRegistry);
+        Gauge.builder("irt.calibracion.throughput", throughput, AtomicLong::get)
+                .description("Respuestas por segundo leídas en la última calibración")
+                .baseUnit("respuestas/s")
+                .register(meterRegistry);
+        respuestasLeidas = Counter.builder("irt.calibracion.respuestas")
+                .description("Respuestas leídas por la calibración")
+                .register(meterRegistry);
+        reactivosCalibrados = Counter.builder("irt.calibracion.reactivos")
+                .description("Reactivos con parámetros escritos por la calibración")
+                .register(meterRegistry);
+        duracion = Timer.builder("irt.calibracion.duracion")
+                .description("Duración de una calibración completa")
+                .register(meterRegistry);
+    }
+
+    // ==========================================================
+    // EJECUCIÓN
+    // ==========================================================
+
+    @Scheduled(cron = "${app.irt.calibracion.cron:0 30 3 * * ?}")
+    public void calibrarProgramado() {
+        if (!props.isEnabled()) return;
+        try {
+            calibrar();
+        } catch (Exception e) {
+            log.error("Error en la calibración IRT", e);
+        }
+    }
+
+    /**
+     * Ejecuta una calibración completa. Devuelve el número de reactivos escritos,
+     * o -1 si ya había una en curso.
+     */
+    public int calibrar() {
+        if (!enCurso.compareAndSet(false, true)) {
+            log.warn("Calibración IRT omitida: ya hay una en curso");
+            return -1;
+        }
+        long inicio = System.nanoTime();
+        try {
+            progresoMilesimas.set(0);
+            Matriz m = leer();
+            if (m.reactivos() == 0) {
+                log.info("Calibración IRT: no hay respuestas suficientes");
+                return 0;
+            }
+
+            Ajuste ajuste = ajustar(m);
+            int escritos = escribir(m, ajuste);
+            irtBank.recargar();
+
+            log.info("Calibración IRT: {} intentos, {} reactivos, {} respuestas; {} reactivos escritos en {} ms",
+                    m.personas, m.reactivos(), m.respuestas, escritos, (System.nanoTime() - inicio) / 1_000_000);
+            return escritos;
+        } finally {
+            duracion.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+            progresoMilesimas.set(1000);
+            enCurso.set(false);
+        }
+    }
+
+    // ==========================================================
+    // LECTURA: MATRIZ DISPERSA
+    // ==========================================================
+
+    /**
+     * Respuestas en formato CSR por intento (inicioPersona/item/correcta) y su transpuesta
+     * por reactivo (inicioItem/persona/correctaItem), construida con un conteo.
+     */
+    private static final class Matriz {
+        final Map<Long, Integer> indiceItem = new HashMap<>();
+        long[] reactivoIds = new long[1024];
+        int[] inicioPersona = new int[1024];
+        int[] item = new int[1 << 16];
+        boolean[] correcta = new boolean[1 << 16];
+        int personas;
+        int respuestas;
+
+        int[] inicioItem;
+        int[] persona;
+        boolean[] correctaItem;
+
+        int reactivos() {
+            return indiceItem.size();
+        }
+
+        int indice(long reactivoId) {
+            Integer i = indiceItem.get(reactivoId);
+            if (i != null) return i;
+            int nuevo = indiceItem.size();
+            if (nuevo == reactivoIds.length) reactivoIds = Arrays.copyOf(reactivoIds, nuevo * 2);
+            reactivoIds[nuevo] = reactivoId;
+            indiceItem.put(reactivoId, nuevo);
+            return nuevo;
+        }
+
+        void agregar(long reactivoId, boolean ok) {
+            if (respuestas == item.length) {
+                item = Arrays.copyOf(item, respuestas * 2);
+                correcta = Arrays.copyOf(correcta, respuestas * 2);
+            }
+            item[respuestas] = indice(reactivoId);
+            correcta[respuestas] = ok;
+            respuestas++;
+        }
+
+        /**
+         * Cierra el renglón abierto desde inicioPersona[personas]. Los intentos con todo
+         * bien o todo mal no aportan a la verosimilitud conjunta (θ diverge) y se descartan.
+         */
+        void cerrarPersona() {
+            int desde = inicioPersona[personas];
+            int aciertos = 0;
+            for (int k = desde; k < respuestas; k++) if (correcta[k]) aciertos++;
+            int n = respuestas - desde;
+            if (n < 2 || aciertos == 0 || aciertos == n) {
+                respuestas = desde;
+                return;
+            }
+            personas++;
+            if (personas + 1 >= inicioPersona.length) inicioPersona = Arrays.copyOf(inicioPersona, inicioPersona.length * 2);
+            inicioPersona[personas] = respuestas;
+        }
+
+        void transponer() {
+            int n = reactivos();
+            inicioItem = new int[n + 1];
+            for (int k = 0; k < respuestas; k++) inicioItem[item[k] + 1]++;
+            for (int j = 0; j < n; j++) inicioItem[j + 1] += inicioItem[j];
+
+            int[] cursor = Arrays.copyOf(inicioItem, n);
+            persona = new int[respuestas];
+            correctaItem = new boolean[respuestas];
+            for (int p = 0; p < personas; p++) {
+                for (int k = inicioPersona[p]; k < inicioPersona[p + 1]; k++) {
+                    int pos = cursor[item[k]]++;
+                    persona[pos] = p;
+                    correctaItem[pos] = correcta[k];
+                }
+            }
+        }
+    }
+
+    private Matriz leer() {
+        long inicio = System.nanoTime();
+        Matriz m = new Matriz();
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        tx.executeWithoutResult(status -> {
+            try (Stream<Object[]> filas = intentoPreguntaDao.streamRespuestasCalificadas()) {
+                long intentoActual = Long.MIN_VALUE;
+                long leidas = 0;
+                for (Object[] f : (Iterable<Object[]>) filas::iterator) {
+                    long intentoId = (Long) f[0];
+                    if (intentoId != intentoActual) {
+                        if (intentoActual != Long.MIN_VALUE) m.cerrarPersona();
+                        intentoActual = intentoId;
+                    }
+                    m.agregar((Long) f[1], Boolean.TRUE.equals(f[2]));
+                    if (++leidas % 100_000 == 0) respuestasLeidas.increment(100_000);
+                }
+                if (intentoActual != Long.MIN_VALUE) m.cerrarPersona();
+                respuestasLeidas.increment(leidas % 100_000);
+
+                double seg = Math.max((System.nanoTime() - inicio) / 1e9, 1e-3);
+                throughput.set((long) (leidas / seg));
+            }
+        });
+        m.transponer();
+        progresoMilesimas.set(100);
+        return m;
+    }
+
+    // ==========================================================
+    // AJUSTE 2PL
+    // ==========================================================
+
+    private record Ajuste(double[] theta, double[] a, double[] b) { }
+
+    private Ajuste ajustar(Matriz m) {
+        int n = m.reactivos();
+        double[] theta = new double[m.personas];
+        double[] a = new double[n];
+        double[] b = new double[n];
+
+        // Arranque: a = 1 y b según la proporción de aciertos del reactivo
+        for (int j = 0; j < n; j++) {
+            int desde = m.inicioItem[j], hasta = m.inicioItem[j + 1];
+            int aciertos = 0;
+            for (int k = desde; k < hasta; k++) if (m.correctaItem[k]) aciertos++;
+            double p = (aciertos + 0.5) / (hasta - desde + 1.0);
+            a[j] = 1.0;
+            b[j] = limitar(-Math.log(p / (1 - p)), -THETA_MAX, THETA_MAX);
+        }
+
+        int rondas = Math.max(1, props.getIteraciones());
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            for (int r = 0; r < rondas; r++) {
+                pool.invoke(new Rango(0, m.personas, p -> theta[p] = pasoTheta(m, p, theta[p], a, b)));
+                estandarizar(theta);
+                pool.invoke(new Rango(0, n, j -> pasoItem(m, j, theta, a, b)));
+                progresoMilesimas.set(100 + 800L * (r + 1) / rondas);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return new Ajuste(theta, a, b);
+    }
+
+    /**
+     * Un paso de Newton sobre θ de un intento con los parámetros de reactivo fijos.
+     */
+    private static double pasoTheta(Matriz m, int p, double theta, double[] a, double[] b) {
+        double grad = 0, info = 0;
+        for (int k = m.inicioPersona[p]; k < m.inicioPersona[p + 1]; k++) {
+            int j = m.item[k];
+            double prob = logistica(a[j] * (theta - b[j]));
+            grad += a[j] * ((m.correcta[k] ? 1 : 0) - prob);
+            info += a[j] * a[j] * prob * (1 - prob);
+        }
+        if (info < 1e-9) return theta;
+        return limitar(theta + limitar(grad / info, -1, 1), -THETA_MAX, THETA_MAX);
+    }
+
+    /**
+     * Un paso de Fisher scoring sobre (a, b) de un reactivo con θ fijos.
+     */
+    private static void pasoItem(Matriz m, int j, double[] theta, double[] a, double[] b) {
+        double aj = a[j], bj = b[j];
+        double ga = 0, gb = 0, iaa = 0, ibb = 0, iab = 0;
+        for (int k = m.inicioItem[j]; k < m.inicioItem[j + 1]; k++) {
+            double d = theta[m.persona[k]] - bj;
+            double prob = logistica(aj * d);
+            double resid = (m.correctaItem[k] ? 1 : 0) - prob;
+            double w = prob * (1 - prob);
+            ga += resid * d;
+            gb -= aj * resid;
+            iaa += w * d * d;
+            ibb += aj * aj * w;
+            iab -= aj * w * d;
+        }
+        double det = iaa * ibb - iab * iab;
+        if (det < 1e-9) return;
+        double da = (ibb * ga - iab * gb) / det;
+        double db = (iaa * gb - iab * ga) / det;
+        a[j] = limitar(aj + limitar(da, -0.5, 0.5), A_MIN, A_MAX);
+        b[j] = limitar(bj + limitar(db, -1, 1), -THETA_MAX, THETA_MAX);
+    }
+
+    // Fija la escala: media 0 y desviación 1 en θ
+    private static void estandarizar(double[] theta) {
+        if (theta.length < 2) return;
+        double suma = 0, suma2 = 0;
+        for (double t : theta) {
+            suma += t;
+            suma2 += t * t;
+        }
+        double media = suma / theta.length;
+        double sd = Math.sqrt(Math.max(suma2 / theta.length - media * media, 0));
+        if (sd < 1e-6) sd = 1;
+        for (int i = 0; i < theta.length; i++) theta[i] = limitar((theta[i] - media) / sd, -THETA_MAX, THETA_MAX);
+    }
+
+    private static double logistica(double x) {
+        return 1 / (1 + Math.exp(-x));
+    }
+
+    private static double limitar(double v, double min, double max) {
+        return Math.max(min, Math.min(max, v));
+    }
+
+    /**
+     * Aplica un paso a cada índice de [desde, hasta), partiendo el rango mientras sea grande.
+     */
+    private static final class Rango extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int desde;
+        private final int hasta;
+        private final IntConsumer paso;
+
+        Rango(int desde, int hasta, IntConsumer paso) {
+            this.desde = desde;
+            this.hasta = hasta;
+            this.paso = paso;
+        }
+
+        @Override
+        protected void compute() {
+            if (hasta - desde <= UMBRAL_FORK) {
+                for (int i = desde; i < hasta; i++) paso.accept(i);
+                return;
+            }
+            int medio = (desde + hasta) >>> 1;
+            invokeAll(new Rango(desde, medio, paso), new Rango(medio, hasta, paso));
+        }
+    }
+
+    // ==========================================================
+    // ESCRITURA
+    // ==========================================================
+
+    private int escribir(Matriz m, Ajuste ajuste) {
+        List<Object[]> filas = new ArrayList<>();
+        for (int j = 0; j < m.reactivos(); j++) {
+            if (m.inicioItem[j + 1] - m.inicioItem[j] < props.getMinRespuestas()) continue;
+            filas.add(new Object[] { ajuste.a()[j], ajuste.b()[j], m.reactivoIds[j] });
+        }
+
+        int lote = Math.max(1, props.getLoteEscritura());
+        for (int desde = 0; desde < filas.size(); desde += lote) {
+            List<Object[]> parte = filas.subList(desde, Math.min(desde + lote, filas.size()));
+            jdbcTemplate.batchUpdate("UPDATE reactivos SET irt_a = ?, irt_b = ? WHERE id = ?", parte);
+            reactivosCalibrados.increment(parte.size());
+            progresoMilesimas.set(900 + 100L * (desde + parte.size()) / filas.size());
+        }
+        return filas.size();
+    }
+}
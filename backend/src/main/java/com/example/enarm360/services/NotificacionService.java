@@ -5,6 +5,7 @@ import com.example.enarm360.entities.Notificacion;
 import com.example.enarm360.entities.Usuario;
 import com.example.enarm360.repositories.NotificacionRepository;
 import com.example.enarm360.repositories.UsuarioRepository;
+import com.example.enarm360.security.UsuarioActual;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -23,23 +24,23 @@ public class NotificacionService {
 
     private final NotificacionRepository repo;
     private final UsuarioRepository usuarioRepository;
-    private final AuthService authService;
+    private final UsuarioActual usuarioActual;
 
     public List<NotificacionDto> mias(int page, int size) {
-        Long userId = authService.getCurrentUser().getId();
+        Long userId = usuarioActual.id();
         Pageable pageable = PageRequest.of(Math.max(0, page), Math.max(1, size));
         Page<Notificacion> p = repo.findByDestinatarioIdOrderByCreadoEnDesc(userId, pageable);
         return p.getContent().stream().map(NotificacionDto::fromEntity).collect(Collectors.toList());
     }
 
     public long countNoLeidas() {
-        Long userId = authService.getCurrentUser().getId();
+        Long userId = usuarioActual.id();
         return repo.countByDestinatarioIdAndLeidaFalse(userId);
     }
 
     public void marcarLeida(Long id) {
         Notificacion n = repo.findById(id).orElseThrow(() -> new RuntimeException("Notificación no encontrada"));
-        Long userId = authService.getCurrentUser().getId();
+        Long userId = usuarioActual.id();
         if (!n.getDestinatario().getId().equals(userId)) {
             throw new RuntimeException("No autorizado");
         }
@@ -52,8 +53,8 @@ public class NotificacionService {
 
     public NotificacionDto crear(Long destinatarioId, String titulo, String mensaje, Notificacion.Tipo tipo, Map<String,Object> metadata) {
         Usuario dest = usuarioRepository.findById(destinatarioId).orElseThrow(() -> new RuntimeException("Usuario destino no encontrado"));
-        Long creadorId = authService.getCurrentUser().getId();
-        Usuario creador = usuarioRepository.findById(creadorId).orElseThrow(() -> new RuntimeException("Usuario creador no encontrado"));
+        Long creadorId = usuarioActual.id();
+        Usuario creador = usuarioRepository.getReferenceById(creadorId);
 
         Notificacion n = Notificacion.builder()
                 .destinatario(dest)
@@ -72,8 +73,8 @@ public class NotificacionService {
         var usuarios = usuarioRepository.findAllActiveUsers();
         if (usuarios == null || usuarios.isEmpty()) return 0;
 
-        Long creadorId = authService.getCurrentUser().getId();
-        Usuario creador = usuarioRepository.findById(creadorId).orElseThrow(() -> new RuntimeException("Usuario creador no encontrado"));
+        Long creadorId = usuarioActual.id();
+        Usuario creador = usuarioRepository.getReferenceById(creadorId);
 
         var lista = usuarios.stream().map(u -> Notificacion.builder()
                 .destinatario(u)
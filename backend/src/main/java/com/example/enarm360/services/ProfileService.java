@@ -6,10 +6,11 @@ import com.example.enarm360.entities.PerfilUsuario;
 import com.example.enarm360.entities.Usuario;
 import com.example.enarm360.repositories.PerfilUsuarioRepository;
 import com.example.enarm360.repositories.UsuarioRepository;
+import com.example.enarm360.security.PrincipalInvalidacionService;
+import com.example.enarm360.security.UsuarioActual;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.OptimisticLockingFailureException;
-import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -21,13 +22,15 @@ public class ProfileService {
 
     private final UsuarioRepository usuarioRepo;
     private final PerfilUsuarioRepository perfilRepo;
+    private final UsuarioActual usuarioActual;
+    private final PrincipalInvalidacionService principalInvalidacion;
 
+    // El ID viene del principal; dentro de la transacción findById usa el contexto de persistencia
     private Usuario currentUser() {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        if (auth == null || !auth.isAuthenticated()) throw new RuntimeException("No autenticado");
-        String login = auth.getName(); // username o email
-        return usuarioRepo.findByUsernameOrEmailAndActivoTrue(login)
-                .orElseThrow(() -> new RuntimeException("Usuario no encontrado/activo: " + login));
+        Long id = usuarioActual.id();
+        return usuarioRepo.findById(id)
+                .filter(u -> Boolean.TRUE.equals(u.getActivo()))
+                .orElseThrow(() -> new RuntimeException("Usuario no encontrado/activo: " + id));
     }
 
     private static ProfileDto toDTO(Usuario u, PerfilUsuario p) {
@@ -227,6 +230,7 @@ public class ProfileService {
             if (usuarioChanged) {
                 log.debug("Guardando cambios de usuario");
                 u = usuarioRepo.save(u);
+                principalInvalidacion.datosCambiados(u.getId());
             }
             if (perfilChanged) {
                 if (isNewProfile) {
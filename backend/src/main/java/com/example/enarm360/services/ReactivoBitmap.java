@@ -0,0 +1,269 @@
+package com.example.enarm360.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Conjunto comprimido de IDs de reactivo al estilo Roaring.
+ *
+ * El ID (entero sin signo de 32 bits) se parte en 16 bits altos, que eligen un contenedor,
+ * y 16 bits bajos, que se guardan en él. Un contenedor con hasta 4096 valores es un char[]
+ * ordenado; con más pasa a ser un mapa de 65536 bits (8 KB). Los IDs de un banco suelen ser
+ * consecutivos, así que decenas de miles de reactivos vistos ocupan unos pocos KB.
+ *
+ * No es thread-safe: quien lo comparta debe sincronizar.
+ */
+public final class ReactivoBitmap {
+
+    private static final int MAX_ARREGLO = 4096;
+    private static final int PALABRAS_MAPA = 1024;
+    private static final byte VERSION = 1;
+    private static final byte TIPO_ARREGLO = 0;
+    private static final byte TIPO_MAPA = 1;
+
+    private char[] llaves = new char[4];
+    private Contenedor[] contenedores = new Contenedor[4];
+    private int tamano;
+
+    // ==========================================================
+    // OPERACIONES
+    // ==========================================================
+
+    /**
+     * Agrega el ID. Devuelve true si no estaba. Los IDs fuera de [0, 2^32) se ignoran.
+     */
+    public boolean agregar(long id) {
+        if (id < 0 || id > 0xFFFFFFFFL) return false;
+        char alto = (char) (id >>> 16);
+        int i = buscar(alto);
+        if (i < 0) {
+            i = -i - 1;
+            insertar(i, alto, new Arreglo());
+        }
+        Contenedor c = contenedores[i];
+        int antes = c.cardinalidad();
+        Contenedor nuevo = c.agregar((char) id);
+        contenedores[i] = nuevo;
+        return nuevo.cardinalidad() > antes;
+    }
+
+    public boolean contiene(long id) {
+        if (id < 0 || id > 0xFFFFFFFFL) return false;
+        int i = buscar((char) (id >>> 16));
+        return i >= 0 && contenedores[i].contiene((char) id);
+    }
+
+    public void agregarTodos(ReactivoBitmap otro) {
+        otro.forEach(this::agregar);
+    }
+
+    public int cardinalidad() {
+        int n = 0;
+        for (int i = 0; i < tamano; i++) n += contenedores[i].cardinalidad();
+        return n;
+    }
+
+    public boolean isEmpty() {
+        return tamano == 0;
+    }
+
+    /**
+     * Recorre los IDs en orden ascendente.
+     */
+    public void forEach(LongConsumer accion) {
+        for (int i = 0; i < tamano; i++) {
+            long base = (long) llaves[i] << 16;
+            contenedores[i].forEach(bajo -> accion.accept(base | bajo));
+        }
+    }
+
+    private int buscar(char alto) {
+        return Arrays.binarySearch(llaves, 0, tamano, alto);
+    }
+
+    private void insertar(int i, char alto, Contenedor c) {
+        if (tamano == llaves.length) {
+            llaves = Arrays.copyOf(llaves, tamano * 2);
+            contenedores = Arrays.copyOf(contenedores, tamano * 2);
+        }
+        System.arraycopy(llaves, i, llaves, i + 1, tamano - i);
+        System.arraycopy(contenedores, i, contenedores, i + 1, tamano - i);
+        llaves[i] = alto;
+        contenedores[i] = c;
+        tamano++;
+    }
+
+    // ==========================================================
+    // SERIALIZACIÓN
+    // ==========================================================
+
+    /**
+     * Formato: versión, número de contenedores y, por contenedor, llave alta, tipo y
+     * contenido (cardinalidad + valores bajos, o las 1024 palabras del mapa).
+     */
+    public byte[] serializar() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + cardinalidad() * 2);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeInt(tamano);
+            for (int i = 0; i < tamano; i++) {
+                out.writeChar(llaves[i]);
+                contenedores[i].escribir(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static ReactivoBitmap deserializar(byte[] datos) {
+        ReactivoBitmap b = new ReactivoBitmap();
+        if (datos == null || datos.length == 0) return b;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(datos))) {
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Versión de bitmap no soportada: " + version);
+            }
+            int n = in.readInt();
+            b.llaves = new char[Math.max(n, 4)];
+            b.contenedores = new Contenedor[Math.max(n, 4)];
+            for (int i = 0; i < n; i++) {
+                b.llaves[i] = in.readChar();
+                b.contenedores[i] = in.readByte() == TIPO_MAPA ? Mapa.leer(in) : Arreglo.leer(in);
+            }
+            b.tamano = n;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return b;
+    }
+
+    // ==========================================================
+    // CONTENEDORES
+    // ==========================================================
+
+    private interface Contenedor {
+        /** Devuelve el contenedor que queda (puede cambiar de arreglo a mapa). */
+        Contenedor agregar(char v);
+
+        boolean contiene(char v);
+
+        int cardinalidad();
+
+        void forEach(LongConsumer accion);
+
+        void escribir(DataOutputStream out) throws IOException;
+    }
+
+    private static final class Arreglo implements Contenedor {
+        private char[] valores = new char[4];
+        private int n;
+
+        @Override
+        public Contenedor agregar(char v) {
+            int i = Arrays.binarySearch(valores, 0, n, v);
+            if (i >= 0) return this;
+            if (n == MAX_ARREGLO) return aMapa().agregar(v);
+            i = -i - 1;
+            if (n == valores.length) valores = Arrays.copyOf(valores, Math.min(n * 2, MAX_ARREGLO));
+            System.arraycopy(valores, i, valores, i + 1, n - i);
+            valores[i] = v;
+            n++;
+            return this;
+        }
+
+        private Mapa aMapa() {
+            Mapa m = new Mapa();
+            for (int i = 0; i < n; i++) m.agregar(valores[i]);
+            return m;
+        }
+
+        @Override
+        public boolean contiene(char v) {
+            return Arrays.binarySearch(valores, 0, n, v) >= 0;
+        }
+
+        @Override
+        public int cardinalidad() {
+            return n;
+        }
+
+        @Override
+        public void forEach(LongConsumer accion) {
+            for (int i = 0; i < n; i++) accion.accept(valores[i]);
+        }
+
+        @Override
+        public void escribir(DataOutputStream out) throws IOException {
+            out.writeByte(TIPO_ARREGLO);
+            out.writeShort(n);
+            for (int i = 0; i < n; i++) out.writeChar(valores[i]);
+        }
+
+        static Arreglo leer(DataInputStream in) throws IOException {
+            Arreglo a = new Arreglo();
+            a.n = in.readUnsignedShort();
+            a.valores = new char[Math.max(a.n, 4)];
+            for (int i = 0; i < a.n; i++) a.valores[i] = in.readChar();
+            return a;
+        }
+    }
+
+    private static final class Mapa implements Contenedor {
+        private final long[] palabras = new long[PALABRAS_MAPA];
+        private int n;
+
+        @Override
+        public Contenedor agregar(char v) {
+            long antes = palabras[v >>> 6];
+            long despues = antes | (1L << v);
+            if (despues != antes) {
+                palabras[v >>> 6] = despues;
+                n++;
+            }
+            return this;
+        }
+
+        @Override
+        public boolean contiene(char v) {
+            return (palabras[v >>> 6] & (1L << v)) != 0;
+        }
+
+        @Override
+        public int cardinalidad() {
+            return n;
+        }
+
+        @Override
+        public void forEach(LongConsumer accion) {
+            for (int w = 0; w < PALABRAS_MAPA; w++) {
+                long palabra = palabras[w];
+                while (palabra != 0) {
+                    accion.accept(((long) w << 6) | Long.numberOfTrailingZeros(palabra));
+                    palabra &= palabra - 1;
+                }
+            }
+        }
+
+        @Override
+        public void escribir(DataOutputStream out) throws IOException {
+            out.writeByte(TIPO_MAPA);
+            for (long palabra : palabras) out.writeLong(palabra);
+        }
+
+        static Mapa leer(DataInputStream in) throws IOException {
+            Mapa m = new Mapa();
+            for (int w = 0; w < PALABRAS_MAPA; w++) {
+                m.palabras[w] = in.readLong();
+                m.n += Long.bitCount(m.palabras[w]);
+            }
+            return m;
+        }
+    }
+}
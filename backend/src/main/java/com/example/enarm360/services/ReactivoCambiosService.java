@@ -0,0 +1,162 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.config.ReactivoCambiosProperties;
+import com.example.enarm360.entities.CambioReactivo;
+import com.example.enarm360.repositories.CambioReactivoRepository;
+import com.example.enarm360.repositories.ReactivoRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pone al día en todos los nodos los índices en memoria de reactivos: ReactivoSamplingIndex,
+ * RespuestaCorrectaIndex, ReactivoIrtBank y ExamenPayloadCache.
+ *
+ * ReactivoIndexListener escribe una fila en cambio_reactivo por cada alta, edición o baja,
+ * en la misma transacción que el cambio (JDBC sobre la conexión de la transacción: un
+ * callback de JPA no puede usar el EntityManager). El nodo que edita aplica el cambio al
+ * confirmar; los demás lo hacen al sondear la bitácora cada app.reactivos.cambios.sondeo-ms,
+ * releyendo de la BD la clasificación y la respuesta correcta de los reactivos tocados.
+ *
+ * Como en PrincipalInvalidacionService, el sondeo relee una ventana que se traslapa con la
+ * anterior (margen-seg) y recuerda por ID las filas ya aplicadas.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ReactivoCambiosService {
+
+    private final CambioReactivoRepository cambioDao;
+    private final ReactivoRepository reactivoDao;
+    private final JdbcTemplate jdbcTemplate;
+    private final ReactivoSamplingIndex indice;
+    private final RespuestaCorrectaIndex respuestas;
+    private final ReactivoIrtBank irt;
+    private final ExamenPayloadCache payloads;
+    private final ReactivoCambiosProperties props;
+
+    private final Map<Long, LocalDateTime> aplicadas = new HashMap<>();
+    private LocalDateTime ultimoSondeo = LocalDateTime.now();
+
+    // ==========================================================
+    // CAMBIOS
+    // ==========================================================
+
+    /**
+     * Anota el cambio de un reactivo en la transacción actual. Lo llama ReactivoIndexListener
+     * dentro del flush, por eso escribe con JDBC y no con el repositorio.
+     */
+    public void registrar(Long reactivoId) {
+        if (reactivoId == null) return;
+        LocalDateTime ahora = LocalDateTime.now();
+        KeyHolder llave = new GeneratedKeyHolder();
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "INSERT INTO cambio_reactivo (reactivo_id, creado_en) VALUES (?, ?)", new String[] { "id" });
+            ps.setLong(1, reactivoId);
+            ps.setTimestamp(2, Timestamp.valueOf(ahora));
+            return ps;
+        }, llave);
+        Number id = llave.getKey();
+        if (id == null) return;
+
+        // Este nodo ya aplica el cambio desde el listener: el sondeo no debe repetirlo
+        Runnable anotar = () -> {
+            synchronized (aplicadas) {
+                aplicadas.put(id.longValue(), ahora);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    anotar.run();
+                }
+            });
+        } else {
+            anotar.run();
+        }
+    }
+
+    // ==========================================================
+    // SONDEO DE OTROS NODOS
+    // ==========================================================
+
+    @Scheduled(fixedDelayString = "${app.reactivos.cambios.sondeo-ms:2000}")
+    public void sondear() {
+        LocalDateTime inicio = LocalDateTime.now();
+        LocalDateTime desde = ultimoSondeo.minusSeconds(props.getMargenSeg());
+        try {
+            Set<Long> reactivos = new LinkedHashSet<>();
+            Map<Long, LocalDateTime> nuevas = new HashMap<>();
+            for (CambioReactivo fila : cambioDao.findByCreadoEnGreaterThanEqualOrderByIdAsc(desde)) {
+                synchronized (aplicadas) {
+                    if (aplicadas.containsKey(fila.getId())) continue;
+                }
+                nuevas.put(fila.getId(), fila.getCreadoEn());
+                reactivos.add(fila.getReactivoId());
+            }
+            if (!reactivos.isEmpty()) aplicar(reactivos);
+            synchronized (aplicadas) {
+                aplicadas.putAll(nuevas);
+            }
+        } catch (Exception e) {
+            // La ventana no avanza: se reintenta en el siguiente sondeo
+            log.warn("No se pudo sondear la bitácora de cambios de reactivos: {}", e.getMessage());
+            return;
+        }
+        ultimoSondeo = inicio;
+        synchronized (aplicadas) {
+            aplicadas.values().removeIf(creadoEn -> creadoEn.isBefore(desde));
+        }
+    }
+
+    // Estado actual en la BD; un reactivo que ya no está se da de baja
+    private void aplicar(Set<Long> reactivoIds) {
+        Map<Long, Object[]> actuales = new HashMap<>();
+        for (Object[] f : reactivoDao.findIndicesByIdIn(reactivoIds)) actuales.put((Long) f[0], f);
+
+        for (Long id : reactivoIds) {
+            Object[] f = actuales.get(id);
+            if (f == null) {
+                indice.quitar(id);
+                respuestas.quitar(id);
+                irt.quitar(id);
+            } else {
+                if (f[1] != null) {
+                    indice.actualizar(id, (Long) f[1], (Long) f[2], (Long) f[3]);
+                } else {
+                    indice.quitar(id);
+                }
+                if (f[4] != null) {
+                    respuestas.guardar(id, (String) f[4]);
+                } else {
+                    respuestas.quitar(id);
+                }
+                irt.cambio(id);
+            }
+            payloads.invalidarReactivo(id);
+        }
+        log.debug("Aplicados cambios de {} reactivos de otros nodos", reactivoIds.size());
+    }
+
+    @Scheduled(cron = "${app.reactivos.cambios.purga-cron:0 20 * * * ?}")
+    public void purgar() {
+        int borradas = cambioDao.deleteAnteriores(LocalDateTime.now().minusHours(props.getRetencionHoras()));
+        if (borradas > 0) log.debug("Purgadas {} filas de la bitácora de cambios de reactivos", borradas);
+    }
+}
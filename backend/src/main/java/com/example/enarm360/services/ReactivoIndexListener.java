@@ -0,0 +1,92 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.entities.Reactivo;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Mantiene ReactivoSamplingIndex, RespuestaCorrectaIndex y ReactivoIrtBank al día cuando se crean, editan o borran reactivos
+ * (incluye los endpoints de Spring Data REST), y saca de ExamenPayloadCache los exámenes
+ * con un reactivo editado o borrado. Los cambios se aplican tras el commit
+ * para no dejar en el índice IDs de transacciones revertidas. Además anota cada cambio en
+ * la bitácora de ReactivoCambiosService, dentro de la misma transacción, para los demás nodos.
+ *
+ * Hibernate crea este listener al construir el EntityManagerFactory, por eso el índice
+ * (que depende de ReactivoRepository) se resuelve de forma diferida, y solo si existe:
+ * las pruebas de JPA (@DataJpaTest) no crean esos beans.
+ */
+@Component
+@RequiredArgsConstructor
+public class ReactivoIndexListener {
+
+    private final ObjectProvider<ReactivoSamplingIndex> indice;
+    private final ObjectProvider<RespuestaCorrectaIndex> respuestas;
+    private final ObjectProvider<ReactivoIrtBank> irt;
+    private final ObjectProvider<ExamenPayloadCache> payloads;
+    private final ObjectProvider<ReactivoCambiosService> cambios;
+
+    @PostPersist
+    public void onPersist(Reactivo r) {
+        Long[] c = clasificacion(r);
+        String letra = r.getRespuestaCorrecta();
+        cambios.ifAvailable(bitacora -> bitacora.registrar(r.getId()));
+        despuesDelCommit(() -> {
+            indice.ifAvailable(i -> i.registrar(r.getId(), c[0], c[1], c[2]));
+            respuestas.ifAvailable(idx -> idx.guardar(r.getId(), letra));
+            irt.ifAvailable(banco -> banco.cambio(r.getId()));
+        });
+    }
+
+    @PostUpdate
+    public void onUpdate(Reactivo r) {
+        Long[] c = clasificacion(r);
+        String letra = r.getRespuestaCorrecta();
+        cambios.ifAvailable(bitacora -> bitacora.registrar(r.getId()));
+        despuesDelCommit(() -> {
+            indice.ifAvailable(i -> i.actualizar(r.getId(), c[0], c[1], c[2]));
+            respuestas.ifAvailable(idx -> idx.guardar(r.getId(), letra));
+            irt.ifAvailable(banco -> banco.cambio(r.getId()));
+            payloads.ifAvailable(cache -> cache.invalidarReactivo(r.getId()));
+        });
+    }
+
+    @PostRemove
+    public void onRemove(Reactivo r) {
+        Long[] c = clasificacion(r);
+        cambios.ifAvailable(bitacora -> bitacora.registrar(r.getId()));
+        despuesDelCommit(() -> {
+            indice.ifAvailable(i -> i.quitar(r.getId(), c[0], c[1], c[2]));
+            respuestas.ifAvailable(idx -> idx.quitar(r.getId()));
+            irt.ifAvailable(banco -> banco.quitar(r.getId()));
+            payloads.ifAvailable(cache -> cache.invalidarReactivo(r.getId()));
+        });
+    }
+
+    // Se lee dentro del callback: los proxies LAZY devuelven su id sin inicializarse
+    private static Long[] clasificacion(Reactivo r) {
+        return new Long[]{
+                r.getEspecialidad() != null ? r.getEspecialidad().getId() : null,
+                r.getDificultad() != null ? r.getDificultad().getId() : null,
+                r.getClave() != null ? r.getClave().getId() : null
+        };
+    }
+
+    private static void despuesDelCommit(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    accion.run();
+                }
+            });
+        } else {
+            accion.run();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.repositories.ReactivoRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongPredicate;
+import java.util.random.RandomGenerator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Banco en memoria de parámetros IRT 2PL (a = discriminación, b = dificultad) para la
+ * modalidad adaptativa.
+ *
+ * Arreglos paralelos ordenados por ID (long[]/float[]), y por cada banda de habilidad
+ * θ ∈ {-3, -2.5, …, 3} los índices de reactivos ordenados por información de Fisher en el
+ * centro de la banda. Elegir el siguiente reactivo es recorrer el principio de una lista
+ * ya ordenada; no hay consulta por pregunta. Los reactivos sin calibrar toman b según su
+ * dificultad (repartida en [-1.5, 1.5] por ID de dificultad) y a = 1.
+ *
+ * Las altas, ediciones y bajas de reactivos llegan por ReactivoIndexListener (las de otros
+ * nodos, por ReactivoCambiosService). Un reactivo
+ * borrado deja de elegirse en cuanto se confirma; los cambios se juntan y el banco se
+ * reconstruye cada app.irt.banco.cambios-ms (una sola lectura aunque lleguen muchos).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReactivoIrtBank {
+
+    static final double THETA_MIN = -3.0;
+    static final double PASO_BANDA = 0.5;
+    static final int BANDAS = 13;
+
+    private final ReactivoRepository reactivoDao;
+    private final PlatformTransactionManager transactionManager;
+
+    private volatile Banco banco = Banco.vacio();
+    private final AtomicBoolean cambiosPendientes = new AtomicBoolean();
+    // Borrados que el banco actual todavía contiene
+    private final Set<Long> quitados = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Parámetros de un reactivo.
+     */
+    public record Parametros(double a, double b) {
+        public double probabilidad(double theta) {
+            return 1.0 / (1.0 + Math.exp(-a * (theta - b)));
+        }
+
+        public double informacion(double theta) {
+            double p = probabilidad(theta);
+            return a * a * p * (1 - p);
+        }
+    }
+
+    // ==========================================================
+    // CARGA
+    // ==========================================================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarAlIniciar() {
+        try {
+            recargar();
+        } catch (Exception e) {
+            log.error("No se pudo cargar el banco IRT", e);
+        }
+    }
+
+    public synchronized void recargar() {
+        long inicio = System.nanoTime();
+        List<Object[]> filas = new ArrayList<>();
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        tx.executeWithoutResult(status -> {
+            try (Stream<Object[]> s = reactivoDao.streamParametrosIrt()) {
+                s.forEach(filas::add);
+            }
+        });
+        banco = Banco.construir(filas);
+        log.info("Banco IRT cargado: {} reactivos ({} calibrados) en {} ms",
+                banco.ids.length, banco.calibrados, (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    /**
+     * Un reactivo se creó o cambió su especialidad, dificultad o parámetros.
+     */
+    public void cambio(long reactivoId) {
+        quitados.remove(reactivoId);
+        cambiosPendientes.set(true);
+    }
+
+    public void quitar(long reactivoId) {
+        quitados.add(reactivoId);
+        cambiosPendientes.set(true);
+    }
+
+    @Scheduled(fixedDelayString = "${app.irt.banco.cambios-ms:5000}")
+    public void aplicarCambios() {
+        if (!cambiosPendientes.getAndSet(false)) return;
+        // Los borrados confirmados antes de leer ya no vienen en la lectura
+        Set<Long> aplicados = Set.copyOf(quitados);
+        try {
+            recargar();
+            quitados.removeAll(aplicados);
+        } catch (Exception e) {
+            cambiosPendientes.set(true);
+            log.error("No se pudo recargar el banco IRT", e);
+        }
+    }
+
+    // ==========================================================
+    // CONSULTA
+    // ==========================================================
+
+    public Parametros parametros(long reactivoId) {
+        Banco b = banco;
+        int i = Arrays.binarySearch(b.ids, reactivoId);
+        return i < 0 ? new Parametros(1.0, 0.0) : new Parametros(b.a[i], b.b[i]);
+    }
+
+    /**
+     * Siguiente reactivo para la habilidad theta: uno al azar entre los candidatos más
+     * informativos de su banda (control de exposición "randomesque"). Devuelve -1 si no
+     * queda ninguno elegible.
+     *
+     * @param especialidades null o vacío = cualquiera
+     * @param usado          true para los reactivos ya presentados
+     */
+    public long seleccionar(double theta, Collection<Long> especialidades, LongPredicate usado,
+                            int candidatos, RandomGenerator rnd) {
+        Banco b = banco;
+        Set<Long> filtro = especialidades == null || especialidades.isEmpty() ? null : new TreeSet<>(especialidades);
+        int[] orden = b.porBanda[banda(theta)];
+
+        long[] elegidos = new long[Math.max(1, candidatos)];
+        int n = 0;
+        for (int k = 0; k < orden.length && n < elegidos.length; k++) {
+            int i = orden[k];
+            if (filtro != null && !filtro.contains(b.especialidad[i])) continue;
+            if (usado.test(b.ids[i])) continue;
+            if (!quitados.isEmpty() && quitados.contains(b.ids[i])) continue;
+            elegidos[n++] = b.ids[i];
+        }
+        return n == 0 ? -1 : elegidos[rnd.nextInt(n)];
+    }
+
+    static int banda(double theta) {
+        int i = (int) Math.round((theta - THETA_MIN) / PASO_BANDA);
+        return Math.max(0, Math.min(BANDAS - 1, i));
+    }
+
+    // ==========================================================
+    // BANCO
+    // ==========================================================
+
+    private static final class Banco {
+        final long[] ids;
+        final long[] especialidad;
+        final float[] a;
+        final float[] b;
+        final int[][] porBanda;
+        final int calibrados;
+
+        private Banco(long[] ids, long[] especialidad, float[] a, float[] b, int[][] porBanda, int calibrados) {
+            this.ids = ids;
+            this.especialidad = especialidad;
+            this.a = a;
+            this.b = b;
+            this.porBanda = porBanda;
+            this.calibrados = calibrados;
+        }
+
+        static Banco vacio() {
+            int[][] bandas = new int[BANDAS][0];
+            return new Banco(new long[0], new long[0], new float[0], new float[0], bandas, 0);
+        }
+
+        /**
+         * filas: [id, especialidadId, dificultadId, irtA, irtB] ordenadas por id.
+         */
+        static Banco construir(List<Object[]> filas) {
+            int n = filas.size();
+            long[] ids = new long[n];
+            long[] esp = new long[n];
+            float[] a = new float[n];
+            float[] b = new float[n];
+
+            // Dificultades distintas, en orden de ID, para el b por defecto
+            long[] dificultades = filas.stream().map(f -> (Long) f[2]).filter(d -> d != null)
+                    .distinct().sorted().mapToLong(Long::longValue).toArray();
+
+            int calibrados = 0;
+            for (int i = 0; i < n; i++) {
+                Object[] f = filas.get(i);
+                ids[i] = (Long) f[0];
+                esp[i] = f[1] != null ? (Long) f[1] : -1;
+                Double irtA = (Double) f[3];
+                Double irtB = (Double) f[4];
+                if (irtA != null && irtB != null) {
+                    a[i] = irtA.floatValue();
+                    b[i] = irtB.floatValue();
+                    calibrados++;
+                } else {
+                    a[i] = 1f;
+                    b[i] = (float) bPorDificultad((Long) f[2], dificultades);
+                }
+            }
+
+            int[][] porBanda = new int[BANDAS][];
+            for (int banda = 0; banda < BANDAS; banda++) {
+                double theta = THETA_MIN + banda * PASO_BANDA;
+                double[] info = new double[n];
+                for (int i = 0; i < n; i++) info[i] = new Parametros(a[i], b[i]).informacion(theta);
+                porBanda[banda] = IntStream.range(0, n).boxed()
+                        .sorted((x, y) -> Double.compare(info[y], info[x]))
+                        .mapToInt(Integer::intValue).toArray();
+            }
+            return new Banco(ids, esp, a, b, porBanda, calibrados);
+        }
+
+        private static double bPorDificultad(Long dificultadId, long[] dificultades) {
+            if (dificultadId == null || dificultades.length < 2) return 0.0;
+            int rango = Arrays.binarySearch(dificultades, dificultadId);
+            return -1.5 + 3.0 * rango / (dificultades.length - 1);
+        }
+    }
+}
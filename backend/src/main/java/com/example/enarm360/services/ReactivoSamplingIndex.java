@@ -0,0 +1,540 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.repositories.ReactivoRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongPredicate;
+import java.util.random.RandomGenerator;
+import java.util.stream.Stream;
+
+/**
+ * Índice en memoria de IDs de reactivos para generar exámenes sin ORDER BY RANDOM().
+ *
+ * Mantiene un long[] compacto por especialidad, por (especialidad, dificultad) y por
+ * celda (especialidad, dificultad, clave). Muestrear k IDs distintos cuesta O(k) con un
+ * Fisher–Yates parcial sobre un arreglo virtual, sin copiar ni mutar el pool.
+ *
+ * Cada índice guarda además la celda completa de cada ID (un mapa long → celda con
+ * direccionamiento abierto), así que quitar y reclasificar un reactivo tocan solo sus
+ * tres pools, sin recorrer los demás.
+ *
+ * recargar arma los pools nuevos aparte y los publica con una sola escritura volátil:
+ * quien muestrea durante la recarga sigue viendo el índice anterior completo. Los
+ * cambios incrementales que llegan mientras tanto se aplican a ambos. Los cambios llegan
+ * por ReactivoIndexListener en el nodo que edita y por ReactivoCambiosService en los demás.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReactivoSamplingIndex {
+
+    /**
+     * Llave de un pool. dificultadId y claveId en null significan "cualquiera".
+     */
+    public record Celda(Long especialidadId, Long dificultadId, Long claveId) {
+        public static Celda of(Long especialidadId) {
+            return new Celda(especialidadId, null, null);
+        }
+    }
+
+    private final ReactivoRepository reactivoDao;
+    private final PlatformTransactionManager transactionManager;
+
+    private static final Comparator<Long> IDS = Comparator.nullsFirst(Comparator.naturalOrder());
+    private static final Comparator<Celda> ORDEN_CELDAS = Comparator
+            .comparing(Celda::especialidadId, IDS)
+            .thenComparing(Celda::dificultadId, IDS)
+            .thenComparing(Celda::claveId, IDS);
+
+    private volatile Pools pools = new Pools();
+    private volatile boolean cargado = false;
+
+    // Mientras recargar lee la BD: pools en construcción e IDs que cambiaron entretanto.
+    // También guarda las ubicaciones de ambos índices.
+    private final Object cambios = new Object();
+    private Pools enCarga;
+    private final Set<Long> tocadosEnCarga = new HashSet<>();
+
+    // ==========================================================
+    // CARGA
+    // ==========================================================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarAlIniciar() {
+        try {
+            recargar();
+        } catch (Exception e) {
+            // Si falla (p.ej. BD aún no disponible) se reintenta en el primer muestreo
+            log.error("No se pudo cargar el índice de reactivos", e);
+        }
+    }
+
+    public synchronized void recargar() {
+        long inicio = System.nanoTime();
+        Pools nuevos = new Pools();
+        synchronized (cambios) {
+            enCarga = nuevos;
+            tocadosEnCarga.clear();
+        }
+        Integer total;
+        try {
+            TransactionTemplate tx = new TransactionTemplate(transactionManager);
+            tx.setReadOnly(true);
+            total = tx.execute(status -> {
+                int n = 0;
+                try (Stream<Object[]> filas = reactivoDao.streamClasificaciones()) {
+                    for (Object[] f : (Iterable<Object[]>) filas::iterator) {
+                        Long id = (Long) f[0];
+                        if (id == null || f[1] == null) continue;
+                        synchronized (cambios) {
+                            // Un cambio confirmado durante la lectura ya quedó en nuevos y gana sobre la fila leída
+                            if (tocadosEnCarga.contains(id)) continue;
+                            agregarEn(nuevos, id, new Celda((Long) f[1], (Long) f[2], (Long) f[3]));
+                        }
+                        n++;
+                    }
+                }
+                return n;
+            });
+            synchronized (cambios) {
+                pools = nuevos;
+            }
+        } finally {
+            synchronized (cambios) {
+                enCarga = null;
+                tocadosEnCarga.clear();
+            }
+        }
+        cargado = true;
+        log.info("Índice de reactivos cargado: {} reactivos, {} pools en {} ms",
+                total, nuevos.porCelda.size(), (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    private void asegurarCargado() {
+        if (!cargado) {
+            synchronized (this) {
+                if (!cargado) recargar();
+            }
+        }
+    }
+
+    // ==========================================================
+    // ACTUALIZACIÓN INCREMENTAL
+    // ==========================================================
+
+    /**
+     * Alta o reclasificación: si el ID ya estaba en otra celda, sale de sus pools antes.
+     */
+    public void registrar(Long id, Long especialidadId, Long dificultadId, Long claveId) {
+        if (id == null || especialidadId == null) return;
+        Celda celda = new Celda(especialidadId, dificultadId, claveId);
+        synchronized (cambios) {
+            agregarEn(pools, id, celda);
+            if (enCarga != null) {
+                tocadosEnCarga.add(id);
+                agregarEn(enCarga, id, celda);
+            }
+        }
+    }
+
+    /**
+     * Baja desde el listener. La clasificación que llega puede ser la editada y no la
+     * indexada, así que manda la ubicación guardada.
+     */
+    public void quitar(Long id, Long especialidadId, Long dificultadId, Long claveId) {
+        quitar(id);
+    }
+
+    /**
+     * Quita un ID sin conocer su clasificación: reclasificaciones o IDs que ya no existen en BD.
+     */
+    public void quitar(Long id) {
+        if (id == null) return;
+        synchronized (cambios) {
+            quitarEn(pools, id);
+            if (enCarga != null) {
+                tocadosEnCarga.add(id);
+                quitarEn(enCarga, id);
+            }
+        }
+    }
+
+    /**
+     * Reclasifica un reactivo editado. Si ya está en su celda final no hace nada.
+     */
+    public void actualizar(Long id, Long especialidadId, Long dificultadId, Long claveId) {
+        registrar(id, especialidadId, dificultadId, claveId);
+    }
+
+    private static void agregarEn(Pools destino, long id, Celda celda) {
+        Celda anterior = destino.ubicaciones.get(id);
+        if (celda.equals(anterior)) return;
+        if (anterior != null) quitarDeCeldas(destino, id, anterior);
+        for (Celda c : celdasDe(celda)) {
+            destino.porCelda.computeIfAbsent(c, k -> new IdPool()).agregar(id);
+        }
+        destino.ubicaciones.put(id, celda);
+    }
+
+    private static void quitarEn(Pools destino, long id) {
+        Celda anterior = destino.ubicaciones.quitar(id);
+        if (anterior != null) quitarDeCeldas(destino, id, anterior);
+    }
+
+    private static void quitarDeCeldas(Pools destino, long id, Celda celda) {
+        for (Celda c : celdasDe(celda)) {
+            IdPool pool = destino.porCelda.get(c);
+            if (pool != null) pool.quitar(id);
+        }
+    }
+
+    private static List<Celda> celdasDe(Celda completa) {
+        return List.of(
+                new Celda(completa.especialidadId(), null, null),
+                new Celda(completa.especialidadId(), completa.dificultadId(), null),
+                completa);
+    }
+
+    // ==========================================================
+    // MUESTREO
+    // ==========================================================
+
+    public int contar(Celda celda) {
+        asegurarCargado();
+        return snapshots(celda).stream().mapToInt(Snapshot::vivos).sum();
+    }
+
+    public long[] muestrear(Long especialidadId, int k) {
+        return muestrear(Celda.of(especialidadId), k, ThreadLocalRandom.current());
+    }
+
+    /**
+     * Devuelve hasta k IDs distintos de la celda, en orden aleatorio.
+     * Si la celda tiene menos de k reactivos devuelve todos.
+     */
+    public long[] muestrear(Celda celda, int k, RandomGenerator rnd) {
+        return muestrear(celda, k, rnd, null);
+    }
+
+    /**
+     * Igual que muestrear(celda, k, rnd), pero prefiere los IDs que no cumplen excluir
+     * (p.ej. reactivos ya vistos). Solo si no alcanzan se completa con excluidos, para
+     * que la cuota de la celda se respete.
+     */
+    public long[] muestrear(Celda celda, int k, RandomGenerator rnd, LongPredicate excluir) {
+        asegurarCargado();
+        List<Snapshot> partes = snapshots(celda);
+        int n = partes.stream().mapToInt(Snapshot::total).sum();
+        int vivos = partes.stream().mapToInt(Snapshot::vivos).sum();
+        int m = Math.min(Math.max(k, 0), vivos);
+        long[] resultado = new long[m];
+        if (m == 0) return resultado;
+
+        // Prefijos para traducir un índice global a (parte, posición)
+        int[] inicios = new int[partes.size()];
+        for (int p = 1; p < partes.size(); p++) {
+            inicios[p] = inicios[p - 1] + partes.get(p - 1).total();
+        }
+
+        // Fisher–Yates parcial: solo se registran las posiciones intercambiadas.
+        // Las bajas aún sin compactar se saltan; con excluir, el barajado sigue hasta
+        // juntar m aceptados o agotar la celda.
+        Map<Integer, Integer> swaps = new HashMap<>(m * 2);
+        long[] excluidos = excluir == null ? null : new long[m];
+        int tomados = 0, nExcluidos = 0;
+        for (int i = 0; i < n && tomados < m; i++) {
+            int j = i + rnd.nextInt(n - i);
+            int vj = swaps.getOrDefault(j, j);
+            int vi = swaps.getOrDefault(i, i);
+            swaps.put(j, vi);
+            long id = valorEn(partes, inicios, vj);
+            if (id == BORRADO) continue;
+            if (excluir == null || !excluir.test(id)) {
+                resultado[tomados++] = id;
+            } else if (nExcluidos < m) {
+                excluidos[nExcluidos++] = id;
+            }
+        }
+        for (int e = 0; tomados < m && e < nExcluidos; e++) resultado[tomados++] = excluidos[e];
+        return resultado;
+    }
+
+    private static long valorEn(List<Snapshot> partes, int[] inicios, int global) {
+        int p = Arrays.binarySearch(inicios, global);
+        if (p < 0) p = -p - 2;
+        // Saltar partes vacías que comparten el mismo inicio
+        while (partes.get(p).total() == 0 || global - inicios[p] >= partes.get(p).total()) p++;
+        return partes.get(p).en(global - inicios[p]);
+    }
+
+    /**
+     * Pools que cubren la celda. Una celda (especialidad, null, clave) se resuelve como
+     * la unión de las celdas completas de esa clave en todas las dificultades.
+     */
+    private List<Snapshot> snapshots(Celda celda) {
+        Map<Celda, IdPool> pools = this.pools.porCelda;
+        IdPool directo = pools.get(celda);
+        if (directo != null) return List.of(directo.snapshot);
+        if (celda.claveId() == null || celda.dificultadId() != null) return List.of();
+
+        return pools.entrySet().stream()
+                .filter(e -> e.getKey().claveId() != null
+                        && e.getKey().claveId().equals(celda.claveId())
+                        && e.getKey().especialidadId().equals(celda.especialidadId()))
+                .sorted(Map.Entry.comparingByKey(ORDEN_CELDAS))
+                .map(e -> e.getValue().snapshot)
+                .toList();
+    }
+
+    /**
+     * Conteo por celda completa (especialidad, dificultad, clave) de una especialidad,
+     * ordenado por dificultad y clave. Es el índice de conteos que usa el blueprint.
+     */
+    public Map<Celda, Integer> conteosPorCelda(Long especialidadId) {
+        asegurarCargado();
+        Map<Celda, Integer> conteos = new TreeMap<>(ORDEN_CELDAS);
+        pools.porCelda.forEach((c, pool) -> {
+            int vivos = pool.snapshot.vivos();
+            if (c.claveId() != null && c.especialidadId().equals(especialidadId) && vivos > 0) {
+                conteos.put(c, vivos);
+            }
+        });
+        return conteos;
+    }
+
+    /**
+     * Conteo total por especialidad, ordenado por ID de especialidad.
+     */
+    public Map<Long, Integer> conteosPorEspecialidad() {
+        asegurarCargado();
+        Map<Long, Integer> conteos = new TreeMap<>();
+        pools.porCelda.forEach((c, pool) -> {
+            int vivos = pool.snapshot.vivos();
+            if (c.dificultadId() == null && c.claveId() == null && vivos > 0) {
+                conteos.put(c.especialidadId(), vivos);
+            }
+        });
+        return conteos;
+    }
+
+    // ==========================================================
+    // POOLS DE IDS
+    // ==========================================================
+
+    /**
+     * Un índice completo: los pools por celda, que leen los muestreos sin candado, y la
+     * celda completa de cada ID, que solo se toca dentro de synchronized (cambios).
+     */
+    private static final class Pools {
+        final Map<Celda, IdPool> porCelda = new ConcurrentHashMap<>();
+        final Ubicaciones ubicaciones = new Ubicaciones();
+    }
+
+    // Marca de una baja sin compactar al recorrer un snapshot; los IDs de reactivo son positivos
+    private static final long BORRADO = Long.MIN_VALUE;
+    private static final long[] NINGUNO = new long[0];
+
+    /**
+     * Vista inmutable de un pool: los primeros size elementos de ids nunca cambian
+     * mientras alguien tenga esta referencia. extras (altas fuera de orden) y borrados
+     * (bajas de ids) son arreglos chicos, ordenados y exactos; se copian en cada cambio.
+     * Al recorrerlo, las posiciones [0, size) son ids y las siguientes son extras.
+     */
+    private record Snapshot(long[] ids, int size, long[] extras, long[] borrados) {
+        int total() {
+            return size + extras.length;
+        }
+
+        int vivos() {
+            return size - borrados.length + extras.length;
+        }
+
+        long en(int i) {
+            if (i >= size) return extras[i - size];
+            long id = ids[i];
+            return borrados.length > 0 && Arrays.binarySearch(borrados, id) >= 0 ? BORRADO : id;
+        }
+
+        boolean contiene(long id) {
+            if (Arrays.binarySearch(extras, id) >= 0) return true;
+            return Arrays.binarySearch(ids, 0, size, id) >= 0 && Arrays.binarySearch(borrados, id) < 0;
+        }
+    }
+
+    /**
+     * Arreglo primitivo de IDs ordenado ascendente. Los IDs nuevos son mayores que los
+     * existentes, así que las altas normales son un append O(1) amortizado sobre el mismo
+     * arreglo (publicando un snapshot nuevo). Las altas fuera de orden van a extras y las
+     * bajas del arreglo principal se marcan en borrados; ninguna copia el arreglo grande.
+     * Cuando entre ambos pasan de max(64, size/8) se compacta: una copia O(n) cada n/8
+     * cambios. Un mismo seed produce el mismo muestreo sobre el mismo pool compactado.
+     */
+    private static final class IdPool {
+        private volatile Snapshot snapshot = new Snapshot(new long[16], 0, NINGUNO, NINGUNO);
+
+        synchronized void agregar(long id) {
+            Snapshot s = snapshot;
+            if (s.borrados.length > 0 && Arrays.binarySearch(s.borrados, id) >= 0) {
+                snapshot = new Snapshot(s.ids, s.size, s.extras, sinValor(s.borrados, id));
+                return;
+            }
+            if (s.contiene(id)) return;
+            if (s.size > 0 && id <= s.ids[s.size - 1]) {
+                publicar(new Snapshot(s.ids, s.size, conValor(s.extras, id), s.borrados));
+                return;
+            }
+            long[] ids = s.ids;
+            if (s.size == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length + (ids.length >> 1) + 1);
+            }
+            ids[s.size] = id;
+            snapshot = new Snapshot(ids, s.size + 1, s.extras, s.borrados);
+        }
+
+        synchronized void quitar(long id) {
+            Snapshot s = snapshot;
+            if (Arrays.binarySearch(s.extras, id) >= 0) {
+                snapshot = new Snapshot(s.ids, s.size, sinValor(s.extras, id), s.borrados);
+            } else if (s.contiene(id)) {
+                publicar(new Snapshot(s.ids, s.size, s.extras, conValor(s.borrados, id)));
+            }
+        }
+
+        boolean contiene(long id) {
+            return snapshot.contiene(id);
+        }
+
+        private void publicar(Snapshot s) {
+            snapshot = s.extras.length + s.borrados.length > Math.max(64, s.size >> 3) ? compactar(s) : s;
+        }
+
+        // Mezcla ids (sin los borrados) con extras en un arreglo nuevo
+        private static Snapshot compactar(Snapshot s) {
+            int vivos = s.vivos();
+            long[] ids = new long[vivos + (vivos >> 1) + 1];
+            int n = 0, e = 0, b = 0;
+            for (int i = 0; i < s.size; i++) {
+                long id = s.ids[i];
+                while (b < s.borrados.length && s.borrados[b] < id) b++;
+                if (b < s.borrados.length && s.borrados[b] == id) continue;
+                while (e < s.extras.length && s.extras[e] < id) ids[n++] = s.extras[e++];
+                ids[n++] = id;
+            }
+            while (e < s.extras.length) ids[n++] = s.extras[e++];
+            return new Snapshot(ids, n, NINGUNO, NINGUNO);
+        }
+
+        private static long[] conValor(long[] ordenado, long valor) {
+            int i = -Arrays.binarySearch(ordenado, valor) - 1;
+            long[] nuevo = new long[ordenado.length + 1];
+            System.arraycopy(ordenado, 0, nuevo, 0, i);
+            nuevo[i] = valor;
+            System.arraycopy(ordenado, i, nuevo, i + 1, ordenado.length - i);
+            return nuevo;
+        }
+
+        private static long[] sinValor(long[] ordenado, long valor) {
+            int i = Arrays.binarySearch(ordenado, valor);
+            if (ordenado.length == 1) return NINGUNO;
+            long[] nuevo = new long[ordenado.length - 1];
+            System.arraycopy(ordenado, 0, nuevo, 0, i);
+            System.arraycopy(ordenado, i + 1, nuevo, i, ordenado.length - i - 1);
+            return nuevo;
+        }
+    }
+
+    /**
+     * Celda completa de cada ID: mapa long → celda con direccionamiento abierto (sondeo
+     * lineal y borrado por corrimiento hacia atrás), sin un Long ni una entrada por
+     * reactivo. Las celdas se guardan una vez en un registro y el mapa guarda su número.
+     */
+    private static final class Ubicaciones {
+        private static final long VACIO = 0L;   // los IDs de reactivo empiezan en 1
+
+        private long[] llaves = new long[64];
+        private int[] valores = new int[64];
+        private int tamano;
+        private final List<Celda> registro = new ArrayList<>();
+        private final Map<Celda, Integer> numeros = new HashMap<>();
+
+        Celda get(long id) {
+            int i = buscar(id);
+            return llaves[i] == VACIO ? null : registro.get(valores[i]);
+        }
+
+        void put(long id, Celda celda) {
+            int numero = numeros.computeIfAbsent(celda, c -> {
+                registro.add(c);
+                return registro.size() - 1;
+            });
+            int i = buscar(id);
+            if (llaves[i] == VACIO) {
+                llaves[i] = id;
+                tamano++;
+            }
+            valores[i] = numero;
+            if (tamano * 4 > llaves.length * 3) crecer();
+        }
+
+        Celda quitar(long id) {
+            int i = buscar(id);
+            if (llaves[i] == VACIO) return null;
+            Celda celda = registro.get(valores[i]);
+            int mascara = llaves.length - 1;
+            // Corre hacia atrás las llaves del mismo racimo que quedarían inalcanzables
+            for (int j = (i + 1) & mascara; llaves[j] != VACIO; j = (j + 1) & mascara) {
+                int ideal = posicion(llaves[j], mascara);
+                boolean alcanzable = i <= j ? (i < ideal && ideal <= j) : (i < ideal || ideal <= j);
+                if (alcanzable) continue;
+                llaves[i] = llaves[j];
+                valores[i] = valores[j];
+                i = j;
+            }
+            llaves[i] = VACIO;
+            tamano--;
+            return celda;
+        }
+
+        private int buscar(long id) {
+            int mascara = llaves.length - 1;
+            int i = posicion(id, mascara);
+            while (llaves[i] != VACIO && llaves[i] != id) i = (i + 1) & mascara;
+            return i;
+        }
+
+        private static int posicion(long id, int mascara) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mascara;
+        }
+
+        private void crecer() {
+            long[] viejasLlaves = llaves;
+            int[] viejosValores = valores;
+            llaves = new long[viejasLlaves.length * 2];
+            valores = new int[viejasLlaves.length * 2];
+            for (int i = 0; i < viejasLlaves.length; i++) {
+                if (viejasLlaves[i] == VACIO) continue;
+                int j = buscar(viejasLlaves[i]);
+                llaves[j] = viejasLlaves[i];
+                valores[j] = viejosValores[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.dtos.ReactivoTiempoDTO;
+import com.example.enarm360.entities.ReactivoTiempo;
+import com.example.enarm360.repositories.ReactivoTiempoRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Histogramas por reactivo del tiempo de respuesta (milisegundos), estilo HDR.
+ *
+ * Buckets log-lineales: valores 0..7 exactos y luego 8 sub-buckets por potencia de 2, o
+ * sea error relativo ≤ 12.5% con 8 contadores por duplicación de rango. En memoria solo
+ * vive lo registrado desde el último volcado; cada app.intentos.histogramas-flush-ms se
+ * suma a reactivo_tiempo en una transacción. Consultar un reactivo no recorre intento_pregunta.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReactivoTiempoHistogramas {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final long MAX_MS = Integer.MAX_VALUE;
+
+    private final ReactivoTiempoRepository reactivoTiempoDao;
+    private final PlatformTransactionManager transactionManager;
+
+    private final Map<Long, Delta> pendientes = new ConcurrentHashMap<>();
+
+    // ==========================================================
+    // REGISTRO
+    // ==========================================================
+
+    public void registrar(Long reactivoId, long ms) {
+        if (reactivoId == null || ms < 0) return;
+        long v = Math.min(ms, MAX_MS);
+        // compute toma el lock del bin: el volcado nunca ve un Delta a medio actualizar
+        pendientes.compute(reactivoId, (id, d) -> {
+            if (d == null) d = new Delta();
+            d.agregar(v);
+            return d;
+        });
+    }
+
+    static int bucket(long v) {
+        if (v < SUB) return (int) v;
+        int e = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (e - SUB_BITS)) & (SUB - 1);
+        return (e - SUB_BITS + 1) * SUB + sub;
+    }
+
+    static long limiteInferior(int bucket) {
+        if (bucket < SUB) return bucket;
+        int e = bucket / SUB + SUB_BITS - 1;
+        return (long) (SUB + bucket % SUB) << (e - SUB_BITS);
+    }
+
+    static long limiteSuperior(int bucket) {
+        return bucket < SUB ? bucket : limiteInferior(bucket + 1) - 1;
+    }
+
+    // ==========================================================
+    // VOLCADO
+    // ==========================================================
+
+    @Scheduled(fixedDelayString = "${app.intentos.histogramas-flush-ms:60000}")
+    public void volcar() {
+        if (pendientes.isEmpty()) return;
+
+        Map<Long, Delta> lote = new HashMap<>();
+        for (Long id : new ArrayList<>(pendientes.keySet())) {
+            Delta d = pendientes.remove(id);
+            if (d != null) lote.put(id, d);
+        }
+
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                Map<Long, ReactivoTiempo> filas = reactivoTiempoDao.findAllById(lote.keySet()).stream()
+                        .collect(Collectors.toMap(ReactivoTiempo::getReactivoId, Function.identity()));
+                LocalDateTime ahora = LocalDateTime.now();
+                List<ReactivoTiempo> aGuardar = new ArrayList<>(lote.size());
+                lote.forEach((id, d) -> {
+                    ReactivoTiempo t = filas.computeIfAbsent(id, k -> ReactivoTiempo.builder().reactivoId(k).build());
+                    d.sumarA(t);
+                    t.setActualizadoEn(ahora);
+                    aGuardar.add(t);
+                });
+                reactivoTiempoDao.saveAll(aGuardar);
+            });
+            log.debug("Histogramas de tiempo volcados: {} reactivos", lote.size());
+        } catch (Exception e) {
+            // Se devuelven a memoria y se reintenta en el siguiente ciclo
+            lote.forEach((id, d) -> pendientes.merge(id, d, Delta::combinar));
+            log.warn("No se pudieron volcar los histogramas de tiempo: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void volcarAlApagar() {
+        volcar();
+    }
+
+    // ==========================================================
+    // CONSULTA
+    // ==========================================================
+
+    /**
+     * Resumen de lo ya volcado más lo que sigue en memoria en este nodo.
+     */
+    public ReactivoTiempoDTO resumen(Long reactivoId) {
+        ReactivoTiempo t = reactivoTiempoDao.findById(reactivoId)
+                .orElseGet(() -> ReactivoTiempo.builder().reactivoId(reactivoId).build());
+        Map<String, Long> buckets = new HashMap<>(t.getBuckets());
+        long conteo = t.getConteo();
+        long suma = t.getSumaMs();
+        long max = t.getMaxMs();
+
+        Delta d = pendientes.get(reactivoId);
+        if (d != null) {
+            synchronized (d) {
+                d.buckets.forEach((b, n) -> buckets.merge(String.valueOf(b), n, Long::sum));
+                conteo += d.conteo;
+                suma += d.sumaMs;
+                max = Math.max(max, d.maxMs);
+            }
+        }
+
+        long[] porBucket = new long[bucket(MAX_MS) + 1];
+        buckets.forEach((b, n) -> porBucket[Integer.parseInt(b)] += n);
+        return ReactivoTiempoDTO.builder()
+                .reactivoId(reactivoId)
+                .conteo(conteo)
+                .mediaMs(conteo == 0 ? 0 : suma / conteo)
+                .p50Ms(percentil(porBucket, conteo, 0.50, max))
+                .p90Ms(percentil(porBucket, conteo, 0.90, max))
+                .p99Ms(percentil(porBucket, conteo, 0.99, max))
+                .maxMs(max)
+                .build();
+    }
+
+    // Límite superior del bucket donde cae el percentil (como HDR), acotado por el máximo visto
+    private static long percentil(long[] porBucket, long conteo, double p, long max) {
+        if (conteo == 0) return 0;
+        long objetivo = Math.max(1, (long) Math.ceil(conteo * p));
+        long acumulado = 0;
+        for (int b = 0; b < porBucket.length; b++) {
+            acumulado += porBucket[b];
+            if (acumulado >= objetivo) return Math.min(limiteSuperior(b), max);
+        }
+        return max;
+    }
+
+    /**
+     * Lo registrado de un reactivo desde el último volcado, con buckets dispersos.
+     */
+    private static final class Delta {
+        final Map<Integer, Long> buckets = new HashMap<>();
+        long conteo;
+        long sumaMs;
+        long maxMs;
+
+        synchronized void agregar(long v) {
+            buckets.merge(bucket(v), 1L, Long::sum);
+            conteo++;
+            sumaMs += v;
+            maxMs = Math.max(maxMs, v);
+        }
+
+        synchronized void sumarA(ReactivoTiempo t) {
+            Map<String, Long> destino = new HashMap<>(t.getBuckets());
+            buckets.forEach((b, n) -> destino.merge(String.valueOf(b), n, Long::sum));
+            t.setBuckets(destino);
+            t.setConteo(t.getConteo() + conteo);
+            t.setSumaMs(t.getSumaMs() + sumaMs);
+            t.setMaxMs(Math.max(t.getMaxMs(), maxMs));
+        }
+
+        static Delta combinar(Delta a, Delta b) {
+            synchronized (a) {
+                synchronized (b) {
+                    b.buckets.forEach((k, n) -> a.buckets.merge(k, n, Long::sum));
+                    a.conteo += b.conteo;
+                    a.sumaMs += b.sumaMs;
+                    a.maxMs = Math.max(a.maxMs, b.maxMs);
+                }
+            }
+            return a;
+        }
+    }
+}
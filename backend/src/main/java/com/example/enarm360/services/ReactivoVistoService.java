@@ -0,0 +1,221 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.entities.UsuarioReactivosVistos;
+import com.example.enarm360.repositories.IntentoPreguntaRepository;
+import com.example.enarm360.repositories.UsuarioReactivosVistosRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
+import java.util.stream.Stream;
+
+/**
+ * Conjunto de reactivos ya respondidos por cada usuario, para que la generación de
+ * exámenes prefiera los que no ha visto.
+ *
+ * Cada usuario tiene un ReactivoBitmap en memoria. Responder solo agrega el ID al bitmap;
+ * un volcado periódico lo une con la fila de usuario_reactivos_vistos y lo guarda
+ * serializado. Si el usuario no tiene fila todavía, el bitmap se arma una vez desde
+ * intento_pregunta. Los usuarios sin actividad reciente salen de memoria tras volcarse.
+ */
+@Slf4j
+@Component
+public class ReactivoVistoService {
+
+    private static final LongPredicate NINGUNO = id -> false;
+
+    private final UsuarioReactivosVistosRepository vistosDao;
+    private final IntentoPreguntaRepository intentoPreguntaDao;
+    private final TransactionTemplate tx;
+    private final TransactionTemplate txPropia;
+    private final long inactividadNanos;
+
+    private final Map<Long, Entrada> entradas = new ConcurrentHashMap<>();
+
+    public ReactivoVistoService(UsuarioReactivosVistosRepository vistosDao,
+                                IntentoPreguntaRepository intentoPreguntaDao,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${app.reactivos-vistos.inactividad-min:30}") long inactividadMin) {
+        this.vistosDao = vistosDao;
+        this.intentoPreguntaDao = intentoPreguntaDao;
+        this.tx = new TransactionTemplate(transactionManager);
+        // La primera carga ocurre dentro de la generación de un examen: su escritura no debe
+        // unirse a esa transacción, o un choque de llave (otro nodo la creó) la revertiría
+        this.txPropia = new TransactionTemplate(transactionManager);
+        this.txPropia.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.inactividadNanos = TimeUnit.MINUTES.toNanos(inactividadMin);
+    }
+
+    /**
+     * Bitmap de un usuario. Hasta cargarse solo contiene lo respondido desde que entró a
+     * memoria; al cargarse se une con lo guardado.
+     */
+    private static final class Entrada {
+        final ReactivoBitmap bitmap = new ReactivoBitmap();
+        ReactivoBitmap nuevos = new ReactivoBitmap();
+        boolean cargado;
+        boolean retirada;   // salió del mapa: quien la tenga debe tomar otra
+        volatile long ultimoUso = System.nanoTime();
+    }
+
+    // ==========================================================
+    // CONSULTA
+    // ==========================================================
+
+    /**
+     * Predicado "ya lo vio" para excluir reactivos al generar. Sin usuario no excluye nada.
+     */
+    public LongPredicate vistos(Long usuarioId) {
+        if (usuarioId == null) return NINGUNO;
+        Entrada e = cargada(usuarioId);
+        if (e.bitmap.isEmpty()) return NINGUNO;
+        return id -> {
+            synchronized (e) {
+                return e.bitmap.contiene(id);
+            }
+        };
+    }
+
+    public int contar(Long usuarioId) {
+        if (usuarioId == null) return 0;
+        Entrada e = cargada(usuarioId);
+        synchronized (e) {
+            return e.bitmap.cardinalidad();
+        }
+    }
+
+    private Entrada cargada(Long usuarioId) {
+        Entrada e = entradas.computeIfAbsent(usuarioId, k -> new Entrada());
+        e.ultimoUso = System.nanoTime();
+        if (e.cargado) return e;
+
+        // Se lee fuera del lock; las respuestas que lleguen mientras tanto quedan en nuevos
+        ReactivoBitmap guardado = leer(usuarioId);
+        synchronized (e) {
+            if (!e.cargado) {
+                e.bitmap.agregarTodos(guardado);
+                e.cargado = true;
+            }
+        }
+        return e;
+    }
+
+    // ==========================================================
+    // ACTUALIZACIÓN
+    // ==========================================================
+
+    /**
+     * Registra que el usuario respondió el reactivo. Solo memoria; se persiste en el volcado.
+     */
+    public void marcar(Long usuarioId, Long reactivoId) {
+        if (usuarioId == null || reactivoId == null) return;
+        while (true) {
+            Entrada e = entradas.computeIfAbsent(usuarioId, k -> new Entrada());
+            synchronized (e) {
+                if (e.retirada) continue;
+                if (e.bitmap.agregar(reactivoId)) e.nuevos.agregar(reactivoId);
+            }
+            e.ultimoUso = System.nanoTime();
+            return;
+        }
+    }
+
+    // ==========================================================
+    // PERSISTENCIA
+    // ==========================================================
+
+    @Scheduled(fixedDelayString = "${app.reactivos-vistos.flush-ms:60000}")
+    public void volcar() {
+        long ahora = System.nanoTime();
+        entradas.forEach((usuarioId, e) -> {
+            ReactivoBitmap nuevos;
+            synchronized (e) {
+                nuevos = e.nuevos;
+                if (!nuevos.isEmpty()) e.nuevos = new ReactivoBitmap();
+            }
+            if (!nuevos.isEmpty()) {
+                try {
+                    guardar(usuarioId, nuevos);
+                } catch (Exception ex) {
+                    // Se reintenta en el siguiente volcado
+                    synchronized (e) {
+                        e.nuevos.agregarTodos(nuevos);
+                    }
+                    log.warn("No se pudo guardar el bitmap de vistos del usuario {}: {}", usuarioId, ex.getMessage());
+                    return;
+                }
+            }
+            if (ahora - e.ultimoUso > inactividadNanos) {
+                entradas.computeIfPresent(usuarioId, (k, actual) -> {
+                    synchronized (actual) {
+                        if (!actual.nuevos.isEmpty()) return actual;
+                        actual.retirada = true;
+                        return null;
+                    }
+                });
+            }
+        });
+    }
+
+    @PreDestroy
+    public void volcarAlApagar() {
+        volcar();
+    }
+
+    /**
+     * Une los IDs nuevos con la fila guardada. Si no hay fila, la arma desde el historial,
+     * que ya puede incluir parte de los nuevos (la unión lo absorbe).
+     */
+    private void guardar(Long usuarioId, ReactivoBitmap nuevos) {
+        tx.executeWithoutResult(status -> {
+            UsuarioReactivosVistos fila = vistosDao.findById(usuarioId).orElse(null);
+            ReactivoBitmap union = fila != null ? ReactivoBitmap.deserializar(fila.getBitmap()) : desdeHistorial(usuarioId);
+            union.agregarTodos(nuevos);
+            escribir(fila != null ? fila : UsuarioReactivosVistos.builder().usuarioId(usuarioId).build(), union);
+        });
+    }
+
+    private void escribir(UsuarioReactivosVistos fila, ReactivoBitmap bitmap) {
+        fila.setBitmap(bitmap.serializar());
+        fila.setCardinalidad(bitmap.cardinalidad());
+        fila.setActualizadoEn(LocalDateTime.now());
+        vistosDao.save(fila);
+    }
+
+    /**
+     * Bitmap guardado del usuario. La primera vez se arma desde el historial y se guarda,
+     * para que las siguientes cargas sean una sola fila.
+     */
+    private ReactivoBitmap leer(Long usuarioId) {
+        UsuarioReactivosVistos fila = vistosDao.findById(usuarioId).orElse(null);
+        if (fila != null) return ReactivoBitmap.deserializar(fila.getBitmap());
+
+        ReactivoBitmap historial = tx.execute(status -> desdeHistorial(usuarioId));
+        try {
+            txPropia.executeWithoutResult(status ->
+                    escribir(UsuarioReactivosVistos.builder().usuarioId(usuarioId).build(), historial));
+        } catch (Exception e) {
+            // Otro nodo la creó primero o la BD falló: el bitmap sirve igual en memoria
+            log.debug("No se guardó el bitmap inicial del usuario {}: {}", usuarioId, e.getMessage());
+        }
+        return historial;
+    }
+
+    private ReactivoBitmap desdeHistorial(Long usuarioId) {
+        ReactivoBitmap b = new ReactivoBitmap();
+        try (Stream<Long> ids = intentoPreguntaDao.streamReactivosRespondidosPorUsuario(usuarioId)) {
+            ids.forEach(b::agregar);
+        }
+        return b;
+    }
+}
@@ -0,0 +1,370 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.entities.RepasoReactivo;
+import com.example.enarm360.repositories.RepasoReactivoRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cola de repaso espaciado por usuario para los reactivos que falló.
+ *
+ * Cada reactivo fallado entra a la cola con el algoritmo SM-2: fallarlo otra vez lo
+ * reinicia a un día; acertarlo alarga el intervalo (1, 6 y luego intervalo × facilidad).
+ * La cola de cada usuario es un min-heap indexado por fecha de vencimiento, se carga de
+ * repaso_reactivo la primera vez que se usa y solo los reactivos que cambiaron se
+ * escriben en el volcado periódico. Armar un repaso de k reactivos cuesta O(k log n).
+ *
+ * El volcado escribe el lote de cada usuario en una transacción. Si falla (otro nodo
+ * insertó o actualizó el mismo reactivo), se reintenta fila por fila: la fila que choca
+ * se descarta y el reactivo se pone al día con lo que quedó en la BD, sin volver a la cola.
+ */
+@Slf4j
+@Service
+public class RepasoService {
+
+    private static final double FACILIDAD_INICIAL = 2.5;
+    private static final double FACILIDAD_MINIMA = 1.3;
+    private static final int CALIDAD_ACIERTO = 4;
+    private static final int CALIDAD_FALLO = 1;
+
+    private final RepasoReactivoRepository repasoDao;
+    private final TransactionTemplate tx;
+    private final long inactividadNanos;
+
+    private final Map<Long, Cola> colas = new ConcurrentHashMap<>();
+
+    public RepasoService(RepasoReactivoRepository repasoDao,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${app.repaso.inactividad-min:30}") long inactividadMin) {
+        this.repasoDao = repasoDao;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.inactividadNanos = TimeUnit.MINUTES.toNanos(inactividadMin);
+    }
+
+    // ==========================================================
+    // CALIFICACIÓN
+    // ==========================================================
+
+    /**
+     * Aplica el resultado de un intento finalizado: los fallos entran (o vuelven) a la
+     * cola y los aciertos solo avanzan reactivos que ya estaban en ella.
+     *
+     * @param resultados reactivoId → correcta
+     */
+    public void registrarResultados(Long usuarioId, Map<Long, Boolean> resultados) {
+        if (usuarioId == null || resultados.isEmpty()) return;
+        LocalDateTime ahora = LocalDateTime.now();
+        while (true) {
+            Cola c = cola(usuarioId);
+            synchronized (c) {
+                if (c.retirada) continue;
+                aplicar(c, resultados, ahora);
+                return;
+            }
+        }
+    }
+
+    private static void aplicar(Cola c, Map<Long, Boolean> resultados, LocalDateTime ahora) {
+        resultados.forEach((reactivoId, correcta) -> {
+            Item it = c.porReactivo.get(reactivoId);
+            if (it == null) {
+                if (Boolean.TRUE.equals(correcta)) return;
+                it = new Item(reactivoId);
+                calificar(it, CALIDAD_FALLO, ahora);
+                c.agregar(it);
+            } else {
+                calificar(it, Boolean.TRUE.equals(correcta) ? CALIDAD_ACIERTO : CALIDAD_FALLO, ahora);
+                c.reubicar(it);
+            }
+            c.sucios.add(it);
+        });
+        c.ultimoUso = System.nanoTime();
+    }
+
+    /**
+     * SM-2: calidad 0..5; menos de 3 cuenta como fallo.
+     */
+    static void calificar(Item it, int calidad, LocalDateTime ahora) {
+        if (calidad < 3) {
+            it.repeticiones = 0;
+            it.intervaloDias = 1;
+        } else {
+            it.intervaloDias = switch (it.repeticiones) {
+                case 0 -> 1;
+                case 1 -> 6;
+                default -> Math.round(it.intervaloDias * it.facilidad);
+            };
+            it.repeticiones++;
+        }
+        int q = 5 - calidad;
+        it.facilidad = Math.max(FACILIDAD_MINIMA, it.facilidad + 0.1 - q * (0.08 + q * 0.02));
+        it.venceEn = ahora.plus(Duration.ofMinutes(Math.round(it.intervaloDias * 24 * 60)));
+    }
+
+    // ==========================================================
+    // CONSULTA
+    // ==========================================================
+
+    /**
+     * Hasta k reactivos vencidos a la fecha, del más atrasado al más reciente.
+     * No los saca de la cola: siguen vencidos hasta que se respondan.
+     */
+    public List<Long> vencidos(Long usuarioId, int k, LocalDateTime ahora) {
+        Cola c = cola(usuarioId);
+        synchronized (c) {
+            c.ultimoUso = System.nanoTime();
+            List<Item> tomados = new ArrayList<>(Math.min(k, c.heap.size()));
+            while (tomados.size() < k && !c.heap.isEmpty() && !c.heap.get(0).venceEn.isAfter(ahora)) {
+                tomados.add(c.sacarMinimo());
+            }
+            List<Long> ids = new ArrayList<>(tomados.size());
+            for (Item it : tomados) {
+                ids.add(it.reactivoId);
+                c.agregar(it);
+            }
+            return ids;
+        }
+    }
+
+    // ==========================================================
+    // CARGA Y VOLCADO
+    // ==========================================================
+
+    private Cola cola(Long usuarioId) {
+        Cola c = colas.computeIfAbsent(usuarioId, Cola::new);
+        if (c.cargada) return c;
+        synchronized (c) {
+            if (!c.cargada) {
+                for (RepasoReactivo r : repasoDao.findByUsuarioId(usuarioId)) {
+                    Item it = new Item(r.getReactivoId());
+                    it.id = r.getId();
+                    it.repeticiones = r.getRepeticiones();
+                    it.facilidad = r.getFacilidad();
+                    it.intervaloDias = r.getIntervaloDias();
+                    it.venceEn = r.getVenceEn();
+                    it.version = r.getVersion();
+                    c.agregar(it);
+                }
+                c.cargada = true;
+            }
+        }
+        return c;
+    }
+
+    @Scheduled(fixedDelayString = "${app.repaso.flush-ms:30000}")
+    public void volcar() {
+        long ahora = System.nanoTime();
+        colas.forEach((usuarioId, c) -> {
+            Map<Item, RepasoReactivo> lote = new LinkedHashMap<>();
+            synchronized (c) {
+                for (Item it : c.sucios) lote.put(it, it.aFila(usuarioId));
+                c.sucios.clear();
+            }
+            if (!lote.isEmpty() && !guardarLote(c, lote)) {
+                for (Item it : lote.keySet()) guardarFila(usuarioId, c, it);
+            }
+            if (ahora - c.ultimoUso > inactividadNanos) {
+                colas.computeIfPresent(usuarioId, (k, actual) -> {
+                    synchronized (actual) {
+                        if (!actual.sucios.isEmpty()) return actual;
+                        actual.retirada = true;
+                        return null;
+                    }
+                });
+            }
+        });
+    }
+
+    private boolean guardarLote(Cola c, Map<Item, RepasoReactivo> lote) {
+        try {
+            List<RepasoReactivo> guardadas = tx.execute(status -> repasoDao.saveAll(lote.values()));
+            synchronized (c) {
+                int i = 0;
+                for (Item it : lote.keySet()) it.guardada(guardadas.get(i++));
+            }
+            return true;
+        } catch (Exception e) {
+            log.debug("Lote de repaso del usuario {} rechazado, se guarda fila por fila: {}", c.usuarioId, e.getMessage());
+            return false;
+        }
+    }
+
+    private void guardarFila(Long usuarioId, Cola c, Item it) {
+        // La fila del lote pudo quedar con ID de la transacción revertida: se arma de nuevo
+        RepasoReactivo fila;
+        synchronized (c) {
+            fila = it.aFila(usuarioId);
+        }
+        try {
+            RepasoReactivo guardada = tx.execute(status -> repasoDao.save(fila));
+            synchronized (c) {
+                it.guardada(guardada);
+            }
+        } catch (DataIntegrityViolationException | OptimisticLockingFailureException e) {
+            // Otro nodo escribió este reactivo: gana la BD
+            log.warn("Repaso del usuario {} reactivo {} cambió en otro nodo, se toma el de la BD",
+                    usuarioId, it.reactivoId);
+            RepasoReactivo actual = repasoDao.findByUsuarioIdAndReactivoId(usuarioId, it.reactivoId).orElse(null);
+            synchronized (c) {
+                c.sincronizar(it, actual);
+            }
+        } catch (Exception e) {
+            log.warn("Se descarta el repaso del usuario {} reactivo {}: {}", usuarioId, it.reactivoId, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void volcarAlApagar() {
+        volcar();
+    }
+
+    // ==========================================================
+    // COLA
+    // ==========================================================
+
+    static final class Item {
+        final long reactivoId;
+        Long id;
+        int repeticiones;
+        double facilidad = FACILIDAD_INICIAL;
+        double intervaloDias;
+        LocalDateTime venceEn;
+        Long version;
+        int pos = -1;
+
+        Item(long reactivoId) {
+            this.reactivoId = reactivoId;
+        }
+
+        RepasoReactivo aFila(Long usuarioId) {
+            return RepasoReactivo.builder()
+                    .id(id)
+                    .usuarioId(usuarioId)
+                    .reactivoId(reactivoId)
+                    .repeticiones(repeticiones)
+                    .facilidad(facilidad)
+                    .intervaloDias(intervaloDias)
+                    .venceEn(venceEn)
+                    .actualizadoEn(LocalDateTime.now())
+                    .version(version)
+                    .build();
+        }
+
+        void guardada(RepasoReactivo fila) {
+            id = fila.getId();
+            version = fila.getVersion();
+        }
+    }
+
+    /**
+     * Min-heap por venceEn donde cada Item sabe su posición, para reubicarlo en O(log n)
+     * cuando cambia su vencimiento.
+     */
+    private static final class Cola {
+        final Long usuarioId;
+        final List<Item> heap = new ArrayList<>();
+        final Map<Long, Item> porReactivo = new HashMap<>();
+        final Set<Item> sucios = new LinkedHashSet<>();
+        volatile boolean cargada;
+        boolean retirada;   // salió del mapa: quien la tenga debe tomar otra
+        volatile long ultimoUso = System.nanoTime();
+
+        Cola(Long usuarioId) {
+            this.usuarioId = usuarioId;
+        }
+
+        void agregar(Item it) {
+            porReactivo.put(it.reactivoId, it);
+            it.pos = heap.size();
+            heap.add(it);
+            subir(it.pos);
+        }
+
+        Item sacarMinimo() {
+            Item min = heap.get(0);
+            Item ultimo = heap.remove(heap.size() - 1);
+            if (ultimo != min) {
+                colocar(0, ultimo);
+                bajar(0);
+            }
+            min.pos = -1;
+            porReactivo.remove(min.reactivoId);
+            return min;
+        }
+
+        void reubicar(Item it) {
+            subir(it.pos);
+            bajar(it.pos);
+        }
+
+        /**
+         * Pone el reactivo al día con la fila de la BD. Si cambió otra vez desde el
+         * volcado, se queda con el cambio local y solo adopta ID y versión para
+         * escribirlo encima en el siguiente volcado.
+         */
+        void sincronizar(Item it, RepasoReactivo fila) {
+            if (fila == null) {
+                it.id = null;
+                it.version = null;
+                return;
+            }
+            it.id = fila.getId();
+            it.version = fila.getVersion();
+            if (sucios.contains(it)) return;
+            it.repeticiones = fila.getRepeticiones();
+            it.facilidad = fila.getFacilidad();
+            it.intervaloDias = fila.getIntervaloDias();
+            it.venceEn = fila.getVenceEn();
+            if (it.pos >= 0) reubicar(it);
+        }
+
+        private void subir(int i) {
+            Item it = heap.get(i);
+            while (i > 0) {
+                int padre = (i - 1) >>> 1;
+                if (!heap.get(padre).venceEn.isAfter(it.venceEn)) break;
+                colocar(i, heap.get(padre));
+                i = padre;
+            }
+            colocar(i, it);
+        }
+
+        private void bajar(int i) {
+            Item it = heap.get(i);
+            int n = heap.size();
+            while (true) {
+                int hijo = 2 * i + 1;
+                if (hijo >= n) break;
+                if (hijo + 1 < n && heap.get(hijo + 1).venceEn.isBefore(heap.get(hijo).venceEn)) hijo++;
+                if (!heap.get(hijo).venceEn.isBefore(it.venceEn)) break;
+                colocar(i, heap.get(hijo));
+                i = hijo;
+            }
+            colocar(i, it);
+        }
+
+        private void colocar(int i, Item it) {
+            heap.set(i, it);
+            it.pos = i;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.repositories.ReactivoRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.stream.Stream;
+
+/**
+ * Índice reactivo ID → letra correcta para calificar sin cargar el reactivo.
+ *
+ * Mapa de direccionamiento abierto sobre long[]/byte[] (sin boxing): ~9 bytes por
+ * reactivo. Las lecturas no toman lock; las escrituras sí. Las entradas nunca se
+ * mueven (las bajas dejan una lápida), así una lectura concurrente ve la letra vieja
+ * o la nueva, nunca la de otro reactivo. Si un ID no está, se consulta la BD y se guarda.
+ *
+ * Las ediciones de otros nodos llegan por la bitácora de ReactivoCambiosService.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RespuestaCorrectaIndex {
+
+    private static final byte VACIO = 0;
+    private static final byte BORRADO = -1;
+
+    private final ReactivoRepository reactivoDao;
+    private final PlatformTransactionManager transactionManager;
+
+    private volatile Tabla tabla = new Tabla(1024);
+
+    // ==========================================================
+    // CARGA
+    // ==========================================================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarAlIniciar() {
+        try {
+            long inicio = System.nanoTime();
+            TransactionTemplate tx = new TransactionTemplate(transactionManager);
+            tx.setReadOnly(true);
+            tx.executeWithoutResult(status -> {
+                try (Stream<Object[]> filas = reactivoDao.streamRespuestasCorrectas()) {
+                    filas.forEach(f -> guardar((Long) f[0], (String) f[1]));
+                }
+            });
+            log.info("Índice de respuestas correctas cargado: {} reactivos en {} ms",
+                    tabla.ocupados, (System.nanoTime() - inicio) / 1_000_000);
+        } catch (Exception e) {
+            // Sin índice se califica igual: cada miss va a la BD
+            log.error("No se pudo cargar el índice de respuestas correctas", e);
+        }
+    }
+
+    // ==========================================================
+    // CONSULTA
+    // ==========================================================
+
+    /**
+     * true si la letra enviada es la correcta (sin distinguir mayúsculas).
+     */
+    public boolean esCorrecta(Long reactivoId, String respuesta) {
+        if (respuesta == null || respuesta.length() != 1) return false;
+        byte correcta = respuestaCorrecta(reactivoId);
+        return correcta != VACIO && Character.toLowerCase(respuesta.charAt(0)) == (char) correcta;
+    }
+
+    /**
+     * Letra correcta ('a'..'d') como byte, o 0 si el reactivo no existe.
+     */
+    public byte respuestaCorrecta(Long reactivoId) {
+        byte v = tabla.get(reactivoId);
+        if (v > 0) return v;
+
+        String letra = reactivoDao.findRespuestaCorrectaById(reactivoId).orElse(null);
+        if (letra == null) return VACIO;
+        guardar(reactivoId, letra);
+        return codificar(letra);
+    }
+
+    // ==========================================================
+    // ACTUALIZACIÓN
+    // ==========================================================
+
+    public synchronized void guardar(Long reactivoId, String letra) {
+        byte v = codificar(letra);
+        if (reactivoId == null || reactivoId <= 0 || v == VACIO) return;
+        Tabla t = tabla;
+        if ((t.ocupados + 1) * 4L >= t.keys.length * 3L) {
+            t = t.redimensionar();
+            tabla = t;
+        }
+        t.put(reactivoId, v);
+    }
+
+    public synchronized void quitar(Long reactivoId) {
+        if (reactivoId == null) return;
+        tabla.borrar(reactivoId);
+    }
+
+    private static byte codificar(String letra) {
+        if (letra == null || letra.length() != 1) return VACIO;
+        char c = Character.toLowerCase(letra.charAt(0));
+        return c >= 'a' && c <= 'z' ? (byte) c : VACIO;
+    }
+
+    // ==========================================================
+    // TABLA
+    // ==========================================================
+
+    /**
+     * Sondeo lineal sobre potencia de 2. La llave 0 marca slot libre (los IDs empiezan en 1).
+     *
+     * Los slots se publican con release/acquire: el valor se escribe antes que la llave
+     * (setRelease) y quien lee la llave con getAcquire ve ese valor o uno posterior.
+     */
+    private static final class Tabla {
+        private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(long[].class);
+        private static final VarHandle VALS = MethodHandles.arrayElementVarHandle(byte[].class);
+
+        final long[] keys;
+        final byte[] vals;
+        final int mask;
+        int ocupados;   // slots con llave, incluye lápidas
+
+        Tabla(int capacidad) {
+            keys = new long[capacidad];
+            vals = new byte[capacidad];
+            mask = capacidad - 1;
+        }
+
+        private static int hash(long k) {
+            long h = k * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        byte get(long k) {
+            for (int i = hash(k) & mask; ; i = (i + 1) & mask) {
+                long actual = (long) KEYS.getAcquire(keys, i);
+                if (actual == 0) return VACIO;
+                if (actual == k) return (byte) VALS.getAcquire(vals, i);
+            }
+        }
+
+        void put(long k, byte v) {
+            int i = hash(k) & mask;
+            while (keys[i] != 0 && keys[i] != k) i = (i + 1) & mask;
+            // El valor se publica antes que la llave: quien vea la llave nueva ve el valor
+            VALS.setRelease(vals, i, v);
+            if (keys[i] == 0) {
+                KEYS.setRelease(keys, i, k);
+                ocupados++;
+            }
+        }
+
+        void borrar(long k) {
+            for (int i = hash(k) & mask; keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == k) {
+                    VALS.setRelease(vals, i, BORRADO);
+                    return;
+                }
+            }
+        }
+
+        Tabla redimensionar() {
+            int vivos = 0;
+            for (byte v : vals) if (v > 0) vivos++;
+            int capacidad = keys.length;
+            while ((vivos + 1) * 2L >= capacidad) capacidad <<= 1;
+            Tabla nueva = new Tabla(capacidad);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0 && vals[i] > 0) nueva.put(keys[i], vals[i]);
+            }
+            return nueva;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.example.enarm360.config.SubscriptionConfig;
 import com.example.enarm360.entities.Usuario;
 import com.example.enarm360.entities.UserSubscription;
 import com.example.enarm360.repositories.UsuarioRepository;
+import com.example.enarm360.security.PrincipalInvalidacionService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -26,6 +27,7 @@ public class UsuarioService {
     private final UsuarioRepository usuarioRepository;
     private final PasswordEncoder passwordEncoder;
     private final SubscriptionConfig subscriptionConfig;
+    private final PrincipalInvalidacionService principalInvalidacion;
     
     // =======================================================
     // MÉTODOS BÁSICOS DE USUARIO (CRUD)
@@ -120,6 +122,8 @@ public class UsuarioService {
             existingUsuario.setContrasenaHash(passwordEncoder.encode(usuarioUpdate.getContrasenaHash()));
         }
         
+        // Puede cambiar el username (el subject de sus tokens)
+        principalInvalidacion.usuarioCambiado(existingUsuario);
         Usuario savedUsuario = usuarioRepository.save(existingUsuario);
         log.info("Usuario actualizado: {}", savedUsuario.getUsername());
         
@@ -129,12 +133,14 @@ public class UsuarioService {
     public void deleteUsuario(Long id) {
         Usuario usuario = findById(id);
         usuarioRepository.delete(usuario);
+        principalInvalidacion.usuarioEliminado(id);
         log.info("Usuario eliminado: {}", usuario.getUsername());
     }
     
     public void activateUsuario(Long id) {
         Usuario usuario = findById(id);
         usuario.setActivo(true);
+        principalInvalidacion.usuarioCambiado(usuario);
         usuarioRepository.save(usuario);
         log.info("Usuario activado: {}", usuario.getUsername());
     }
@@ -142,6 +148,7 @@ public class UsuarioService {
     public void deactivateUsuario(Long id) {
         Usuario usuario = findById(id);
         usuario.setActivo(false);
+        principalInvalidacion.usuarioCambiado(usuario);
         usuarioRepository.save(usuario);
         log.info("Usuario desactivado: {}", usuario.getUsername());
     }
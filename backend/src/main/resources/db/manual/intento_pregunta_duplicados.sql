@@ -0,0 +1,24 @@
+-- Limpieza única de respuestas duplicadas en intento_pregunta (mismo intento y reactivo).
+-- No corre al arrancar: revisar el reporte, respaldar y ejecutar a mano en una transacción.
+-- Se conserva la fila más reciente (id mayor) de cada par, que es la que lee la aplicación.
+
+BEGIN;
+
+-- 1. Reporte: pares duplicados y filas que se borrarían
+SELECT a.intento_examen_id, a.reactivo_id, a.id AS id_a_borrar, a.respuesta, a.correcta, a.secuencia
+FROM intento_pregunta a
+JOIN intento_pregunta b
+  ON a.intento_examen_id = b.intento_examen_id AND a.reactivo_id = b.reactivo_id AND a.id < b.id
+ORDER BY a.intento_examen_id, a.reactivo_id, a.id;
+
+-- 2. Borrado
+DELETE FROM intento_pregunta a USING intento_pregunta b
+WHERE a.intento_examen_id = b.intento_examen_id AND a.reactivo_id = b.reactivo_id AND a.id < b.id;
+
+-- 3. Restricción completa (también la crea el siguiente arranque); el índice parcial de
+--    versiones anteriores, si existe, ya no hace falta
+ALTER TABLE intento_pregunta ADD CONSTRAINT uk_intento_pregunta_intento_reactivo UNIQUE (intento_examen_id, reactivo_id);
+DROP INDEX IF EXISTS uk_intento_pregunta_nuevas;
+
+-- Revisar el número de filas borradas contra el reporte antes de confirmar
+COMMIT;
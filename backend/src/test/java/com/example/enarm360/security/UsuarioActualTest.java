@@ -0,0 +1,120 @@
+package com.example.enarm360.security;
+
+import com.example.enarm360.config.PrincipalCacheProperties;
+import com.example.enarm360.dtos.auth.UsuarioInfo;
+import com.example.enarm360.entities.Usuario;
+import com.example.enarm360.services.AuthService;
+import com.example.enarm360.support.DatosPrueba;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Consultas a la BD para resolver al usuario actual: ninguna para el ID, una por request
+ * para la información completa sin importar cuántos servicios la pidan, y ninguna en el
+ * siguiente request mientras siga en PrincipalCache.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({UsuarioActual.class, SubscriptionSecurityUtils.class, PrincipalCache.class,
+        PrincipalCacheProperties.class, UsuarioActualTest.Metricas.class})
+class UsuarioActualTest {
+
+    @TestConfiguration
+    static class Metricas {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    private UsuarioActual usuarioActual;
+
+    @Autowired
+    private SubscriptionSecurityUtils subscriptionSecurityUtils;
+
+    @Autowired
+    private EntityManager em;
+
+    @MockitoBean
+    private AuthService authService;
+
+    private Statistics estadisticas;
+    private Usuario usuario;
+
+    @BeforeEach
+    void preparar() {
+        estadisticas = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        usuario = new DatosPrueba(em).usuario();
+        em.flush();
+        em.clear();
+
+        UserDetailsImpl principal = new UserDetailsImpl(usuario.getId(), usuario.getUsername(),
+                null, null, null, null, true, 0L, List.of());
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+    }
+
+    @AfterEach
+    void limpiar() {
+        SecurityContextHolder.clearContext();
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void unaConsultaPorRequestAunqueVariosServiciosLaPidan() {
+        nuevoRequest();
+        estadisticas.clear();
+
+        Long id = usuarioActual.id();
+        Long idSuscripcion = subscriptionSecurityUtils.getUserIdFromAuth(null);
+        assertThat(estadisticas.getPrepareStatementCount()).isZero();
+
+        UsuarioInfo info = usuarioActual.info();
+        usuarioActual.info();
+        UsuarioInfo infoSuscripcion = subscriptionSecurityUtils.getCurrentUserInfo();
+
+        assertThat(estadisticas.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(id).isEqualTo(usuario.getId());
+        assertThat(idSuscripcion).isEqualTo(usuario.getId());
+        assertThat(info.getUsername()).isEqualTo(usuario.getUsername());
+        assertThat(infoSuscripcion).isSameAs(info);
+    }
+
+    @Test
+    void elSiguienteRequestSaleDelCache() {
+        nuevoRequest();
+        usuarioActual.info();
+
+        nuevoRequest();
+        estadisticas.clear();
+        UsuarioInfo info = usuarioActual.info();
+
+        assertThat(estadisticas.getPrepareStatementCount()).isZero();
+        assertThat(info.getId()).isEqualTo(usuario.getId());
+    }
+
+    private static void nuevoRequest() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+    }
+}
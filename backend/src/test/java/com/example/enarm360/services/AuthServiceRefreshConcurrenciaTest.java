@@ -0,0 +1,153 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.dtos.auth.RefreshTokenRequest;
+import com.example.enarm360.dtos.auth.TokenResponse;
+import com.example.enarm360.entities.SesionAuth;
+import com.example.enarm360.entities.Usuario;
+import com.example.enarm360.repositories.SesionAuthRepository;
+import com.example.enarm360.security.FiltroRevocacion;
+import com.example.enarm360.security.JwtUtils;
+import com.example.enarm360.security.PermisosVersionStore;
+import com.example.enarm360.security.TokenHash;
+import com.example.enarm360.security.UsuarioActual;
+import com.example.enarm360.support.DatosPrueba;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * El mismo refresh token presentado N veces en paralelo: exactamente una rotación gana,
+ * las demás cuentan como reuso y la familia completa queda revocada, incluido el token
+ * que recibió el ganador. Y rotar no alarga la familia: conserva su vencimiento absoluto.
+ */
+@DataJpaTest(properties = "app.jwt.secret=mrPHICxiZHPRliUi+m6WkmeVnoB9iQXv9ctSp32REDnvsHCsjVnB+L7dIobo7YEJK20oMwqIj2N9+wPdMpPFow==")
+@Import({AuthService.class, JwtUtils.class, FiltroRevocacion.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AuthServiceRefreshConcurrenciaTest {
+
+    private static final int HILOS = 16;
+
+    @Autowired
+    private AuthService authService;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Autowired
+    private FiltroRevocacion filtroRevocacion;
+
+    @Autowired
+    private SesionAuthRepository sesionAuthRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockitoBean
+    private AuthenticationManager authenticationManager;
+    @MockitoBean
+    private PermisosVersionStore permisosVersionStore;
+    @MockitoBean
+    private UsuarioActual usuarioActual;
+    @MockitoBean
+    private IntentoCanalService intentoCanales;
+
+    @Test
+    void refreshesParalelosConElMismoTokenDejanUnGanadorYRevocanLaFamilia() throws Exception {
+        String familia = UUID.randomUUID().toString();
+        String token = sesion(familia, LocalDateTime.now().plusDays(1));
+
+        ExecutorService pool = Executors.newFixedThreadPool(HILOS);
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Future<TokenResponse>> tareas = new ArrayList<>();
+        for (int h = 0; h < HILOS; h++) {
+            tareas.add(pool.submit(() -> {
+                salida.await();
+                return authService.refreshToken(new RefreshTokenRequest(token));
+            }));
+        }
+        salida.countDown();
+
+        List<TokenResponse> exitos = new ArrayList<>();
+        int rechazos = 0;
+        for (Future<TokenResponse> t : tareas) {
+            try {
+                exitos.add(t.get(60, TimeUnit.SECONDS));
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(RuntimeException.class);
+                rechazos++;
+            }
+        }
+        pool.shutdown();
+
+        assertThat(exitos).hasSize(1);
+        assertThat(rechazos).isEqualTo(HILOS - 1);
+        assertThat(sesionAuthRepository.findByFamilia(familia)).isEmpty();
+        assertThat(filtroRevocacion.contieneFamilia(familia)).isTrue();
+
+        // Ni el token original ni el que recibió el ganador sirven ya
+        String delGanador = exitos.get(0).getRefreshToken();
+        assertThatThrownBy(() -> authService.refreshToken(new RefreshTokenRequest(delGanador)))
+                .isInstanceOf(RuntimeException.class);
+        assertThatThrownBy(() -> authService.refreshToken(new RefreshTokenRequest(token)))
+                .isInstanceOf(RuntimeException.class);
+    }
+
+    @Test
+    void rotarConservaElVencimientoDeLaFamilia() {
+        String familia = UUID.randomUUID().toString();
+        LocalDateTime expira = LocalDateTime.now().plusHours(2).withNano(0);
+        String token = sesion(familia, expira);
+
+        for (int i = 0; i < 3; i++) {
+            token = authService.refreshToken(new RefreshTokenRequest(token)).getRefreshToken();
+            assertThat(sesionAuthRepository.findByFamilia(familia)).singleElement()
+                    .extracting(SesionAuth::getExpiraEn).isEqualTo(expira);
+            assertThat(jwtUtils.parseVerifiedClaims(token).getExpiration())
+                    .isEqualTo(Date.from(expira.atZone(ZoneId.systemDefault()).toInstant()));
+        }
+    }
+
+    // Sesión de una familia nueva, como la deja login; devuelve su refresh token
+    private String sesion(String familia, LocalDateTime expira) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            Usuario usuario = new DatosPrueba(em).usuario();
+            String refresh = jwtUtils.generateRefreshToken(usuario.getUsername(), familia,
+                    Date.from(expira.atZone(ZoneId.systemDefault()).toInstant()));
+            em.persist(SesionAuth.builder()
+                    .usuario(usuario)
+                    .tokenHash(TokenHash.hex(TokenHash.sha256(refresh)))
+                    .familia(familia)
+                    .emitidoEn(LocalDateTime.now())
+                    .expiraEn(expira)
+                    .build());
+            return refresh;
+        });
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.config.ExamenPregeneracionProperties;
+import com.example.enarm360.dtos.ExamenDTO;
+import com.example.enarm360.entities.Examen;
+import com.example.enarm360.entities.ExamenPregunta;
+import com.example.enarm360.entities.Reactivo;
+import com.example.enarm360.repositories.ExamenRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Los exámenes del pool se generan sin usuario: al entregarlos se salta el que incluye
+ * reactivos que el usuario ya vio, que queda en la cola para otro usuario.
+ */
+class ExamenPregeneracionServiceTest {
+
+    private static final List<Long> ESPECIALIDADES = List.of(1L);
+    private static final int NUM_REACTIVOS = 2;
+    private static final Long USUARIO = 7L;
+
+    private final ExamenService examenService = mock(ExamenService.class);
+    private final ExamenRepository examenDao = mock(ExamenRepository.class);
+    private final ReactivoVistoService reactivosVistos = mock(ReactivoVistoService.class);
+    private final AtomicLong ids = new AtomicLong();
+
+    private ExamenPregeneracionService servicio;
+
+    @BeforeEach
+    void preparar() {
+        ExamenPregeneracionProperties props = new ExamenPregeneracionProperties();
+        props.setTamanoPorConfiguracion(2);
+        servicio = new ExamenPregeneracionService(examenService, examenDao, reactivosVistos, props,
+                new SimpleMeterRegistry());
+        when(examenDao.asignarPregenerado(anyLong(), any(), any(), anyString())).thenReturn(1);
+
+        // El primer examen del pool trae los reactivos 10 y 11; el segundo, 20 y 21
+        List<Examen> generados = new ArrayList<>(List.of(examen(10L, 11L), examen(20L, 21L)));
+        when(examenService.generarExamen(anyList(), anyInt(), eq(null), anyString()))
+                .thenAnswer(inv -> generados.remove(0));
+
+        servicio.tomar(ESPECIALIDADES, NUM_REACTIVOS, USUARIO);   // registra la demanda
+        servicio.rellenar();
+    }
+
+    @Test
+    void saltaElExamenConReactivosYaVistos() {
+        when(reactivosVistos.vistos(USUARIO)).thenReturn(Set.of(11L)::contains);
+
+        Optional<ExamenDTO> entregado = servicio.tomar(ESPECIALIDADES, NUM_REACTIVOS, USUARIO);
+
+        assertThat(entregado).map(this::reactivos).contains(List.of(20L, 21L));
+        // El saltado sigue disponible para quien no lo ha visto
+        when(reactivosVistos.vistos(8L)).thenReturn(id -> false);
+        assertThat(servicio.tomar(ESPECIALIDADES, NUM_REACTIVOS, 8L)).map(this::reactivos)
+                .contains(List.of(10L, 11L));
+    }
+
+    @Test
+    void sinExamenLimpioCaeALaGeneracionNormal() {
+        when(reactivosVistos.vistos(USUARIO)).thenReturn(Set.of(10L, 21L)::contains);
+
+        assertThat(servicio.tomar(ESPECIALIDADES, NUM_REACTIVOS, USUARIO)).isEmpty();
+
+        // Ninguno se consumió
+        when(reactivosVistos.vistos(8L)).thenReturn(id -> false);
+        assertThat(servicio.tomar(ESPECIALIDADES, NUM_REACTIVOS, 8L)).isPresent();
+        assertThat(servicio.tomar(ESPECIALIDADES, NUM_REACTIVOS, 8L)).isPresent();
+    }
+
+    private Examen examen(Long... reactivos) {
+        Examen examen = Examen.builder().id(ids.incrementAndGet()).nombre("pool").build();
+        for (int i = 0; i < reactivos.length; i++) {
+            examen.getExamenPreguntas().add(ExamenPregunta.builder()
+                    .orden(i + 1)
+                    .puntaje(1.0)
+                    .examen(examen)
+                    .reactivo(Reactivo.builder().id(reactivos[i]).build())
+                    .build());
+        }
+        return examen;
+    }
+
+    private List<Long> reactivos(ExamenDTO dto) {
+        return dto.getPreguntas().stream().map(p -> p.getReactivoId()).toList();
+    }
+}
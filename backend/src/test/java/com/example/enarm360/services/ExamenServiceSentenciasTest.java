@@ -0,0 +1,117 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.dtos.ExamenDTO;
+import com.example.enarm360.entities.Examen;
+import com.example.enarm360.entities.Reactivo;
+import com.example.enarm360.support.DatosPrueba;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.when;
+
+/**
+ * Sentencias JDBC de ExamenService contadas con las estadísticas de Hibernate: el costo
+ * no debe crecer una sentencia por pregunta.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(ExamenService.class)
+class ExamenServiceSentenciasTest {
+
+    @Autowired
+    private ExamenService examenService;
+
+    @Autowired
+    private EntityManager em;
+
+    @MockitoBean
+    private ReactivoSamplingIndex reactivoSampler;
+    @MockitoBean
+    private ExamBlueprintPlanner blueprintPlanner;
+    @MockitoBean
+    private RespuestaCorrectaIndex respuestasCorrectas;
+    @MockitoBean
+    private IntentoSesionStore intentoSesiones;
+    @MockitoBean
+    private IntentoCanalService intentoCanales;
+    @MockitoBean
+    private IntentoRespuestaWriter respuestaWriter;
+    @MockitoBean
+    private IntentoExpiracionService intentoExpiracion;
+    @MockitoBean
+    private ReactivoTiempoHistogramas tiempoHistogramas;
+    @MockitoBean
+    private ReactivoVistoService reactivosVistos;
+    @MockitoBean
+    private RepasoService repasoService;
+
+    private Statistics estadisticas;
+    private DatosPrueba datos;
+
+    @BeforeEach
+    void preparar() {
+        estadisticas = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        datos = new DatosPrueba(em);
+    }
+
+    @Test
+    void generarExamenInsertaLasPreguntasEnBatch() {
+        long con50 = sentenciasAlGenerar(50);
+        long con450 = sentenciasAlGenerar(450);
+
+        // Secuencias con pool de 50 y batch de 50: ~2 sentencias más por cada 50 preguntas
+        assertThat(con450).isLessThan(450 / 10);
+        assertThat(con450 - con50).isLessThanOrEqualTo(2L * (450 - 50) / 50 + 2);
+    }
+
+    /**
+     * Lo que responde GET /api/examenes/{id} cuando el payload no está en cache.
+     */
+    @Test
+    void getExamenDTONoDependeDelNumeroDePreguntas() {
+        long con10 = sentenciasAlLeer(10);
+        long con300 = sentenciasAlLeer(300);
+
+        assertThat(con300).isEqualTo(con10);
+        assertThat(con300).isLessThanOrEqualTo(2);
+    }
+
+    private long sentenciasAlLeer(int preguntas) {
+        Examen examen = datos.examen(datos.reactivos(preguntas), 60);
+        em.flush();
+        em.clear();
+
+        estadisticas.clear();
+        ExamenDTO dto = examenService.getExamenDTO(examen.getId());
+        long sentencias = estadisticas.getPrepareStatementCount();
+
+        assertThat(dto.getPreguntas()).hasSize(preguntas);
+        return sentencias;
+    }
+
+    private long sentenciasAlGenerar(int preguntas) {
+        long[] ids = datos.reactivos(preguntas).stream().mapToLong(Reactivo::getId).toArray();
+        em.flush();
+        em.clear();
+        when(reactivoSampler.muestrear(any(), anyInt(), any(), any())).thenReturn(ids);
+
+        estadisticas.clear();
+        Examen examen = examenService.generarExamen(List.of(1L), preguntas, null);
+        em.flush();
+        long sentencias = estadisticas.getPrepareStatementCount();
+
+        assertThat(examen.getExamenPreguntas()).hasSize(preguntas);
+        return sentencias;
+    }
+}
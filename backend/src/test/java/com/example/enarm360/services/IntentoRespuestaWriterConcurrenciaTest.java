@@ -0,0 +1,203 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.config.IntentoSesionProperties;
+import com.example.enarm360.dtos.IntentoPreguntaDTO;
+import com.example.enarm360.entities.IntentoExamen;
+import com.example.enarm360.entities.Reactivo;
+import com.example.enarm360.repositories.IntentoExamenRepository;
+import com.example.enarm360.repositories.IntentoPreguntaRepository;
+import com.example.enarm360.services.IntentoRespuestaWriter.RespuestaPendiente;
+import com.example.enarm360.support.DatosPrueba;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+/**
+ * Reintentos y secuencias fuera de orden del mismo reactivo, escritos en paralelo: debe
+ * quedar una sola fila con la secuencia más alta y el marcador debe contarla una sola vez.
+ * Se prueba directo contra el writer y a través de IntentoSesionStore (durabilidad SYNC),
+ * donde la ventana de secuencias recientes debe contestar los reintentos sin escribir.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({IntentoRespuestaWriter.class, IntentoSesionStore.class, IntentoSesionProperties.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class IntentoRespuestaWriterConcurrenciaTest {
+
+    private static final int HILOS = 16;
+    private static final int ENVIOS_POR_HILO = 20;
+    private static final long SECUENCIA_MAXIMA = 9;
+
+    @Autowired
+    private IntentoRespuestaWriter writer;
+
+    @Autowired
+    private IntentoSesionStore sesiones;
+
+    @Autowired
+    private IntentoExamenRepository intentoExamenDao;
+
+    @Autowired
+    private IntentoPreguntaRepository intentoPreguntaDao;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockitoBean
+    private RespuestaCorrectaIndex respuestasCorrectas;
+
+    @MockitoBean
+    private ReactivoTiempoHistogramas histogramas;
+
+    @MockitoBean
+    private ReactivoVistoService reactivosVistos;
+
+    @Test
+    void duplicadosYSecuenciasAtrasadasDejanUnaFilaYUnDelta() throws Exception {
+        long[] ids = intentoConUnReactivo();
+        long intentoId = ids[0];
+        long reactivoId = ids[1];
+
+        List<Long> secuencias = secuenciasDesordenadas();
+
+        ExecutorService pool = Executors.newFixedThreadPool(HILOS);
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Future<?>> tareas = new ArrayList<>();
+        for (int h = 0; h < HILOS; h++) {
+            List<Long> propias = secuencias.subList(h * ENVIOS_POR_HILO, (h + 1) * ENVIOS_POR_HILO);
+            tareas.add(pool.submit(() -> {
+                salida.await();
+                for (Long seq : propias) {
+                    boolean correcta = seq % 2 == 0;
+                    writer.upsert(intentoId, List.of(new RespuestaPendiente(reactivoId, correcta ? "a" : "b",
+                            correcta, 1, seq, null)));
+                }
+                return null;
+            }));
+        }
+        salida.countDown();
+        for (Future<?> t : tareas) t.get(60, TimeUnit.SECONDS);   // sin violaciones del índice único
+        pool.shutdown();
+
+        verificarUnaFilaConLaSecuenciaMaxima(intentoId);
+    }
+
+    @Test
+    void sesionContestaReintentosDesdeLaVentanaYEscribeCadaSecuenciaUnaVez() throws Exception {
+        long[] ids = intentoConUnReactivo();
+        long intentoId = ids[0];
+        long reactivoId = ids[1];
+        when(respuestasCorrectas.respuestaCorrecta(reactivoId)).thenReturn((byte) 'a');
+        when(respuestasCorrectas.esCorrecta(eq(reactivoId), any())).thenAnswer(i -> "a".equals(i.getArgument(1)));
+
+        List<Long> secuencias = secuenciasDesordenadas();
+        Statistics estadisticas = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        estadisticas.clear();
+
+        ExecutorService pool = Executors.newFixedThreadPool(HILOS);
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Future<?>> tareas = new ArrayList<>();
+        for (int h = 0; h < HILOS; h++) {
+            List<Long> propias = secuencias.subList(h * ENVIOS_POR_HILO, (h + 1) * ENVIOS_POR_HILO);
+            tareas.add(pool.submit(() -> {
+                salida.await();
+                for (Long seq : propias) {
+                    String letra = seq % 2 == 0 ? "a" : "b";
+                    IntentoPreguntaDTO r = sesiones.responder(intentoId, reactivoId, letra, seq);
+                    // Un reintento o una secuencia atrasada devuelve la respuesta vigente, nunca otra
+                    assertThat(r.getReactivoId()).isEqualTo(reactivoId);
+                    assertThat(r.isCorrecta()).isEqualTo("a".equals(r.getRespuestaSeleccionada()));
+                }
+                return null;
+            }));
+        }
+        salida.countDown();
+        for (Future<?> t : tareas) t.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        // 320 envíos de 9 secuencias: cada secuencia aceptada se escribe a lo más una vez
+        long escrituras = estadisticas.getEntityInsertCount() + estadisticas.getEntityUpdateCount();
+        assertThat(estadisticas.getEntityInsertCount()).isEqualTo(1);
+        assertThat(escrituras).isLessThanOrEqualTo(SECUENCIA_MAXIMA);
+        verificarUnaFilaConLaSecuenciaMaxima(intentoId);
+
+        // Sesión recargada desde la BD (otro nodo, reinicio): el reintento de la última secuencia
+        // sale de la ventana y una atrasada devuelve la vigente; ninguna escribe
+        sesiones.cerrar(intentoId);
+        estadisticas.clear();
+        assertThat(sesiones.responder(intentoId, reactivoId, "b", SECUENCIA_MAXIMA).getRespuestaSeleccionada())
+                .isEqualTo("b");
+        assertThat(sesiones.responder(intentoId, reactivoId, "a", 2L).getRespuestaSeleccionada()).isEqualTo("b");
+        assertThat(estadisticas.getEntityInsertCount() + estadisticas.getEntityUpdateCount()).isZero();
+        verificarUnaFilaConLaSecuenciaMaxima(intentoId);
+    }
+
+    @Test
+    void loteDespuesDeFinalizarNoEscribe() {
+        long[] ids = intentoConUnReactivo();
+        assertThat(intentoExamenDao.marcarFinalizado(ids[0], LocalDateTime.now())).isEqualTo(1);
+
+        boolean escrito = writer.upsert(ids[0], Set.of(new RespuestaPendiente(ids[1], "a", true, 1, 1L, null)));
+
+        assertThat(escrito).isFalse();
+        assertThat(intentoPreguntaDao.findRespuestasByIntentoId(ids[0])).isEmpty();
+        assertThat(intentoExamenDao.marcarFinalizado(ids[0], LocalDateTime.now())).isZero();
+    }
+
+    // [intentoId, reactivoId]
+    private long[] intentoConUnReactivo() {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            DatosPrueba datos = new DatosPrueba(em);
+            List<Reactivo> reactivos = datos.reactivos(1);
+            IntentoExamen intento = datos.intento(datos.examen(reactivos, null), datos.usuario());
+            return new long[] { intento.getId(), reactivos.get(0).getId() };
+        });
+    }
+
+    // Cada secuencia repetida varias veces, en desorden; las impares son incorrectas
+    private static List<Long> secuenciasDesordenadas() {
+        List<Long> secuencias = new ArrayList<>();
+        for (int i = 0; i < HILOS * ENVIOS_POR_HILO; i++) secuencias.add(1 + (long) (i % SECUENCIA_MAXIMA));
+        Collections.shuffle(secuencias);
+        return secuencias;
+    }
+
+    private void verificarUnaFilaConLaSecuenciaMaxima(long intentoId) {
+        List<Object[]> filas = intentoPreguntaDao.findRespuestasByIntentoId(intentoId);
+        assertThat(filas).hasSize(1);
+        assertThat(filas.get(0)[4]).isEqualTo(SECUENCIA_MAXIMA);
+        assertThat(filas.get(0)[1]).isEqualTo("b");
+
+        IntentoExamen intento = intentoExamenDao.findById(intentoId).orElseThrow();
+        assertThat(intento.getCorrectas() + intento.getIncorrectas()).isEqualTo(1);
+        assertThat(intento.getIncorrectas()).isEqualTo(1);
+        assertThat(intento.getPuntajeTotal()).isZero();
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.entities.IntentoExamen;
+import com.example.enarm360.entities.Reactivo;
+import com.example.enarm360.repositories.IntentoExamenRepository;
+import com.example.enarm360.repositories.IntentoPreguntaRepository;
+import com.example.enarm360.services.IntentoRespuestaWriter.RespuestaPendiente;
+import com.example.enarm360.support.DatosPrueba;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Hoja completa de respuestas en un solo upsert, a 50, 300 y 1000 respuestas: el resultado
+ * (filas y marcador) y las sentencias JDBC, que deben ser fijas más una o dos por batch
+ * de 50 en lugar de tres por respuesta. Además, un reactivo que aparece dos veces en el
+ * examen suma su puntaje una sola vez, igual en el marcador incremental y en el recalculado.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(IntentoRespuestaWriter.class)
+class IntentoRespuestaWriterTest {
+
+    private static final Logger log = LoggerFactory.getLogger(IntentoRespuestaWriterTest.class);
+    private static final int BATCH = 50;
+
+    @Autowired
+    private IntentoRespuestaWriter writer;
+
+    @Autowired
+    private IntentoExamenRepository intentoExamenDao;
+
+    @Autowired
+    private IntentoPreguntaRepository intentoPreguntaDao;
+
+    @Autowired
+    private EntityManager em;
+
+    private Statistics estadisticas;
+
+    @BeforeEach
+    void preparar() {
+        estadisticas = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {50, 300, 1000})
+    void hojaCompletaEnSentenciasFijasMasBatches(int respuestas) {
+        DatosPrueba datos = new DatosPrueba(em);
+        List<Reactivo> reactivos = datos.reactivos(respuestas);
+        IntentoExamen intento = datos.intento(datos.examen(reactivos, null), datos.usuario());
+        em.flush();
+        em.clear();
+        long lotes = (respuestas + BATCH - 1) / BATCH;
+
+        // Primer envío: todas nuevas, una de cada cuatro incorrecta
+        List<RespuestaPendiente> hoja = new ArrayList<>(respuestas);
+        int incorrectas = 0;
+        for (int i = 0; i < respuestas; i++) {
+            boolean correcta = i % 4 != 0;
+            if (!correcta) incorrectas++;
+            hoja.add(new RespuestaPendiente(reactivos.get(i).getId(), correcta ? "a" : "b", correcta, i + 1, 1L, null));
+        }
+        long insercion = medir(respuestas, "inserción", () -> writer.upsert(intento.getId(), hoja));
+
+        assertThat(intentoPreguntaDao.findRespuestasByIntentoId(intento.getId())).hasSize(respuestas);
+        IntentoExamen tras1 = intentoExamenDao.findById(intento.getId()).orElseThrow();
+        assertThat(tras1.getCorrectas()).isEqualTo(respuestas - incorrectas);
+        assertThat(tras1.getIncorrectas()).isEqualTo(incorrectas);
+        assertThat(tras1.getPuntajeTotal()).isEqualTo((double) (respuestas - incorrectas));
+        // Bloqueo, existentes, snapshots, puntajes y marcador + secuencia e INSERT por batch
+        assertThat(insercion).isLessThanOrEqualTo(6 + 2 * lotes);
+
+        // Segundo envío: se corrigen las incorrectas, las demás se reenvían iguales
+        List<RespuestaPendiente> correccion = new ArrayList<>(respuestas);
+        for (int i = 0; i < respuestas; i++) {
+            correccion.add(new RespuestaPendiente(reactivos.get(i).getId(), "a", true, i + 1, 2L, null));
+        }
+        long actualizacion = medir(respuestas, "actualización", () -> writer.upsert(intento.getId(), correccion));
+
+        assertThat(intentoPreguntaDao.findRespuestasByIntentoId(intento.getId())).hasSize(respuestas);
+        IntentoExamen tras2 = intentoExamenDao.findById(intento.getId()).orElseThrow();
+        assertThat(tras2.getCorrectas()).isEqualTo(respuestas);
+        assertThat(tras2.getIncorrectas()).isZero();
+        assertThat(tras2.getPuntajeTotal()).isEqualTo((double) respuestas);
+        // Sin snapshots ni secuencia: UPDATE por batch
+        assertThat(actualizacion).isLessThanOrEqualTo(6 + lotes);
+    }
+
+    @Test
+    void reactivoRepetidoEnElExamenSeCuentaUnaVez() {
+        DatosPrueba datos = new DatosPrueba(em);
+        List<Reactivo> reactivos = datos.reactivos(2);
+        Reactivo repetido = reactivos.get(0);
+        IntentoExamen intento = datos.intento(datos.examen(List.of(repetido, reactivos.get(1), repetido), null),
+                datos.usuario());
+        em.createQuery("UPDATE ExamenPregunta ep SET ep.puntaje = 2.0 WHERE ep.reactivo.id = :id")
+                .setParameter("id", repetido.getId()).executeUpdate();
+        em.flush();
+        em.clear();
+
+        assertThat(writer.upsert(intento.getId(), List.of(
+                new RespuestaPendiente(repetido.getId(), "a", true, 1, 1L, null),
+                new RespuestaPendiente(reactivos.get(1).getId(), "a", true, 2, 2L, null)))).isTrue();
+        em.clear();
+
+        // Incremental (writer) y recalculado (al finalizar) deben coincidir: 2 correctas, 2.0 + 1.0
+        IntentoExamen tras = intentoExamenDao.findById(intento.getId()).orElseThrow();
+        assertThat(tras.getCorrectas()).isEqualTo(2);
+        assertThat(tras.getPuntajeTotal()).isEqualTo(3.0);
+        Object[] marcador = intentoPreguntaDao.calcularMarcador(intento.getId()).get(0);
+        assertThat(((Number) marcador[0]).intValue()).isEqualTo(2);
+        assertThat(((Number) marcador[1]).intValue()).isZero();
+        assertThat(((Number) marcador[2]).doubleValue()).isEqualTo(3.0);
+    }
+
+    private long medir(int respuestas, String fase, BooleanSupplier upsert) {
+        em.clear();
+        estadisticas.clear();
+        long inicio = System.nanoTime();
+        assertThat(upsert.getAsBoolean()).isTrue();
+        long sentencias = estadisticas.getPrepareStatementCount();
+        log.info("upsert {} de {} respuestas: {} sentencias, {} ms",
+                fase, respuestas, sentencias, (System.nanoTime() - inicio) / 1_000_000);
+        em.clear();
+        return sentencias;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.config.ReactivoCambiosProperties;
+import com.example.enarm360.entities.CambioReactivo;
+import com.example.enarm360.entities.Reactivo;
+import com.example.enarm360.repositories.CambioReactivoRepository;
+import com.example.enarm360.support.DatosPrueba;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Bitácora de cambios de reactivos: una edición escribe su fila en la misma transacción,
+ * el nodo que edita no la vuelve a aplicar al sondear, y los cambios de otro nodo (filas
+ * ajenas) se aplican releyendo el reactivo de la BD, o como baja si ya no existe.
+ */
+@DataJpaTest
+@Import({ReactivoCambiosService.class, ReactivoCambiosProperties.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReactivoCambiosServiceTest {
+
+    @Autowired
+    private ReactivoCambiosService cambios;
+
+    @Autowired
+    private CambioReactivoRepository cambioDao;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockitoBean
+    private ReactivoSamplingIndex indice;
+
+    @MockitoBean
+    private RespuestaCorrectaIndex respuestas;
+
+    @MockitoBean
+    private ReactivoIrtBank irt;
+
+    @MockitoBean
+    private ExamenPayloadCache payloads;
+
+    @Test
+    void edicionLocalSeAnotaYNoSeAplicaDosVeces() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long id = tx.execute(status -> new DatosPrueba(em).reactivos(1).get(0).getId());
+        long filasAntes = cambioDao.count();
+
+        tx.executeWithoutResult(status -> em.find(Reactivo.class, id).setRespuestaCorrecta("c"));
+
+        assertThat(cambioDao.count()).isEqualTo(filasAntes + 1);
+        verify(respuestas, times(1)).guardar(id, "c");   // desde el listener, al confirmar
+
+        cambios.sondear();
+
+        verify(respuestas, times(1)).guardar(id, "c");
+        verify(payloads, times(1)).invalidarReactivo(id);
+    }
+
+    @Test
+    void cambiosDeOtroNodoSeReleenDeLaBd() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Reactivo editado = tx.execute(status -> new DatosPrueba(em).reactivos(1).get(0));
+        Long id = editado.getId();
+        long borrado = id + 1_000_000;
+        clearInvocations(indice, respuestas, irt, payloads);   // el alta pasó por el listener local
+
+        // Otro nodo editó la respuesta (sin pasar por este listener) y borró otro reactivo
+        tx.executeWithoutResult(status -> em.createQuery("UPDATE Reactivo r SET r.respuestaCorrecta = 'd' WHERE r.id = :id")
+                .setParameter("id", id).executeUpdate());
+        cambioDao.save(CambioReactivo.builder().reactivoId(id).creadoEn(LocalDateTime.now()).build());
+        cambioDao.save(CambioReactivo.builder().reactivoId(borrado).creadoEn(LocalDateTime.now()).build());
+
+        cambios.sondear();
+
+        verify(respuestas).guardar(id, "d");
+        verify(indice).actualizar(eq(id), eq(editado.getEspecialidad().getId()), any(), any());
+        verify(irt).cambio(id);
+        verify(payloads).invalidarReactivo(id);
+
+        verify(indice).quitar(borrado);
+        verify(respuestas).quitar(borrado);
+        verify(irt).quitar(borrado);
+        verify(payloads).invalidarReactivo(borrado);
+
+        // Un segundo sondeo no repite las filas ya aplicadas
+        cambios.sondear();
+        verify(respuestas, times(1)).guardar(id, "d");
+        verify(irt, times(1)).quitar(borrado);
+    }
+}
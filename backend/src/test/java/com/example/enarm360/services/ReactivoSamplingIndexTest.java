@@ -0,0 +1,109 @@
+package com.example.enarm360.services;
+
+import com.example.enarm360.repositories.ReactivoRepository;
+import com.example.enarm360.services.ReactivoSamplingIndex.Celda;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Altas, bajas y reclasificaciones al azar contra un modelo (id → celda): los conteos y
+ * los muestreos completos del índice deben coincidir con el modelo en cada paso, con
+ * altas fuera de orden, bajas sin compactar y compactaciones de por medio.
+ */
+class ReactivoSamplingIndexTest {
+
+    private static final int IDS = 3000;
+    private static final long ESPECIALIDADES = 3;
+
+    @Test
+    void cambiosIncrementalesCoincidenConElModelo() {
+        ReactivoRepository repositorio = mock(ReactivoRepository.class);
+        when(repositorio.streamClasificaciones()).thenAnswer(inv -> LongStream.rangeClosed(1, IDS / 2)
+                .mapToObj(id -> new Object[]{id, especialidad(id), 1L, 1L}));
+        ReactivoSamplingIndex indice = new ReactivoSamplingIndex(repositorio, mock(PlatformTransactionManager.class));
+        indice.recargar();
+
+        Map<Long, Celda> modelo = new HashMap<>();
+        for (long id = 1; id <= IDS / 2; id++) modelo.put(id, new Celda(especialidad(id), 1L, 1L));
+        verificar(indice, modelo);
+
+        Random rnd = new Random(42);
+        for (int paso = 0; paso < 20_000; paso++) {
+            long id = 1 + rnd.nextInt(IDS);
+            Celda celda = new Celda(especialidad(id), 1L + rnd.nextInt(3), 1L + rnd.nextInt(2));
+            switch (rnd.nextInt(3)) {
+                case 0 -> {
+                    indice.registrar(id, celda.especialidadId(), celda.dificultadId(), celda.claveId());
+                    modelo.put(id, celda);
+                }
+                case 1 -> {
+                    indice.actualizar(id, celda.especialidadId(), celda.dificultadId(), celda.claveId());
+                    modelo.put(id, celda);
+                }
+                default -> {
+                    indice.quitar(id);
+                    modelo.remove(id);
+                }
+            }
+            if (paso % 500 == 0) verificar(indice, modelo);
+        }
+        verificar(indice, modelo);
+
+        // Recarga: el índice vuelve a ser el de la BD
+        indice.recargar();
+        modelo.clear();
+        for (long id = 1; id <= IDS / 2; id++) modelo.put(id, new Celda(especialidad(id), 1L, 1L));
+        verificar(indice, modelo);
+    }
+
+    private static void verificar(ReactivoSamplingIndex indice, Map<Long, Celda> modelo) {
+        for (long esp = 1; esp <= ESPECIALIDADES; esp++) {
+            long e = esp;
+            Map<Celda, Integer> esperado = new HashMap<>();
+            Map<Celda, Long> porCelda = modelo.values().stream()
+                    .filter(c -> c.especialidadId() == e)
+                    .collect(Collectors.groupingBy(c -> c, Collectors.counting()));
+            porCelda.forEach((c, n) -> esperado.put(c, n.intValue()));
+            assertThat(indice.conteosPorCelda(e)).containsExactlyInAnyOrderEntriesOf(esperado);
+
+            Set<Long> ids = modelo.entrySet().stream()
+                    .filter(x -> x.getValue().especialidadId() == e)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toSet());
+            assertThat(indice.contar(Celda.of(e))).isEqualTo(ids.size());
+            long[] todos = indice.muestrear(Celda.of(e), IDS, new SplittableRandom(e));
+            assertThat(Arrays.stream(todos).boxed().collect(Collectors.toSet()))
+                    .hasSize(todos.length)
+                    .isEqualTo(ids);
+
+            // Celda (especialidad, null, clave): unión de las dificultades
+            Set<Long> clave1 = modelo.entrySet().stream()
+                    .filter(x -> x.getValue().especialidadId() == e && x.getValue().claveId() == 1L)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toSet());
+            long[] deClave = indice.muestrear(new Celda(e, null, 1L), IDS, new SplittableRandom(e));
+            assertThat(Arrays.stream(deClave).boxed().collect(Collectors.toSet())).isEqualTo(clave1);
+        }
+        assertThat(indice.conteosPorEspecialidad().values().stream().mapToInt(Integer::intValue).sum())
+                .isEqualTo(modelo.size());
+        assertThat(indice.muestrear(1L, 10))
+                .hasSize((int) Math.min(10, modelo.values().stream().filter(c -> c.especialidadId() == 1L).count()));
+    }
+
+    private static long especialidad(long id) {
+        return id % ESPECIALIDADES + 1;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.enarm360.support;
+
+import com.example.enarm360.entities.Clave;
+import com.example.enarm360.entities.Dificultad;
+import com.example.enarm360.entities.Especialidad;
+import com.example.enarm360.entities.Examen;
+import com.example.enarm360.entities.ExamenPregunta;
+import com.example.enarm360.entities.IntentoExamen;
+import com.example.enarm360.entities.Reactivo;
+import com.example.enarm360.entities.Usuario;
+import jakarta.persistence.EntityManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Datos mínimos para pruebas de repositorios y servicios sobre H2: usuarios, reactivos con
+ * su catálogo, exámenes e intentos. Los nombres únicos llevan un sufijo aleatorio porque
+ * las pruebas que confirman transacciones comparten la misma base.
+ */
+public final class DatosPrueba {
+
+    private final EntityManager em;
+    private Especialidad especialidad;
+    private Dificultad dificultad;
+    private Clave clave;
+
+    public DatosPrueba(EntityManager em) {
+        this.em = em;
+    }
+
+    public Usuario usuario() {
+        String sufijo = sufijo();
+        LocalDateTime ahora = LocalDateTime.now();
+        Usuario u = Usuario.builder()
+                .username("u" + sufijo)
+                .email("u" + sufijo + "@prueba.local")
+                .contrasenaHash("x")
+                .nombre("Prueba")
+                .activo(true)
+                .permisosVersion(0L)
+                .creadoEn(ahora)
+                .actualizadoEn(ahora)
+                .build();
+        em.persist(u);
+        return u;
+    }
+
+    public List<Reactivo> reactivos(int n) {
+        catalogo();
+        List<Reactivo> reactivos = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Reactivo r = Reactivo.builder()
+                    .pregunta("Pregunta " + i)
+                    .respuestaA("A").respuestaB("B").respuestaC("C").respuestaD("D")
+                    .respuestaCorrecta("a")
+                    .retroalimentacion("Explicación " + i)
+                    .clave(clave)
+                    .dificultad(dificultad)
+                    .especialidad(especialidad)
+                    .build();
+            em.persist(r);
+            reactivos.add(r);
+        }
+        return reactivos;
+    }
+
+    public Examen examen(List<Reactivo> reactivos, Integer tiempoLimiteMin) {
+        Examen e = Examen.builder()
+                .nombre("Examen " + sufijo())
+                .creadoEn(LocalDateTime.now())
+                .tiempoLimiteMin(tiempoLimiteMin)
+                .build();
+        em.persist(e);
+        int orden = 0;
+        for (Reactivo r : reactivos) {
+            ExamenPregunta ep = ExamenPregunta.builder().examen(e).reactivo(r).orden(++orden).puntaje(1.0).build();
+            em.persist(ep);
+            e.getExamenPreguntas().add(ep);
+        }
+        return e;
+    }
+
+    public IntentoExamen intento(Examen examen, Usuario usuario) {
+        IntentoExamen i = IntentoExamen.builder()
+                .examen(examen)
+                .usuario(usuario)
+                .iniciadoEn(LocalDateTime.now())
+                .correctas(0)
+                .incorrectas(0)
+                .enBlanco(0)
+                .puntajeTotal(0.0)
+                .build();
+        em.persist(i);
+        return i;
+    }
+
+    private void catalogo() {
+        if (especialidad != null) return;
+        String sufijo = sufijo();
+        especialidad = Especialidad.builder().nombre("Especialidad " + sufijo).build();
+        em.persist(especialidad);
+        dificultad = Dificultad.builder().nombre("Dificultad " + sufijo).build();
+        em.persist(dificultad);
+        clave = Clave.builder().nombre("Clave " + sufijo).especialidad(especialidad).build();
+        em.persist(clave);
+    }
+
+    private static String sufijo() {
+        return UUID.randomUUID().toString().substring(0, 8);
+    }
+}